@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Search for tasks across the wikis of the farm. The wikis are searched in parallel, each with
+ * {@link TaskManager#findTasks(TaskQuery)}, and their sorted results are merged. The tasks of the same position in
+ * the requested order are sorted by the identifier of their wiki.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Role
+@Unstable
+public interface FarmTaskManager
+{
+    /**
+     * Search for tasks in several wikis. The wikis that the current user is not allowed to view are skipped. The
+     * continuation tokens of the result can only be used with this method and the same wikis.
+     *
+     * @param query the criteria that the tasks must match, their order and the page of results to return. The
+     *     offset is applied to the merged results, so a deep page costs more than with a continuation token, and it's
+     *     limited to 1000 without a continuation token.
+     * @param wikiIds the identifiers of the wikis to search, or an empty list to search all the wikis of the farm.
+     * @return the matching tasks of the requested page and the total number of matching tasks of the searched wikis.
+     * @throws TaskException if the search failed in one of the wikis or if the offset is too large.
+     */
+    TaskQueryResult findTasks(TaskQuery query, List<String> wikiIds) throws TaskException;
+}
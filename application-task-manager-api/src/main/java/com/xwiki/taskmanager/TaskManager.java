@@ -19,6 +19,10 @@
  */
 package com.xwiki.taskmanager;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.stability.Unstable;
@@ -49,6 +53,44 @@ public interface TaskManager
      */
     Task getTask(int id) throws TaskException;
 
+    /**
+     * Retrieve multiple tasks at once, using a constant number of queries.
+     *
+     * @param numbers the numbers of the tasks to retrieve.
+     * @return the tasks that have one of the given numbers, mapped by their number. The numbers that don't identify
+     *     any task are missing from the map.
+     * @throws TaskException if the retrieval of the tasks failed.
+     */
+    Map<Integer, Task> getTasksByNumber(Collection<Integer> numbers) throws TaskException;
+
+    /**
+     * Retrieve multiple tasks at once, using a constant number of queries for each wiki.
+     *
+     * @param references the references of some pages that contain a Task Object.
+     * @return the tasks found inside the given pages, mapped by the reference of the page. The pages that don't
+     *     contain a task are missing from the map.
+     * @throws TaskException if the retrieval of the tasks failed.
+     */
+    Map<DocumentReference, Task> getTasks(Collection<DocumentReference> references) throws TaskException;
+
+    /**
+     * Search for tasks in the current wiki, with a constant number of queries.
+     *
+     * @param query the criteria that the tasks must match, their order and the page of results to return.
+     * @return the matching tasks of the requested page and the total number of matching tasks.
+     * @throws TaskException if the search failed.
+     */
+    TaskQueryResult findTasks(TaskQuery query) throws TaskException;
+
+    /**
+     * Retrieve the tasks that have a certain page as an owner, without loading their documents.
+     *
+     * @param owner the reference of a page that contains task macros.
+     * @return the references of the pages that hold the tasks owned by the given page.
+     * @throws TaskException if the retrieval of the tasks failed.
+     */
+    List<DocumentReference> getTaskReferencesByOwner(DocumentReference owner) throws TaskException;
+
     /**
      * Delete the tasks that have a certain page as an owner.
      *
@@ -41,4 +41,10 @@ public interface TaskManagerConfiguration
      * @return the date format that should be used for displaying purposes.
      */
     String getDisplayDateFormat();
+
+    /**
+     * @return {@code true} if the task pages should be created and updated by a background worker, instead of during
+     *     the save of the page that contains the task macros.
+     */
+    boolean isAsyncUpdateEnabled();
 }
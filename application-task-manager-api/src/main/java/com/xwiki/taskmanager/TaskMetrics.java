@@ -0,0 +1,77 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Usage statistics of the Task Manager operations that run when pages are saved or displayed: the durations of the
+ * event listeners, of the task macro processing, of the task number generation and of the task lookups, along with
+ * the number of tasks handled by each save. The durations are expressed in microseconds.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Role
+@Unstable
+public interface TaskMetrics
+{
+    /**
+     * The number of recorded values.
+     */
+    String COUNT = "count";
+
+    /**
+     * The average of the recorded values.
+     */
+    String MEAN = "mean";
+
+    /**
+     * The median of the recent values.
+     */
+    String P50 = "p50";
+
+    /**
+     * The 99th percentile of the recent values.
+     */
+    String P99 = "p99";
+
+    /**
+     * The highest recorded value.
+     */
+    String MAX = "max";
+
+    /**
+     * @return the statistics of each metric, mapped by the name of the metric. The statistics of a metric are mapped
+     *     by {@link #COUNT}, {@link #MEAN}, {@link #P50}, {@link #P99} and {@link #MAX}.
+     */
+    Map<String, Map<String, Number>> getStatistics();
+
+    /**
+     * @return the last task synchronizations that took longer than the {@code taskmanager.saveTracing.threshold}
+     *     property of xwiki.properties, the most recent first. The list is empty unless the
+     *     {@code taskmanager.saveTracing.enabled} property is set.
+     */
+    List<TaskSaveTrace> getSlowSaveTraces();
+}
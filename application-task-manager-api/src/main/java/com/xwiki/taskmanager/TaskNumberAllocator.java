@@ -0,0 +1,47 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Reserves ranges of task numbers in a persistent way. The {@link TaskCounter} hands out the numbers of the reserved
+ * ranges and asks for a new range when the current one is exhausted. The implementation that is used is configured
+ * through the {@code taskmanager.numberAllocator} property of xwiki.properties. The {@code default} implementation is
+ * safe to use in a cluster, while the {@code local} implementation is only safe for single node setups.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Role
+@Unstable
+public interface TaskNumberAllocator
+{
+    /**
+     * Reserve a range of consecutive task numbers. A reserved number is never returned again, even after a restart.
+     *
+     * @param wikiId the wiki for which the numbers are reserved. The task numbers are unique per wiki.
+     * @param count the number of task numbers to reserve.
+     * @return the first number of the reserved range. The range ends with the number {@code first + count - 1}.
+     * @throws TaskException if the numbers could not be reserved.
+     */
+    int reserve(String wikiId, int count) throws TaskException;
+}
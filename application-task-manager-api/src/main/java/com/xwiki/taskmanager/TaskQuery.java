@@ -0,0 +1,327 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.stability.Unstable;
+
+import com.xwiki.taskmanager.model.Task;
+
+/**
+ * The criteria used to search for tasks with {@link TaskManager#findTasks(TaskQuery)}. All the criteria that are set
+ * must be matched by the returned tasks.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class TaskQuery
+{
+    /**
+     * The task fields by which the tasks can be sorted.
+     */
+    public static final List<String> SORT_FIELDS =
+        Collections.unmodifiableList(Arrays.asList(Task.NUMBER, Task.NAME, Task.DUE_DATE, Task.CREATE_DATE,
+            Task.COMPLETE_DATE, Task.STATUS, Task.ASSIGNEE, Task.REPORTER, Task.OWNER));
+
+    /**
+     * The task fields that can be filtered by a date range.
+     */
+    public static final List<String> DATE_FIELDS =
+        Collections.unmodifiableList(Arrays.asList(Task.DUE_DATE, Task.CREATE_DATE, Task.COMPLETE_DATE));
+
+    private String status;
+
+    private String name;
+
+    private String owner;
+
+    private List<String> assignees = new ArrayList<>();
+
+    private List<String> reporters = new ArrayList<>();
+
+    private List<String> spaces = new ArrayList<>();
+
+    private List<String> tags = new ArrayList<>();
+
+    private final Map<String, Date[]> dateRanges = new LinkedHashMap<>();
+
+    private String sortField = Task.NUMBER;
+
+    private boolean ascending = true;
+
+    private int offset;
+
+    private int limit = 50;
+
+    private String continuation;
+
+    /**
+     * @return the status that the tasks must have or {@code null} to match any status.
+     */
+    public String getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @param status see {@link #getStatus()}
+     * @return this query
+     */
+    public TaskQuery setStatus(String status)
+    {
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * @return a text that the name of the tasks must contain, ignoring the case, or {@code null} to match any name.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @param name see {@link #getName()}
+     * @return this query
+     */
+    public TaskQuery setName(String name)
+    {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * @return a text that the serialized reference of the page that owns the tasks must contain, ignoring the case,
+     *     or {@code null} to match any owner.
+     */
+    public String getOwner()
+    {
+        return owner;
+    }
+
+    /**
+     * @param owner see {@link #getOwner()}
+     * @return this query
+     */
+    public TaskQuery setOwner(String owner)
+    {
+        this.owner = owner;
+        return this;
+    }
+
+    /**
+     * @return the texts of which at least one must be contained by the serialized reference of the user to whom the
+     *     tasks are assigned, ignoring the case. An empty list matches any assignee.
+     */
+    public List<String> getAssignees()
+    {
+        return assignees;
+    }
+
+    /**
+     * @param assignees see {@link #getAssignees()}
+     * @return this query
+     */
+    public TaskQuery setAssignees(List<String> assignees)
+    {
+        this.assignees = assignees;
+        return this;
+    }
+
+    /**
+     * @return the texts of which at least one must be contained by the serialized reference of the user that created
+     *     the tasks, ignoring the case. An empty list matches any reporter.
+     */
+    public List<String> getReporters()
+    {
+        return reporters;
+    }
+
+    /**
+     * @param reporters see {@link #getReporters()}
+     * @return this query
+     */
+    public TaskQuery setReporters(List<String> reporters)
+    {
+        this.reporters = reporters;
+        return this;
+    }
+
+    /**
+     * @return the serialized local references of the spaces in which the task pages must be located, including
+     *     their nested spaces. An empty list matches any space.
+     */
+    public List<String> getSpaces()
+    {
+        return spaces;
+    }
+
+    /**
+     * @param spaces see {@link #getSpaces()}
+     * @return this query
+     */
+    public TaskQuery setSpaces(List<String> spaces)
+    {
+        this.spaces = spaces;
+        return this;
+    }
+
+    /**
+     * @return the tags of which at least one must be set either on the task page or on the page that owns the task.
+     *     An empty list matches any task.
+     */
+    public List<String> getTags()
+    {
+        return tags;
+    }
+
+    /**
+     * @param tags see {@link #getTags()}
+     * @return this query
+     */
+    public TaskQuery setTags(List<String> tags)
+    {
+        this.tags = tags;
+        return this;
+    }
+
+    /**
+     * @return the ranges in which the date fields of the tasks must be, mapped by the name of the field. Each range
+     *     is a pair of dates, where any of them can be {@code null} to leave the range open.
+     */
+    public Map<String, Date[]> getDateRanges()
+    {
+        return dateRanges;
+    }
+
+    /**
+     * @param field one of the {@link #DATE_FIELDS}
+     * @param from the date from which the field must be, inclusive, or {@code null}
+     * @param to the date until which the field must be, inclusive, or {@code null}
+     * @return this query
+     */
+    public TaskQuery setDateRange(String field, Date from, Date to)
+    {
+        if (!DATE_FIELDS.contains(field)) {
+            throw new IllegalArgumentException(String.format("The tasks can't be filtered by the date [%s].", field));
+        }
+        this.dateRanges.put(field, new Date[] { from, to });
+        return this;
+    }
+
+    /**
+     * @return the field by which the tasks are sorted, one of the {@link #SORT_FIELDS}. The tasks that have the same
+     *     value are sorted by their number.
+     */
+    public String getSortField()
+    {
+        return sortField;
+    }
+
+    /**
+     * @return {@code true} if the tasks are sorted in the ascending order, {@code false} otherwise
+     */
+    public boolean isAscending()
+    {
+        return ascending;
+    }
+
+    /**
+     * @param field see {@link #getSortField()}
+     * @param ascending see {@link #isAscending()}
+     * @return this query
+     */
+    public TaskQuery setSort(String field, boolean ascending)
+    {
+        if (!SORT_FIELDS.contains(field)) {
+            throw new IllegalArgumentException(String.format("The tasks can't be sorted by [%s].", field));
+        }
+        this.sortField = field;
+        this.ascending = ascending;
+        return this;
+    }
+
+    /**
+     * @return the number of matching tasks to skip. It is ignored when a {@link #getContinuation() continuation} is
+     *     set.
+     */
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * @param offset see {@link #getOffset()}
+     * @return this query
+     */
+    public TaskQuery setOffset(int offset)
+    {
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of tasks to return
+     */
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * @param limit see {@link #getLimit()}
+     * @return this query
+     */
+    public TaskQuery setLimit(int limit)
+    {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @return the token returned by {@link TaskQueryResult#getContinuation()} for the previous page of results, or
+     *     {@code null} to retrieve the first page. Continuing from a token costs the same regardless of how many
+     *     tasks precede it, unlike skipping them with an {@link #getOffset() offset}.
+     */
+    public String getContinuation()
+    {
+        return continuation;
+    }
+
+    /**
+     * @param continuation see {@link #getContinuation()}. The token can only be used with a query that has the same
+     *     sort as the query that produced it.
+     * @return this query
+     */
+    public TaskQuery setContinuation(String continuation)
+    {
+        this.continuation = continuation;
+        return this;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.stability.Unstable;
+
+import com.xwiki.taskmanager.model.Task;
+
+/**
+ * The tasks found by {@link TaskManager#findTasks(TaskQuery)}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class TaskQueryResult
+{
+    private final List<Task> tasks;
+
+    private final long totalCount;
+
+    private final String continuation;
+
+    private final List<String> taskContinuations;
+
+    /**
+     * @param tasks the tasks of the requested page
+     * @param totalCount the number of tasks that match the query, on all the pages
+     */
+    public TaskQueryResult(List<Task> tasks, long totalCount)
+    {
+        this(tasks, totalCount, null);
+    }
+
+    /**
+     * @param tasks the tasks of the requested page
+     * @param totalCount the number of tasks that match the query, on all the pages
+     * @param continuation the token that retrieves the next page, or {@code null} if this is the last page
+     */
+    public TaskQueryResult(List<Task> tasks, long totalCount, String continuation)
+    {
+        this(tasks, totalCount, continuation, Collections.emptyList());
+    }
+
+    /**
+     * @param tasks the tasks of the requested page
+     * @param totalCount the number of tasks that match the query, on all the pages
+     * @param continuation the token that retrieves the next page, or {@code null} if this is the last page
+     * @param taskContinuations the token that retrieves the tasks located after each of the returned tasks, in the
+     *     same order
+     */
+    public TaskQueryResult(List<Task> tasks, long totalCount, String continuation, List<String> taskContinuations)
+    {
+        this.tasks = tasks;
+        this.totalCount = totalCount;
+        this.continuation = continuation;
+        this.taskContinuations = taskContinuations;
+    }
+
+    /**
+     * @return the tasks of the requested page, in the requested order
+     */
+    public List<Task> getTasks()
+    {
+        return tasks;
+    }
+
+    /**
+     * @return the number of tasks that match the query, on all the pages
+     */
+    public long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    /**
+     * @return the token to pass to {@link TaskQuery#setContinuation(String)} in order to retrieve the next page, or
+     *     {@code null} if there are no more matching tasks
+     */
+    public String getContinuation()
+    {
+        return continuation;
+    }
+
+    /**
+     * @param index the index of one of the returned {@link #getTasks() tasks}
+     * @return the token to pass to {@link TaskQuery#setContinuation(String)} in order to retrieve the tasks located
+     *     after the task at the given index, or {@code null} if it is not known
+     */
+    public String getContinuation(int index)
+    {
+        return index < taskContinuations.size() ? taskContinuations.get(index) : null;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Date;
+import java.util.List;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * A step of the task synchronization that runs when a page is saved, such as the extraction of the task macros or the
+ * save of a task page, along with the steps it triggered. The top level steps that took longer than the configured
+ * threshold are kept by {@link TaskMetrics#getSlowSaveTraces()}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public interface TaskSaveTrace
+{
+    /**
+     * @return the name of the step, followed by the reference of the page it handled, if any.
+     */
+    String getName();
+
+    /**
+     * @return the date when the step started.
+     */
+    Date getStartDate();
+
+    /**
+     * @return the duration of the step, in milliseconds.
+     */
+    long getDuration();
+
+    /**
+     * @return the steps triggered by this step, in the order in which they started.
+     */
+    List<TaskSaveTrace> getChildren();
+}
@@ -69,6 +69,11 @@ public class Task
     // TODO: The value of the "Done" state should be configurable in the administration section.
     public static final String STATUS_DONE = "done";
 
+    /**
+     * The value of the STATUS field denoting that the task has not been completed yet.
+     */
+    public static final String STATUS_IN_PROGRESS = "inProgress";
+
     /**
      * The name of the REPORTER field.
      */
@@ -0,0 +1,95 @@
+package com.xwiki.taskmanager.rest;
+
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+import java.util.List;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Provides the tasks of several wikis of the farm as JSON, in the format expected by the live tables, so that a Task
+ * Report can list the tasks of the whole farm.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Path("/tasks")
+@Unstable
+public interface FarmTasksResource
+{
+    /**
+     * Search for the tasks of several wikis. The wikis that the current user is not allowed to view are not searched.
+     * The tasks that the current user is not allowed to view are part of the result but their data is not disclosed.
+     *
+     * @param wikis the identifiers of the wikis in which the tasks are searched, all the wikis of the farm when none
+     *     is specified
+     * @param offset the index of the first task to return, starting from 1
+     * @param limit the maximum number of tasks to return
+     * @param sort the field by which the tasks are sorted
+     * @param dir the direction of the sort, either {@code asc} or {@code desc}
+     * @param reqNo the number of the live table request, that is sent back in the response
+     * @param status the status of the tasks
+     * @param name a text that the name of the tasks must contain
+     * @param owner a text that the reference of the page that owns the tasks must contain
+     * @param assignees texts of which one must be contained by the reference of the user to whom the tasks are
+     *     assigned
+     * @param reporters texts of which one must be contained by the reference of the user that created the tasks
+     * @param spaces the spaces in which the task pages can be located, including their nested spaces
+     * @param tags the tags of the task pages or of the pages that own the tasks
+     * @param createDate a range of creation dates, as {@code from-to} timestamps
+     * @param duedate a range of due dates, as {@code from-to} timestamps
+     * @param completeDate a range of completion dates, as {@code from-to} timestamps
+     * @param continuation the {@code continuation} token of the previous response, in order to retrieve the next page
+     *     at a cost that doesn't depend on its position. The offset is ignored when it is specified
+     * @return the tasks of the requested page, as JSON, each with the {@code doc_wiki} in which it is located
+     * @throws XWikiRestException if the search failed
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    Response getTasks(
+        @QueryParam("wiki") List<String> wikis,
+        @QueryParam("offset") @DefaultValue("1") int offset,
+        @QueryParam("limit") @DefaultValue("15") int limit,
+        @QueryParam("sort") @DefaultValue("number") String sort,
+        @QueryParam("dir") @DefaultValue("asc") String dir,
+        @QueryParam("reqNo") @DefaultValue("0") int reqNo,
+        @QueryParam("status") String status,
+        @QueryParam("name") String name,
+        @QueryParam("owner") String owner,
+        @QueryParam("assignee") List<String> assignees,
+        @QueryParam("reporter") List<String> reporters,
+        @QueryParam("space") List<String> spaces,
+        @QueryParam("tasktag") List<String> tags,
+        @QueryParam("createDate") String createDate,
+        @QueryParam("duedate") String duedate,
+        @QueryParam("completeDate") String completeDate,
+        @QueryParam("continuation") String continuation
+    ) throws XWikiRestException;
+}
@@ -0,0 +1,121 @@
+package com.xwiki.taskmanager.rest;
+
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+import java.io.InputStream;
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Provides the tasks of a wiki as JSON, in the format expected by the live tables, so that the Task Report can be
+ * displayed without rendering a macro for each task.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Path("/wikis/{wikiName}/tasks")
+@Unstable
+public interface TasksResource
+{
+    /**
+     * Search for the tasks of a wiki. The tasks that the current user is not allowed to view are part of the result
+     * but their data is not disclosed.
+     *
+     * @param wikiName the name of the wiki in which the tasks are searched
+     * @param offset the index of the first task to return, starting from 1
+     * @param limit the maximum number of tasks to return
+     * @param sort the field by which the tasks are sorted
+     * @param dir the direction of the sort, either {@code asc} or {@code desc}
+     * @param reqNo the number of the live table request, that is sent back in the response
+     * @param status the status of the tasks
+     * @param name a text that the name of the tasks must contain
+     * @param owner a text that the reference of the page that owns the tasks must contain
+     * @param assignees texts of which one must be contained by the reference of the user to whom the tasks are
+     *     assigned
+     * @param reporters texts of which one must be contained by the reference of the user that created the tasks
+     * @param spaces the spaces in which the task pages can be located, including their nested spaces
+     * @param tags the tags of the task pages or of the pages that own the tasks
+     * @param createDate a range of creation dates, as {@code from-to} timestamps
+     * @param duedate a range of due dates, as {@code from-to} timestamps
+     * @param completeDate a range of completion dates, as {@code from-to} timestamps
+     * @param continuation the {@code continuation} token of the previous response, in order to retrieve the next page
+     *     at a cost that doesn't depend on its position. The offset is ignored when it is specified
+     * @return the tasks of the requested page, as JSON
+     * @throws XWikiRestException if the search failed
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    Response getTasks(
+        @PathParam("wikiName") String wikiName,
+        @QueryParam("offset") @DefaultValue("1") int offset,
+        @QueryParam("limit") @DefaultValue("15") int limit,
+        @QueryParam("sort") @DefaultValue("number") String sort,
+        @QueryParam("dir") @DefaultValue("asc") String dir,
+        @QueryParam("reqNo") @DefaultValue("0") int reqNo,
+        @QueryParam("status") String status,
+        @QueryParam("name") String name,
+        @QueryParam("owner") String owner,
+        @QueryParam("assignee") List<String> assignees,
+        @QueryParam("reporter") List<String> reporters,
+        @QueryParam("space") List<String> spaces,
+        @QueryParam("tasktag") List<String> tags,
+        @QueryParam("createDate") String createDate,
+        @QueryParam("duedate") String duedate,
+        @QueryParam("completeDate") String completeDate,
+        @QueryParam("continuation") String continuation
+    ) throws XWikiRestException;
+
+    /**
+     * Change the status of several tasks of a wiki at once. The request is a JSON array of objects that identify a
+     * task either by the {@code reference} of its page or by its {@code number}, along with the {@code status} to set,
+     * either {@code inProgress} or {@code done}, e.g.
+     * {@code [{"number": 12, "status": "done"}, {"reference": "Sandbox.Task_3", "status": "inProgress"}]}. The pages
+     * that contain the macros of the modified tasks are updated once, after all the tasks have been modified. At most
+     * 1000 status changes can be sent at once.
+     *
+     * @param wikiName the name of the wiki in which the tasks reside
+     * @param body the JSON array of the status changes
+     * @return a JSON array with the result of each status change, in the order of the request: {@code ok},
+     *     {@code forbidden}, {@code notFound}, {@code invalid} or {@code error}. 400 if the request is malformed
+     * @throws XWikiRestException if the tasks could not be retrieved
+     */
+    @POST
+    @Path("/status")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response changeTaskStatuses(
+        @PathParam("wikiName") String wikiName,
+        InputStream body
+    ) throws XWikiRestException;
+}
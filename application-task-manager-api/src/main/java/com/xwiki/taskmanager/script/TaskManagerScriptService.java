@@ -19,15 +19,23 @@
  */
 package com.xwiki.taskmanager.script;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.script.service.ScriptService;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
 import org.xwiki.stability.Unstable;
 
 import com.xwiki.taskmanager.TaskManagerConfiguration;
+import com.xwiki.taskmanager.TaskMetrics;
+import com.xwiki.taskmanager.TaskSaveTrace;
 
 /**
  * Script service for retrieving information about the Task Manager Application.
@@ -44,6 +52,12 @@ public class TaskManagerScriptService implements ScriptService
     @Inject
     private TaskManagerConfiguration configuration;
 
+    @Inject
+    private TaskMetrics metrics;
+
+    @Inject
+    private ContextualAuthorizationManager authorizationManager;
+
     /**
      * @return the configuration of the application.
      */
@@ -51,4 +65,30 @@ public class TaskManagerScriptService implements ScriptService
     {
         return this.configuration;
     }
+
+    /**
+     * @return the usage statistics of the Task Manager operations, as described by
+     *     {@link TaskMetrics#getStatistics()}, or an empty map if the current script doesn't have programming rights.
+     *     The statistics cover all the wikis of the farm.
+     */
+    public Map<String, Map<String, Number>> getMetrics()
+    {
+        if (!this.authorizationManager.hasAccess(Right.PROGRAM)) {
+            return Collections.emptyMap();
+        }
+        return this.metrics.getStatistics();
+    }
+
+    /**
+     * @return the last task synchronizations that were slower than the configured threshold, as described by
+     *     {@link TaskMetrics#getSlowSaveTraces()}, or an empty list if the current script doesn't have programming
+     *     rights. The traces cover the pages of all the wikis of the farm.
+     */
+    public List<TaskSaveTrace> getSlowSaveTraces()
+    {
+        if (!this.authorizationManager.hasAccess(Right.PROGRAM)) {
+            return Collections.emptyList();
+        }
+        return this.metrics.getSlowSaveTraces();
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.benchmarks;
+
+import java.io.StringReader;
+
+import javax.inject.Provider;
+
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.skinx.SkinExtension;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.taskmanager.TaskManager;
+import com.xwiki.taskmanager.TaskManagerConfiguration;
+import com.xwiki.taskmanager.TaskReferenceGenerator;
+import com.xwiki.taskmanager.model.Task;
+import com.xwiki.taskmanager.script.TaskManagerScriptService;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Sets up the components of the Task Manager the same way as the rendering integration tests of the application, so
+ * that the benchmarks run offline, without a wiki.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+final class BenchmarkComponents
+{
+    static final String STORAGE_FORMAT = "yyyy/MM/dd HH:mm";
+
+    static final DocumentReference OWNER = new DocumentReference("xwiki", "Sandbox", "WebHome");
+
+    private static final String DUE_DATE = "2023/01/01 10:00";
+
+    private BenchmarkComponents()
+    {
+    }
+
+    /**
+     * @return a component manager with all the components of the classpath and mocks for the wiki related ones.
+     * @throws Exception if the components could not be registered.
+     */
+    static MockitoComponentManager create() throws Exception
+    {
+        MockitoComponentManager componentManager = new MockitoComponentManager();
+        componentManager.initialize(BenchmarkComponents.class.getClassLoader());
+
+        componentManager.registerMockComponent(SkinExtension.class, "ssx");
+        componentManager.registerMockComponent(SkinExtension.class, "jsx");
+        componentManager.registerMockComponent(ConfigurationSource.class, "taskmanager");
+        // The xwiki.properties configuration uses the default values.
+        ConfigurationSource xwikiProperties =
+            componentManager.registerMockComponent(ConfigurationSource.class, "xwikiproperties");
+        when(xwikiProperties.getProperty(anyString(), any(Object.class)))
+            .thenAnswer(invocation -> invocation.getArgument(1));
+        componentManager.registerMockComponent(ScriptService.class, "taskmanager");
+        componentManager.registerMockComponent(TaskManagerScriptService.class);
+
+        Provider<XWikiContext> contextProvider =
+            componentManager.registerMockComponent(
+                new DefaultParameterizedType(null, Provider.class, XWikiContext.class));
+        XWikiContext context = componentManager.registerMockComponent(XWikiContext.class);
+        when(contextProvider.get()).thenReturn(context);
+        componentManager.registerMockComponent(ContextualAuthorizationManager.class);
+
+        TaskManager taskManager = componentManager.registerMockComponent(TaskManager.class);
+        when(taskManager.getTask(any(DocumentReference.class))).thenAnswer(invocation -> {
+            DocumentReference reference = invocation.getArgument(0);
+            Task task = new Task();
+            task.setReference(reference);
+            task.setNumber(Integer.parseInt(reference.getName().substring("Task_".length())));
+            return task;
+        });
+
+        TaskManagerConfiguration configuration = componentManager.registerMockComponent(TaskManagerConfiguration.class);
+        when(configuration.getStorageDateFormat()).thenReturn(STORAGE_FORMAT);
+        when(configuration.getDisplayDateFormat()).thenReturn("dd MMMM yyyy");
+        // The benchmarked pages only contain tasks that have a reference.
+        componentManager.registerMockComponent(TaskReferenceGenerator.class);
+
+        componentManager.registerComponent(ComponentManager.class, "context", componentManager);
+        componentManager.registerMockComponent(DocumentReferenceResolver.TYPE_STRING, "macro");
+        return componentManager;
+    }
+
+    /**
+     * @param taskCount the number of task macros of the page
+     * @return the xwiki/2.1 content of a page with the given number of task macros, each with an assignee and a
+     *     deadline
+     */
+    static String createPageContent(int taskCount)
+    {
+        StringBuilder content = new StringBuilder("= Tasks =\n\n");
+        for (int i = 0; i < taskCount; i++) {
+            content.append(String.format("{{task reference=\"Task_%d\" reporter=\"XWiki.User1\" "
+                + "createDate=\"%s\" status=\"inProgress\"}}%n", i, DUE_DATE));
+            content.append(String.format("Task number %d for {{mention reference=\"XWiki.User1\"/}} "
+                + "before {{date value=\"%s\"/}}%n", i, DUE_DATE));
+            content.append("{{/task}}\n\n");
+        }
+        return content.toString();
+    }
+
+    /**
+     * @param componentManager the component manager that provides the parser
+     * @param content some xwiki/2.1 content
+     * @return the parsed content
+     * @throws Exception if the content could not be parsed
+     */
+    static XDOM parse(ComponentManager componentManager, String content) throws Exception
+    {
+        Parser parser = componentManager.getInstance(Parser.class, Syntax.XWIKI_2_1.toIdString());
+        return parser.parse(new StringReader(content));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.benchmarks;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xwiki.component.util.ReflectionUtils;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.taskmanager.TaskManagerConfiguration;
+import com.xwiki.taskmanager.internal.TaskDateCodec;
+
+/**
+ * Compares the rendering of the date macros of a page, as done by {@code DateMacro}, with a new
+ * {@link SimpleDateFormat} for each macro and with the formats cached by {@link TaskDateCodec}. Run it with
+ * {@code -prof gc} to compare the allocation rates.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateFormatBenchmark
+{
+    private static final String STORAGE_FORMAT = "yyyy/MM/dd HH:mm";
+
+    private static final String DISPLAY_FORMAT = "dd MMMM yyyy";
+
+    @Param({ "100", "500" })
+    private int macroCount;
+
+    private String[] dateValues;
+
+    private TaskDateCodec dateCodec;
+
+    /**
+     * Prepare the values of the date macros and a codec that doesn't need a component manager.
+     */
+    @Setup
+    public void setup()
+    {
+        SimpleDateFormat storageFormat = new SimpleDateFormat(STORAGE_FORMAT);
+        dateValues = new String[macroCount];
+        for (int i = 0; i < macroCount; i++) {
+            dateValues[i] = storageFormat.format(new Date(1600000000000L + i * 3600000L));
+        }
+
+        XWikiContext context = new XWikiContext();
+        context.setWikiId("xwiki");
+        dateCodec = new TaskDateCodec();
+        ReflectionUtils.setFieldValue(dateCodec, "configuration", new TaskManagerConfiguration()
+        {
+            @Override
+            public String getStorageDateFormat()
+            {
+                return STORAGE_FORMAT;
+            }
+
+            @Override
+            public String getDisplayDateFormat()
+            {
+                return DISPLAY_FORMAT;
+            }
+
+            @Override
+            public boolean isAsyncUpdateEnabled()
+            {
+                return false;
+            }
+        });
+        Provider<XWikiContext> contextProvider = () -> context;
+        ReflectionUtils.setFieldValue(dateCodec, "contextProvider", contextProvider);
+    }
+
+    /**
+     * @param blackhole consumes the displayed dates
+     * @throws ParseException if a date can't be parsed
+     */
+    @Benchmark
+    public void simpleDateFormatPerMacro(Blackhole blackhole) throws ParseException
+    {
+        for (String dateValue : dateValues) {
+            Date date = new SimpleDateFormat(STORAGE_FORMAT).parse(dateValue);
+            blackhole.consume(new SimpleDateFormat(DISPLAY_FORMAT).format(date));
+        }
+    }
+
+    /**
+     * @param blackhole consumes the displayed dates
+     * @throws ParseException if a date can't be parsed
+     */
+    @Benchmark
+    public void cachedDateCodec(Blackhole blackhole) throws ParseException
+    {
+        for (String dateValue : dateValues) {
+            Date date = dateCodec.parseStorageDate(dateValue);
+            blackhole.consume(dateCodec.formatDisplayDate(date));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.MacroBlockMatcher;
+import org.xwiki.rendering.macro.Macro;
+import org.xwiki.rendering.macro.MacroExecutionException;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import com.xwiki.taskmanager.macro.DateMacroParameters;
+import com.xwiki.taskmanager.macro.TaskMacroParameters;
+import com.xwiki.taskmanager.model.Task;
+
+/**
+ * Measures the execution of the task and date macros of a page with the given number of tasks, as done on each view
+ * of the page.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MacroExecutionBenchmark
+{
+    private static final String DATE_MACRO = "date";
+
+    @Param({ "10", "100", "1000" })
+    private int taskCount;
+
+    private MockitoComponentManager componentManager;
+
+    private Macro<TaskMacroParameters> taskMacro;
+
+    private Macro<DateMacroParameters> dateMacro;
+
+    private List<MacroBlock> taskBlocks;
+
+    private List<TaskMacroParameters> taskParameters;
+
+    private List<MacroTransformationContext> taskContexts;
+
+    private DateMacroParameters dateParameters;
+
+    private MacroTransformationContext dateContext;
+
+    /**
+     * Parse the page and prepare the parameters of its macros.
+     *
+     * @throws Exception if the components could not be initialized
+     */
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception
+    {
+        componentManager = BenchmarkComponents.create();
+        taskMacro = componentManager.getInstance(Macro.class, Task.MACRO_NAME);
+        dateMacro = componentManager.getInstance(Macro.class, DATE_MACRO);
+
+        XDOM content = BenchmarkComponents.parse(componentManager, BenchmarkComponents.createPageContent(taskCount));
+        taskBlocks = content.getBlocks(new MacroBlockMatcher(Task.MACRO_NAME), Block.Axes.DESCENDANT);
+        taskParameters = new ArrayList<>(taskBlocks.size());
+        taskContexts = new ArrayList<>(taskBlocks.size());
+        for (MacroBlock taskBlock : taskBlocks) {
+            TaskMacroParameters parameters = new TaskMacroParameters();
+            parameters.setReference(taskBlock.getParameter(Task.REFERENCE));
+            parameters.setReporter(taskBlock.getParameter(Task.REPORTER));
+            parameters.setCreateDate(taskBlock.getParameter(Task.CREATE_DATE));
+            parameters.setStatus(taskBlock.getParameter(Task.STATUS));
+            taskParameters.add(parameters);
+            taskContexts.add(createContext(taskBlock));
+        }
+
+        String dateValue = "2023/01/01 10:00";
+        dateParameters = new DateMacroParameters();
+        dateParameters.setValue(dateValue);
+        dateContext = createContext(new MacroBlock(DATE_MACRO, Collections.singletonMap("value", dateValue), true));
+        dateContext.setInline(true);
+    }
+
+    /**
+     * @throws Exception if the components could not be disposed
+     */
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        componentManager.dispose();
+    }
+
+    /**
+     * @param blackhole consumes the result of the macros
+     * @throws MacroExecutionException if a macro fails
+     */
+    @Benchmark
+    public void executeTaskMacros(Blackhole blackhole) throws MacroExecutionException
+    {
+        for (int i = 0; i < taskBlocks.size(); i++) {
+            blackhole.consume(
+                taskMacro.execute(taskParameters.get(i), taskBlocks.get(i).getContent(), taskContexts.get(i)));
+        }
+    }
+
+    /**
+     * @param blackhole consumes the result of the macros
+     * @throws MacroExecutionException if a macro fails
+     */
+    @Benchmark
+    public void executeDateMacros(Blackhole blackhole) throws MacroExecutionException
+    {
+        for (int i = 0; i < taskCount; i++) {
+            blackhole.consume(dateMacro.execute(dateParameters, null, dateContext));
+        }
+    }
+
+    private MacroTransformationContext createContext(MacroBlock macroBlock)
+    {
+        MacroTransformationContext context = new MacroTransformationContext();
+        context.setCurrentMacroBlock(macroBlock);
+        context.setSyntax(Syntax.XWIKI_2_1);
+        context.setInline(false);
+        return context;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.benchmarks;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.internal.TaskBlockProcessor;
+
+/**
+ * Measures the generation of the content of the task macros, as done by {@link TaskBlockProcessor} whenever the macro
+ * of a task is rewritten from its task object, for the given number of tasks.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskContentBenchmark
+{
+    @Param({ "10", "100", "1000" })
+    private int taskCount;
+
+    private MockitoComponentManager componentManager;
+
+    private TaskBlockProcessor blockProcessor;
+
+    private FastDateFormat storageFormat;
+
+    private String[] names;
+
+    private Date dueDate;
+
+    /**
+     * Prepare the names of the tasks.
+     *
+     * @throws Exception if the components could not be initialized
+     */
+    @Setup
+    public void setup() throws Exception
+    {
+        componentManager = BenchmarkComponents.create();
+        blockProcessor = componentManager.getInstance(TaskBlockProcessor.class);
+        storageFormat = FastDateFormat.getInstance(BenchmarkComponents.STORAGE_FORMAT);
+        dueDate = new Date(1600000000000L);
+        names = new String[taskCount];
+        for (int i = 0; i < taskCount; i++) {
+            names[i] = String.format("Task number %d with a **bold** word", i);
+        }
+    }
+
+    /**
+     * @throws Exception if the components could not be disposed
+     */
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        componentManager.dispose();
+    }
+
+    /**
+     * @param blackhole consumes the generated blocks
+     * @throws TaskException if the content of a task could not be generated
+     */
+    @Benchmark
+    public void generateTaskContentBlocks(Blackhole blackhole) throws TaskException
+    {
+        for (String name : names) {
+            blackhole.consume(blockProcessor.generateTaskContentBlocks("XWiki.User1", dueDate, name, storageFormat));
+        }
+    }
+
+    /**
+     * @param blackhole consumes the rendered contents
+     * @throws TaskException if the content of a task could not be generated or rendered
+     */
+    @Benchmark
+    public void generateAndRenderTaskContent(Blackhole blackhole) throws TaskException
+    {
+        for (String name : names) {
+            List<Block> blocks = blockProcessor.generateTaskContentBlocks("XWiki.User1", dueDate, name, storageFormat);
+            blackhole.consume(blockProcessor.renderTaskContent(blocks, Syntax.XWIKI_2_1));
+        }
+    }
+}
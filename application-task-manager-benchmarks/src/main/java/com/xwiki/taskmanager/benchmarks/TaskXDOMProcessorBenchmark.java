@@ -0,0 +1,152 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.benchmarks;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import com.xpn.xwiki.objects.BaseObject;
+import com.xwiki.taskmanager.internal.TaskXDOMProcessor;
+import com.xwiki.taskmanager.model.Task;
+
+/**
+ * Measures the work done by {@link TaskXDOMProcessor} on the content of a page with many task macros: the extraction
+ * of the tasks, that happens on each save of the page, and the rewrite of the task macros, that happens when the
+ * task pages are modified. The rewrites are measured both for a single task, as done for each modified task object,
+ * and for all the tasks of the page at once, as done when the updates of the page are coalesced.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaskXDOMProcessorBenchmark
+{
+    @Param({ "10", "100", "1000" })
+    private int taskCount;
+
+    private MockitoComponentManager componentManager;
+
+    private TaskXDOMProcessor processor;
+
+    private XDOM content;
+
+    private Map<DocumentReference, BaseObject> firstTask;
+
+    private Map<DocumentReference, BaseObject> allTasks;
+
+    /**
+     * Parse the page and create the task objects that are synced with its task macros.
+     *
+     * @throws Exception if the components could not be initialized
+     */
+    @Setup
+    public void setup() throws Exception
+    {
+        componentManager = BenchmarkComponents.create();
+        processor = componentManager.getInstance(TaskXDOMProcessor.class);
+        content = BenchmarkComponents.parse(componentManager, BenchmarkComponents.createPageContent(taskCount));
+
+        allTasks = new LinkedHashMap<>();
+        Date date = new Date(1600000000000L);
+        for (int i = 0; i < taskCount; i++) {
+            DocumentReference reference = new DocumentReference(String.format("Task_%d", i),
+                BenchmarkComponents.OWNER.getLastSpaceReference());
+            BaseObject taskObject = new BaseObject();
+            taskObject.setDocumentReference(reference);
+            taskObject.setStringValue(Task.NAME, String.format("Updated task number %d", i));
+            taskObject.setStringValue(Task.STATUS, Task.STATUS_DONE);
+            taskObject.setStringValue(Task.REPORTER, "XWiki.User1");
+            taskObject.setLargeStringValue(Task.ASSIGNEE, "XWiki.User2");
+            taskObject.setDateValue(Task.CREATE_DATE, date);
+            taskObject.setDateValue(Task.DUE_DATE, date);
+            taskObject.setDateValue(Task.COMPLETE_DATE, date);
+            allTasks.put(reference, taskObject);
+        }
+        Map.Entry<DocumentReference, BaseObject> first = allTasks.entrySet().iterator().next();
+        firstTask = Collections.singletonMap(first.getKey(), first.getValue());
+    }
+
+    /**
+     * @throws Exception if the components could not be disposed
+     */
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        componentManager.dispose();
+    }
+
+    /**
+     * @return the tasks of the page
+     */
+    @Benchmark
+    public Object extract()
+    {
+        return processor.extract(content, BenchmarkComponents.OWNER);
+    }
+
+    /**
+     * Rewrite the macro of a single task. The page is left with the same number of task macros, so the rewrite can
+     * be repeated on the same content.
+     *
+     * @return the rewritten content
+     */
+    @Benchmark
+    public Object rewriteOneTask()
+    {
+        processor.updateTaskMacroCalls(content, BenchmarkComponents.OWNER, firstTask);
+        return content;
+    }
+
+    /**
+     * Rewrite the macros of all the tasks of the page in a single pass.
+     *
+     * @return the rewritten content
+     */
+    @Benchmark
+    public Object rewriteAllTasks()
+    {
+        processor.updateTaskMacroCalls(content, BenchmarkComponents.OWNER, allTasks);
+        return content;
+    }
+}
@@ -54,6 +54,12 @@ public abstract class AbstractTaskEventListener extends AbstractEventListener
 
     protected static final String TASK_UPDATE_FLAG = "taskUpdating";
 
+    /**
+     * The context property holding the reference of the page whose tasks are being deleted along with it. The macro
+     * calls of these tasks don't need to be removed from the page.
+     */
+    protected static final String OWNER_DELETION_FLAG = "taskmanager.deletedOwner";
+
     @Inject
     protected DocumentReferenceResolver<String> resolver;
 
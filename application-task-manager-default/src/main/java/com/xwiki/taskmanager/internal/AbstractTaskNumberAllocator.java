@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xwiki.taskmanager.TaskNumberAllocator;
+
+/**
+ * Base class for the {@link TaskNumberAllocator} implementations.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public abstract class AbstractTaskNumberAllocator implements TaskNumberAllocator
+{
+    @Inject
+    private Provider<QueryManager> queryManagerProvider;
+
+    /**
+     * @param wikiId the wiki where to look for tasks.
+     * @return the highest number used by a task of the given wiki or 0 if the wiki has no task. It is used to seed the
+     *     persisted counters, so that the tasks created before them are taken into account.
+     * @throws QueryException if the query failed.
+     */
+    protected int getMaxNumber(String wikiId) throws QueryException
+    {
+        String statement =
+            "select max(taskObject.number) "
+                + "from Document doc, doc.object(TaskManager.Code.TaskClass) as taskObject";
+        List<Integer> result =
+            queryManagerProvider.get().createQuery(statement, Query.XWQL).setWiki(wikiId).execute();
+        if (result.size() > 0 && result.get(0) != null) {
+            return result.get(0);
+        }
+        return 0;
+    }
+}
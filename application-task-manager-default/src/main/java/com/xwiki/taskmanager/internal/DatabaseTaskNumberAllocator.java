@@ -0,0 +1,108 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.hibernate.jdbc.ReturningWork;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.query.QueryException;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.TaskNumberAllocator;
+
+/**
+ * The default {@link TaskNumberAllocator}. It relies on a {@link TaskNumberSequence} stored in
+ * the database of each wiki, which makes it safe to use in a cluster. The table of the sequence is created by
+ * {@link TaskTablesDataMigration}. While it's missing, the numbers are reserved by the
+ * {@link LocalTaskNumberAllocator}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Singleton
+public class DatabaseTaskNumberAllocator extends AbstractTaskNumberAllocator
+{
+    private static final TaskNumberSequence SEQUENCE = new TaskNumberSequence("taskmanager.task.number");
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    @Named("local")
+    private Provider<TaskNumberAllocator> localAllocatorProvider;
+
+    @Override
+    public int reserve(String wikiId, int count) throws TaskException
+    {
+        XWikiContext context = contextProvider.get();
+        String currentWikiId = context.getWikiId();
+        try {
+            context.setWikiId(wikiId);
+            // The tasks can be given a number without the counter, e.g. when they are imported, so the sequence is
+            // raised to the highest number in use.
+            int maxNumber = getMaxNumber(wikiId);
+            ReturningWork<Integer> work = connection -> {
+                if (!SEQUENCE.tableExists(connection)) {
+                    return null;
+                }
+                if (!SEQUENCE.raise(connection, maxNumber)) {
+                    SEQUENCE.create(connection, maxNumber);
+                }
+                return SEQUENCE.increment(connection, count);
+            };
+            Integer lastReservedNumber;
+            try {
+                lastReservedNumber = execute(context, work);
+            } catch (XWikiException e) {
+                // Most probably, the sequence was created concurrently by another thread or cluster node.
+                logger.debug("Failed to reserve task numbers, retrying.", e);
+                lastReservedNumber = execute(context, work);
+            }
+            if (lastReservedNumber == null) {
+                logger.warn("The table [{}] is missing from the wiki [{}], the task numbers are reserved without it "
+                    + "until it's created by the database migrations.", TaskNumberSequence.TABLE_NAME, wikiId);
+                return localAllocatorProvider.get().reserve(wikiId, count);
+            }
+            return lastReservedNumber - count + 1;
+        } catch (XWikiException | QueryException e) {
+            throw new TaskException(String.format("Failed to reserve task numbers on the wiki [%s].", wikiId), e);
+        } finally {
+            context.setWikiId(currentWikiId);
+        }
+    }
+
+    private <T> T execute(XWikiContext context, ReturningWork<T> work) throws XWikiException
+    {
+        XWikiHibernateStore store = context.getWiki().getHibernateStore();
+        return store.executeWrite(context, session -> session.doReturningWork(work));
+    }
+}
@@ -0,0 +1,436 @@
+package com.xwiki.taskmanager.internal;
+
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+import org.xwiki.wiki.manager.WikiManagerException;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+import com.xwiki.taskmanager.FarmTaskManager;
+import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.TaskManager;
+import com.xwiki.taskmanager.TaskQuery;
+import com.xwiki.taskmanager.TaskQueryResult;
+import com.xwiki.taskmanager.model.Task;
+
+/**
+ * Default implementation of {@link FarmTaskManager}. Each wiki is searched by a bounded pool of workers, for at most
+ * the number of tasks of the requested page, and the sorted results of the wikis are merged with a priority queue.
+ * The continuation tokens hold the position of the last returned task of each wiki, as returned by the search of that
+ * wiki, so that each wiki resumes its search where it stopped, in the order of its own database. The pages never skip
+ * nor repeat a task, even when the databases of the wikis don't compare the strings the same way: the merge only
+ * decides how the results of the wikis are interleaved.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Singleton
+public class DefaultFarmTaskManager implements FarmTaskManager, Initializable, Disposable
+{
+    private static final String THREADS_PROPERTY = "taskmanager.farmSearchThreads";
+
+    private static final int DEFAULT_THREADS = 8;
+
+    private static final char SEPARATOR = '|';
+
+    /**
+     * Without a continuation token, each wiki returns all the tasks up to the requested page, so the offset is bounded.
+     */
+    private static final int MAX_OFFSET = 1000;
+
+    /**
+     * The order in which the string sort values of the wikis are interleaved. It ignores the case first, like the
+     * default collation of most databases.
+     */
+    private static final Comparator<String> STRING_ORDER =
+        String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    @Inject
+    private TaskManager taskManager;
+
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private ContextualAuthorizationManager authorizationManager;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Inject
+    private TaskMetricsRegistry metrics;
+
+    private ExecutorService executor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int threads = Math.max(1, xwikiProperties.getProperty(THREADS_PROPERTY, DEFAULT_THREADS));
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Task Manager farm search worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public TaskQueryResult findTasks(TaskQuery query, List<String> wikiIds) throws TaskException
+    {
+        return metrics.time("farm.findTasks", () -> searchTasks(query, wikiIds));
+    }
+
+    private TaskQueryResult searchTasks(TaskQuery query, List<String> wikiIds) throws TaskException
+    {
+        FarmPosition position =
+            query.getContinuation() == null ? null : FarmPosition.fromToken(query.getContinuation());
+        if (position == null && query.getOffset() > MAX_OFFSET) {
+            throw new TaskException(String.format("The tasks beyond the first [%d] of a farm search can only be "
+                + "retrieved with a continuation token.", MAX_OFFSET));
+        }
+        // Without a continuation, the offset is applied to the merged results so each wiki returns all the tasks
+        // that can be part of the requested page.
+        int wikiLimit = position == null ? query.getOffset() + query.getLimit() : query.getLimit();
+        DocumentReference userReference = contextProvider.get().getUserReference();
+
+        List<WikiSearch> searches = new ArrayList<>();
+        for (String wikiId : getSearchedWikis(wikiIds)) {
+            searches.add(new WikiSearch(wikiId, userReference, createWikiQuery(query, wikiId, wikiLimit,
+                position)));
+        }
+        List<Future<?>> futures = new ArrayList<>(searches.size());
+        for (WikiSearch search : searches) {
+            futures.add(executor.submit(search));
+        }
+        try {
+            for (int i = 0; i < searches.size(); i++) {
+                waitFor(futures.get(i), searches.get(i));
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return merge(query, searches, position == null ? query.getOffset() : 0, position);
+    }
+
+    private List<String> getSearchedWikis(List<String> wikiIds) throws TaskException
+    {
+        List<String> searchedWikis = new ArrayList<>();
+        try {
+            boolean allWikis = wikiIds == null || wikiIds.isEmpty();
+            for (String wikiId : new LinkedHashSet<>(allWikis ? wikiDescriptorManager.getAllIds() : wikiIds)) {
+                if ((allWikis || wikiDescriptorManager.exists(wikiId))
+                    && authorizationManager.hasAccess(Right.VIEW, new WikiReference(wikiId)))
+                {
+                    searchedWikis.add(wikiId);
+                }
+            }
+        } catch (WikiManagerException e) {
+            throw new TaskException("Failed to retrieve the wikis in which the tasks are searched.", e);
+        }
+        return searchedWikis;
+    }
+
+    private TaskQuery createWikiQuery(TaskQuery query, String wikiId, int limit, FarmPosition position)
+    {
+        TaskQuery wikiQuery = new TaskQuery()
+            .setStatus(query.getStatus())
+            .setName(query.getName())
+            .setOwner(query.getOwner())
+            .setAssignees(query.getAssignees())
+            .setReporters(query.getReporters())
+            .setSpaces(query.getSpaces())
+            .setTags(query.getTags())
+            .setSort(query.getSortField(), query.isAscending())
+            .setLimit(limit);
+        query.getDateRanges().forEach((field, range) -> wikiQuery.setDateRange(field, range[0], range[1]));
+        if (position != null) {
+            // The wikis that didn't return any task yet are searched from the start.
+            wikiQuery.setContinuation(position.wikiTokens.get(wikiId));
+        }
+        return wikiQuery;
+    }
+
+    private void waitFor(Future<?> future, WikiSearch search) throws TaskException
+    {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TaskException(String.format("Interrupted while searching the tasks of the wiki [%s].",
+                search.wikiId), e);
+        } catch (ExecutionException e) {
+            throw new TaskException(String.format("Failed to search the tasks of the wiki [%s].", search.wikiId),
+                e.getCause());
+        }
+        if (search.error != null) {
+            throw new TaskException(String.format("Failed to search the tasks of the wiki [%s].", search.wikiId),
+                search.error);
+        }
+    }
+
+    private TaskQueryResult merge(TaskQuery query, List<WikiSearch> searches, int skip, FarmPosition position)
+    {
+        Comparator<Task> order = getOrder(query);
+        PriorityQueue<Cursor> cursors =
+            new PriorityQueue<>(Math.max(1, searches.size()), (a, b) -> order.compare(a.current(), b.current()));
+        long totalCount = 0;
+        boolean hasMore = false;
+        for (WikiSearch search : searches) {
+            totalCount += search.result.getTotalCount();
+            hasMore |= search.result.getContinuation() != null;
+            if (!search.result.getTasks().isEmpty()) {
+                cursors.add(new Cursor(search));
+            }
+        }
+
+        List<Task> tasks = new ArrayList<>(Math.max(0, query.getLimit()));
+        // The skipped tasks are on the previous pages, so they move the position of their wiki too.
+        Map<String, String> wikiTokens = position == null ? new LinkedHashMap<>() : position.wikiTokens;
+        int index = 0;
+        while (!cursors.isEmpty() && tasks.size() < query.getLimit()) {
+            Cursor cursor = cursors.poll();
+            if (index++ >= skip) {
+                tasks.add(cursor.current());
+            }
+            wikiTokens.put(cursor.search.wikiId, cursor.search.result.getContinuation(cursor.index));
+            if (cursor.next()) {
+                cursors.add(cursor);
+            }
+        }
+
+        String continuation = null;
+        if ((hasMore || !cursors.isEmpty()) && !tasks.isEmpty() && !wikiTokens.containsValue(null)) {
+            continuation = new FarmPosition(wikiTokens).toToken();
+        }
+        return new TaskQueryResult(tasks, totalCount, continuation);
+    }
+
+    /**
+     * @return the order of the results of {@link TaskManager#findTasks(TaskQuery)}, followed by the identifier of the
+     *     wiki of the tasks
+     */
+    private Comparator<Task> getOrder(TaskQuery query)
+    {
+        String sortField = query.getSortField();
+        boolean ascending = query.isAscending();
+        Comparator<Task> byNumber = Comparator.comparingInt(Task::getNumber);
+        return ((Comparator<Task>) (a, b) -> compareSortValues(getSortValue(a, sortField),
+            getSortValue(b, sortField), ascending))
+            .thenComparing(ascending ? byNumber : byNumber.reversed())
+            .thenComparing(task -> task.getReference().getWikiReference().getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareSortValues(Object value, Object otherValue, boolean ascending)
+    {
+        // The tasks without a value are always last, whatever the direction.
+        if (value == null || otherValue == null) {
+            return value == null ? (otherValue == null ? 0 : 1) : -1;
+        }
+        int comparison = value instanceof String ? STRING_ORDER.compare((String) value, (String) otherValue)
+            : ((Comparable<Object>) value).compareTo(otherValue);
+        return ascending ? comparison : -comparison;
+    }
+
+    private static Object getSortValue(Task task, String sortField)
+    {
+        switch (sortField) {
+            case Task.NAME:
+                return task.getName();
+            case Task.STATUS:
+                return task.getStatus();
+            case Task.DUE_DATE:
+                return task.getDueDate();
+            case Task.CREATE_DATE:
+                return task.getCreateDate();
+            case Task.COMPLETE_DATE:
+                return task.getCompleteDate();
+            case Task.ASSIGNEE:
+                return getLocalValue(task.getAssignee());
+            case Task.REPORTER:
+                return getLocalValue(task.getReporter());
+            case Task.OWNER:
+                return getLocalValue(task.getOwner());
+            default:
+                // The tasks sorted by number are only ordered by their number.
+                return null;
+        }
+    }
+
+    /**
+     * The wikis store the user and page references mostly without the wiki, so the tasks are interleaved on the local
+     * part of the references.
+     */
+    private static String getLocalValue(DocumentReference reference)
+    {
+        return reference == null ? null : new LocalDocumentReference(reference).toString();
+    }
+
+    /**
+     * The search of the tasks of a wiki, executed in the wiki on behalf of the user that searches the farm.
+     */
+    private final class WikiSearch extends AbstractXWikiRunnable
+    {
+        private final String wikiId;
+
+        private final DocumentReference userReference;
+
+        private final TaskQuery query;
+
+        private TaskQueryResult result;
+
+        private TaskException error;
+
+        WikiSearch(String wikiId, DocumentReference userReference, TaskQuery query)
+        {
+            this.wikiId = wikiId;
+            this.userReference = userReference;
+            this.query = query;
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            XWikiContext context = contextProvider.get();
+            context.setWikiId(wikiId);
+            context.setUserReference(userReference);
+            try {
+                result = taskManager.findTasks(query);
+            } catch (TaskException e) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * The next task of the sorted results of a wiki.
+     */
+    private static final class Cursor
+    {
+        private final WikiSearch search;
+
+        private int index;
+
+        Cursor(WikiSearch search)
+        {
+            this.search = search;
+        }
+
+        Task current()
+        {
+            return search.result.getTasks().get(index);
+        }
+
+        boolean next()
+        {
+            return ++index < search.result.getTasks().size();
+        }
+    }
+
+    /**
+     * The position of the last returned task of each wiki, as a continuation token of the search of that wiki.
+     */
+    private static final class FarmPosition
+    {
+        private final Map<String, String> wikiTokens;
+
+        FarmPosition(Map<String, String> wikiTokens)
+        {
+            this.wikiTokens = wikiTokens;
+        }
+
+        static FarmPosition fromToken(String token) throws TaskException
+        {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                String[] parts = StringUtils.splitPreserveAllTokens(decoded, SEPARATOR);
+                if (parts.length % 2 != 0) {
+                    throw new TaskException(String.format("Invalid continuation token [%s].", token));
+                }
+                Map<String, String> wikiTokens = new LinkedHashMap<>();
+                for (int i = 0; i < parts.length; i += 2) {
+                    if (parts[i].isEmpty() || parts[i + 1].isEmpty()) {
+                        throw new TaskException(String.format("Invalid continuation token [%s].", token));
+                    }
+                    wikiTokens.put(parts[i], parts[i + 1]);
+                }
+                return new FarmPosition(wikiTokens);
+            } catch (IllegalArgumentException e) {
+                throw new TaskException(String.format("Invalid continuation token [%s].", token), e);
+            }
+        }
+
+        String toToken()
+        {
+            // The identifiers of the wikis and the base64 tokens of their searches don't contain the separator.
+            StringBuilder decoded = new StringBuilder();
+            for (Map.Entry<String, String> wikiToken : wikiTokens.entrySet()) {
+                if (decoded.length() > 0) {
+                    decoded.append(SEPARATOR);
+                }
+                decoded.append(wikiToken.getKey()).append(SEPARATOR).append(wikiToken.getValue());
+            }
+            return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(decoded.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -19,22 +19,30 @@
  */
 package com.xwiki.taskmanager.internal;
 
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
-import org.xwiki.query.Query;
-import org.xwiki.query.QueryException;
-import org.xwiki.query.QueryManager;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
 
+import com.xpn.xwiki.XWikiContext;
 import com.xwiki.taskmanager.TaskCounter;
 import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.TaskNumberAllocator;
 
 /**
- * The default implementation of {@link com.xwiki.taskmanager.TaskCounter}.
+ * The default implementation of {@link com.xwiki.taskmanager.TaskCounter}. The numbers are reserved by blocks through
+ * a {@link TaskNumberAllocator} and are then handed out from memory without any locking. The storage is only accessed
+ * when the current block of a wiki is exhausted. Since a reserved block is never handed out again, the numbers that
+ * were not used before a restart are skipped.
  *
  * @version $Id$
  * @since 1.0
@@ -43,28 +51,89 @@ import com.xwiki.taskmanager.TaskException;
 @Singleton
 public class DefaultTaskCounter implements TaskCounter
 {
+    private static final int BLOCK_SIZE = 100;
+
+    private static final String ALLOCATOR_PROPERTY = "taskmanager.numberAllocator";
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
     @Inject
-    private Provider<QueryManager> queryManagerProvider;
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
 
-    private int lastReturnedNumber = -1;
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Inject
+    private TaskMetricsRegistry metrics;
+
+    private final Map<String, NumberBlock> blocks = new ConcurrentHashMap<>();
 
     @Override
-    public synchronized int getNextNumber() throws TaskException
+    public int getNextNumber() throws TaskException
     {
-        String statement =
-            "select max(taskObject.number) "
-                + "from Document doc, doc.object(TaskManager.Code.TaskClass) as taskObject";
+        long startTime = System.nanoTime();
         try {
-            List<Integer> result = queryManagerProvider.get().createQuery(statement, Query.XWQL).execute();
-
-            int number = 0;
-            if (result.size() > 0 && result.get(0) != null) {
-                number = result.get(0);
+            String wikiId = contextProvider.get().getWikiId();
+            while (true) {
+                NumberBlock block = blocks.get(wikiId);
+                if (block != null) {
+                    int number = block.next();
+                    if (number != -1) {
+                        return number;
+                    }
+                }
+                reserveBlock(wikiId, block);
             }
-            lastReturnedNumber = Integer.max(number, lastReturnedNumber) + 1;
-            return lastReturnedNumber;
-        } catch (QueryException e) {
-            throw new TaskException("Failed to get the next valid number.", e);
+        } finally {
+            metrics.recordDuration("counter.getNextNumber", startTime);
+        }
+    }
+
+    private synchronized void reserveBlock(String wikiId, NumberBlock exhaustedBlock) throws TaskException
+    {
+        if (blocks.get(wikiId) != exhaustedBlock) {
+            // Another thread already reserved a new block.
+            return;
+        }
+        int start = getAllocator().reserve(wikiId, BLOCK_SIZE);
+        blocks.put(wikiId, new NumberBlock(start, start + BLOCK_SIZE - 1));
+    }
+
+    private TaskNumberAllocator getAllocator() throws TaskException
+    {
+        String hint = xwikiProperties.getProperty(ALLOCATOR_PROPERTY, "default");
+        try {
+            return componentManagerProvider.get().getInstance(TaskNumberAllocator.class, hint);
+        } catch (ComponentLookupException e) {
+            throw new TaskException(String.format("Failed to get the task number allocator [%s].", hint), e);
+        }
+    }
+
+    /**
+     * A range of reserved numbers that can be handed out concurrently.
+     */
+    private static final class NumberBlock
+    {
+        private final AtomicInteger next;
+
+        private final int end;
+
+        NumberBlock(int start, int end)
+        {
+            this.next = new AtomicInteger(start);
+            this.end = end;
+        }
+
+        /**
+         * @return the next number of the block or -1 if the block is exhausted.
+         */
+        int next()
+        {
+            int number = this.next.getAndIncrement();
+            return number <= this.end ? number : -1;
         }
     }
 }
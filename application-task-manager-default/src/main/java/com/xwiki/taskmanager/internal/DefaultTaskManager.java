@@ -19,19 +19,28 @@
  */
 package com.xwiki.taskmanager.internal;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.WikiReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
@@ -40,8 +49,11 @@ import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.BaseProperty;
 import com.xwiki.taskmanager.TaskException;
 import com.xwiki.taskmanager.TaskManager;
+import com.xwiki.taskmanager.TaskQuery;
+import com.xwiki.taskmanager.TaskQueryResult;
 import com.xwiki.taskmanager.model.Task;
 
 /**
@@ -57,6 +69,76 @@ public class DefaultTaskManager implements TaskManager
     private static final LocalDocumentReference TASK_CLASS_REFERENCE = new LocalDocumentReference(Arrays.asList(
         "TaskManager", "Code"), "TaskClass");
 
+    private static final String TASK_OBJECTS_BY_NUMBER_STATEMENT = "select taskObj.id, taskObj.name "
+        + "from BaseObject as taskObj, IntegerProperty as numberProp "
+        + "where taskObj.className = 'TaskManager.Code.TaskClass' "
+        + "and taskObj.id = numberProp.id.id and numberProp.id.name = 'number' "
+        + "and numberProp.value in (:numbers)";
+
+    private static final String TASK_OBJECTS_BY_NAME_STATEMENT = "select taskObj.id, taskObj.name "
+        + "from BaseObject as taskObj "
+        + "where taskObj.className = 'TaskManager.Code.TaskClass' and taskObj.name in (:names)";
+
+    private static final String TASKS_BY_CANONICAL_OWNER_STATEMENT = "select doc.fullName "
+        + "from Document doc, doc.object(TaskManager.Code.TaskClass) as task where task.owner = :ownerRef";
+
+    private static final String TASKS_BY_OWNER_STATEMENT = "select doc.fullName, task.owner "
+        + "from Document doc, doc.object(TaskManager.Code.TaskClass) as task "
+        + "where task.owner = :absoluteOwnerRef "
+        + "or task.owner = :compactOwnerRef "
+        + "or (task.owner = :relativeOwnerRef and doc.space = :ownerSpaceRef)";
+
+    private static final String TASK_PROPERTIES_STATEMENT =
+        "select prop from BaseProperty as prop where prop.id.id in (:ids) and prop.id.name in (:properties)";
+
+    private static final String TASK_SEARCH_FROM = " from XWikiDocument as doc, BaseObject as taskObj, "
+        + "IntegerProperty as numberProp";
+
+    private static final String TASK_SEARCH_WHERE = " where taskObj.name = doc.fullName "
+        + "and taskObj.className = 'TaskManager.Code.TaskClass' "
+        + "and numberProp.id.id = taskObj.id and numberProp.id.name = 'number'";
+
+    private static final String TASK_TAG_CONDITION = " and exists (select tagObj.id "
+        + "from BaseObject as tagObj, DBStringListProperty as tagProp join tagProp.list as tag, "
+        + "StringProperty as tagOwnerProp "
+        + "where tagOwnerProp.id.id = taskObj.id and tagOwnerProp.id.name = 'owner' "
+        + "and tagObj.className = 'XWiki.TagClass' "
+        + "and (tagObj.name = doc.fullName or tagOwnerProp.value like concat('%', tagObj.name)) "
+        + "and tagProp.id.id = tagObj.id and tagProp.id.name = 'tags' and lower(tag) in (:tags))";
+
+    private static final Map<String, String> PROPERTY_TYPES = new HashMap<>();
+
+    private static final String LARGE_STRING_PROPERTY = "LargeStringProperty";
+
+    /**
+     * The maximum number of values bound to an {@code in} condition. Some databases, such as Oracle, don't accept
+     * more than 1000 values in a list.
+     */
+    private static final int IN_LIST_CHUNK_SIZE = 500;
+
+    private static final String LIKE_ESCAPE = " escape '!'";
+
+    private static final String AND = " and ";
+
+    private static final String OR = " or ";
+
+    private static final List<String> TASK_PROPERTIES = Arrays.asList(Task.NAME, Task.NUMBER, Task.OWNER,
+        Task.ASSIGNEE, Task.STATUS, Task.REPORTER, Task.DUE_DATE, Task.CREATE_DATE, Task.COMPLETE_DATE);
+
+    static {
+        PROPERTY_TYPES.put(Task.NAME, "StringProperty");
+        PROPERTY_TYPES.put(Task.STATUS, "StringProperty");
+        PROPERTY_TYPES.put(Task.OWNER, "StringProperty");
+        PROPERTY_TYPES.put(Task.ASSIGNEE, LARGE_STRING_PROPERTY);
+        PROPERTY_TYPES.put(Task.REPORTER, LARGE_STRING_PROPERTY);
+        PROPERTY_TYPES.put(Task.DUE_DATE, "DateProperty");
+        PROPERTY_TYPES.put(Task.CREATE_DATE, "DateProperty");
+        PROPERTY_TYPES.put(Task.COMPLETE_DATE, "DateProperty");
+    }
+
+    @Inject
+    private Logger logger;
+
     @Inject
     private DocumentReferenceResolver<String> resolver;
 
@@ -69,13 +151,42 @@ public class DefaultTaskManager implements TaskManager
     @Inject
     private EntityReferenceSerializer<String> serializer;
 
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
     @Inject
     @Named("compactwiki")
     private EntityReferenceSerializer<String> compactserializer;
 
+    @Inject
+    private TaskNumberIndex taskNumberIndex;
+
+    @Inject
+    private TaskCache taskCache;
+
+    @Inject
+    private TaskTableStore taskTableStore;
+
+    @Inject
+    private TaskOwnerMigration ownerMigration;
+
+    @Inject
+    private TaskMetricsRegistry metrics;
+
     @Override
     public Task getTask(DocumentReference reference) throws TaskException
     {
+        return metrics.time("manager.getTask", () -> loadTask(reference));
+    }
+
+    private Task loadTask(DocumentReference reference) throws TaskException
+    {
+        Task cachedTask = taskCache.get(reference);
+        if (cachedTask != null) {
+            return cachedTask;
+        }
+        long cacheGeneration = taskCache.getGeneration();
         XWikiContext context = contextProvider.get();
         try {
             XWikiDocument doc = context.getWiki().getDocument(reference, context);
@@ -94,6 +205,7 @@ public class DefaultTaskManager implements TaskManager
             task.setDuedate(obj.getDateValue(Task.DUE_DATE));
             task.setCreateDate(obj.getDateValue(Task.CREATE_DATE));
             task.setCompleteDate(obj.getDateValue(Task.COMPLETE_DATE));
+            taskCache.put(task, cacheGeneration);
             return task;
         } catch (XWikiException e) {
             throw new TaskException(String.format("Failed to retrieve the task from the page [%s]", reference));
@@ -103,8 +215,39 @@ public class DefaultTaskManager implements TaskManager
     @Override
     public Task getTask(int id) throws TaskException
     {
+        return metrics.time("manager.getTaskByNumber", () -> loadTask(id));
+    }
+
+    private Task loadTask(int id) throws TaskException
+    {
+        DocumentReference indexedReference = taskNumberIndex.get(id);
+        if (indexedReference != null) {
+            try {
+                Task task = loadTask(indexedReference);
+                if (task.getNumber() == id) {
+                    return task;
+                }
+            } catch (TaskException ignored) {
+                // The index entry is stale. Fall back on the database.
+            }
+            taskNumberIndex.remove(id, indexedReference);
+        }
+
+        XWikiContext context = contextProvider.get();
+        DocumentReference tableReference = taskTableStore.getDocumentByNumber(context.getWikiId(), id);
+        if (tableReference != null) {
+            try {
+                Task task = loadTask(tableReference);
+                if (task.getNumber() == id) {
+                    taskNumberIndex.put(id, tableReference);
+                    return task;
+                }
+            } catch (TaskException ignored) {
+                // The task table is out of date. Fall back on the task objects.
+            }
+        }
+
         try {
-            XWikiContext context = contextProvider.get();
             String statement = ", BaseObject as taskObj, IntegerProperty as idProp "
                 + "WHERE taskObj.name = doc.fullName "
                 + "AND taskObj.className = 'TaskManager.Code.TaskClass' "
@@ -129,6 +272,7 @@ public class DefaultTaskManager implements TaskManager
                 task.setCreateDate(taskObject.getDateValue(Task.CREATE_DATE));
                 task.setReporter(resolver.resolve(taskObject.getLargeStringValue(Task.REPORTER)));
 
+                taskNumberIndex.put(id, documentReference);
                 return task;
             }
             throw new TaskException(String.format("There is no task with the id [%d].", id));
@@ -137,39 +281,446 @@ public class DefaultTaskManager implements TaskManager
         }
     }
 
+    @Override
+    public Map<Integer, Task> getTasksByNumber(Collection<Integer> numbers) throws TaskException
+    {
+        return metrics.time("manager.getTasksByNumber", () -> loadTasksByNumber(numbers));
+    }
+
+    private Map<Integer, Task> loadTasksByNumber(Collection<Integer> numbers) throws TaskException
+    {
+        Map<Integer, Task> tasks = new LinkedHashMap<>();
+        if (numbers.isEmpty()) {
+            return tasks;
+        }
+        XWikiContext context = contextProvider.get();
+        try {
+            List<Object[]> taskObjects = new ArrayList<>();
+            for (List<Integer> chunk : partition(numbers)) {
+                taskObjects.addAll(queryManager.createQuery(TASK_OBJECTS_BY_NUMBER_STATEMENT, Query.HQL)
+                    .bindValue("numbers", chunk)
+                    .execute());
+            }
+            for (Task task : loadTasks(taskObjects, new WikiReference(context.getWikiId()))) {
+                tasks.put(task.getNumber(), task);
+                taskNumberIndex.put(task.getNumber(), task.getReference());
+            }
+            return tasks;
+        } catch (QueryException e) {
+            throw new TaskException(String.format("Failed to retrieve the tasks with the numbers [%s].", numbers), e);
+        }
+    }
+
+    @Override
+    public Map<DocumentReference, Task> getTasks(Collection<DocumentReference> references) throws TaskException
+    {
+        return metrics.time("manager.getTasks", () -> loadTasks(references));
+    }
+
+    private Map<DocumentReference, Task> loadTasks(Collection<DocumentReference> references) throws TaskException
+    {
+        Map<DocumentReference, Task> tasks = new LinkedHashMap<>();
+        Map<WikiReference, List<String>> namesByWiki = new HashMap<>();
+        for (DocumentReference reference : references) {
+            namesByWiki.computeIfAbsent(reference.getWikiReference(), key -> new ArrayList<>())
+                .add(localSerializer.serialize(reference));
+        }
+        try {
+            for (Map.Entry<WikiReference, List<String>> entry : namesByWiki.entrySet()) {
+                for (List<String> chunk : partition(entry.getValue())) {
+                    List<Object[]> taskObjects = queryManager.createQuery(TASK_OBJECTS_BY_NAME_STATEMENT, Query.HQL)
+                        .setWiki(entry.getKey().getName())
+                        .bindValue("names", chunk)
+                        .execute();
+                    for (Task task : loadTasks(taskObjects, entry.getKey())) {
+                        tasks.put(task.getReference(), task);
+                    }
+                }
+            }
+            return tasks;
+        } catch (QueryException e) {
+            throw new TaskException(String.format("Failed to retrieve the tasks from the pages [%s].", references),
+                e);
+        }
+    }
+
+    @Override
+    public TaskQueryResult findTasks(TaskQuery taskQuery) throws TaskException
+    {
+        return metrics.time("manager.findTasks", () -> searchTasks(taskQuery));
+    }
+
+    private TaskQueryResult searchTasks(TaskQuery taskQuery) throws TaskException
+    {
+        XWikiContext context = contextProvider.get();
+        StringBuilder from = new StringBuilder(TASK_SEARCH_FROM);
+        StringBuilder where = new StringBuilder(TASK_SEARCH_WHERE);
+        Map<String, Object> parameters = new LinkedHashMap<>();
+
+        if (StringUtils.isNotEmpty(taskQuery.getStatus())) {
+            joinProperty(from, where, Task.STATUS);
+            where.append(" and statusProp.value = :status");
+            parameters.put(Task.STATUS, taskQuery.getStatus());
+        }
+        if (StringUtils.isNotEmpty(taskQuery.getName())) {
+            joinProperty(from, where, Task.NAME);
+            where.append(" and lower(nameProp.value) like :name").append(LIKE_ESCAPE);
+            parameters.put(Task.NAME, getContainsPattern(taskQuery.getName()));
+        }
+        if (StringUtils.isNotEmpty(taskQuery.getOwner())) {
+            joinProperty(from, where, Task.OWNER);
+            where.append(" and lower(ownerProp.value) like :owner").append(LIKE_ESCAPE);
+            parameters.put(Task.OWNER, getContainsPattern(taskQuery.getOwner()));
+        }
+        addUserFilter(from, where, parameters, Task.ASSIGNEE, taskQuery.getAssignees());
+        addUserFilter(from, where, parameters, Task.REPORTER, taskQuery.getReporters());
+        for (Map.Entry<String, Date[]> range : taskQuery.getDateRanges().entrySet()) {
+            addDateFilter(from, where, parameters, range.getKey(), range.getValue());
+        }
+        addSpaceFilter(where, parameters, taskQuery.getSpaces());
+        if (!taskQuery.getTags().isEmpty()) {
+            where.append(TASK_TAG_CONDITION);
+            List<String> tags = new ArrayList<>(taskQuery.getTags().size());
+            for (String tag : taskQuery.getTags()) {
+                tags.add(tag.toLowerCase());
+            }
+            parameters.put("tags", tags);
+        }
+
+        try {
+            Query countQuery = queryManager.createQuery("select count(taskObj.id)" + from + where, Query.HQL)
+                .setWiki(context.getWikiId());
+            bindValues(countQuery, parameters);
+            List<Long> counts = countQuery.execute();
+            long totalCount = counts.isEmpty() || counts.get(0) == null ? 0 : counts.get(0);
+            if (totalCount == 0 || taskQuery.getLimit() <= 0) {
+                return new TaskQueryResult(new ArrayList<>(), totalCount);
+            }
+
+            boolean sortByNumber = Task.NUMBER.equals(taskQuery.getSortField());
+            String select = "select taskObj.id, taskObj.name, numberProp.value" + (sortByNumber ? ""
+                : ", sortProp.value");
+            String order = getSortOrder(taskQuery, from);
+            Query query;
+            if (taskQuery.getContinuation() == null) {
+                query = queryManager.createQuery(select + from + where + order, Query.HQL)
+                    .setOffset(taskQuery.getOffset());
+            } else {
+                TaskQueryContinuation continuation =
+                    TaskQueryContinuation.fromToken(taskQuery.getContinuation(), taskQuery);
+                String keysetCondition = getKeysetCondition(taskQuery, continuation, parameters);
+                query = queryManager.createQuery(select + from + where + keysetCondition + order, Query.HQL);
+            }
+            // Retrieve one more task in order to know if there is a next page.
+            query.setWiki(context.getWikiId()).setLimit(taskQuery.getLimit() + 1);
+            bindValues(query, parameters);
+            List<Object[]> taskObjects = query.execute();
+
+            boolean hasNext = taskObjects.size() > taskQuery.getLimit();
+            if (hasNext) {
+                taskObjects = taskObjects.subList(0, taskQuery.getLimit());
+            }
+            // The position of each task, so that the callers can resume the search after any of them.
+            List<String> taskContinuations = new ArrayList<>(taskObjects.size());
+            for (Object[] taskObject : taskObjects) {
+                taskContinuations.add(new TaskQueryContinuation(taskQuery.getSortField(), taskQuery.isAscending(),
+                    sortByNumber ? null : taskObject[3], (Integer) taskObject[2]).toToken());
+            }
+            String nextContinuation = hasNext ? taskContinuations.get(taskContinuations.size() - 1) : null;
+            return new TaskQueryResult(loadTasks(taskObjects, new WikiReference(context.getWikiId())), totalCount,
+                nextContinuation, taskContinuations);
+        } catch (QueryException e) {
+            throw new TaskException("Failed to search for the tasks.", e);
+        }
+    }
+
+    @Override
+    public List<DocumentReference> getTaskReferencesByOwner(DocumentReference owner) throws TaskException
+    {
+        return metrics.time("manager.getTaskReferencesByOwner", () -> loadTaskReferencesByOwner(owner));
+    }
+
+    private List<DocumentReference> loadTaskReferencesByOwner(DocumentReference owner) throws TaskException
+    {
+        List<DocumentReference> tableReferences = taskTableStore.getDocumentsByOwner(owner);
+        if (tableReferences != null) {
+            return tableReferences;
+        }
+        try {
+            if (ownerMigration.isMigrated(owner.getWikiReference().getName())) {
+                // The owner is stored in the canonical form.
+                List<String> results = queryManager.createQuery(TASKS_BY_CANONICAL_OWNER_STATEMENT, Query.XWQL)
+                    .setWiki(owner.getWikiReference().getName())
+                    .bindValue("ownerRef", serializer.serialize(owner))
+                    .execute();
+                List<DocumentReference> taskReferences = new ArrayList<>(results.size());
+                for (String result : results) {
+                    taskReferences.add(resolver.resolve(result, owner.getWikiReference()));
+                }
+                return taskReferences;
+            }
+
+            List<Object[]> results = queryManager.createQuery(TASKS_BY_OWNER_STATEMENT, Query.XWQL)
+                .setWiki(owner.getWikiReference().getName())
+                .bindValue("absoluteOwnerRef", serializer.serialize(owner))
+                .bindValue("compactOwnerRef", compactserializer.serialize(owner))
+                .bindValue("relativeOwnerRef", owner.getName())
+                .bindValue("ownerSpaceRef", compactserializer.serialize(owner.getLastSpaceReference()))
+                .execute();
+            List<DocumentReference> taskReferences = new ArrayList<>(results.size());
+            for (Object[] result : results) {
+                DocumentReference taskReference = resolver.resolve((String) result[0], owner.getWikiReference());
+                // The owner is stored relative to the task page so the query can return false positives.
+                if (owner.equals(resolver.resolve((String) result[1], taskReference))) {
+                    taskReferences.add(taskReference);
+                }
+            }
+            return taskReferences;
+        } catch (QueryException e) {
+            throw new TaskException(String.format("Failed to retrieve the tasks that have [%s] as owner.", owner),
+                e);
+        }
+    }
+
     @Override
     public void deleteTasksByOwner(DocumentReference documentReference) throws TaskException
     {
+        XWikiContext context = contextProvider.get();
+        long start = System.currentTimeMillis();
+        List<DocumentReference> taskReferences = getTaskReferencesByOwner(documentReference);
+        Object previousOwnerDeletion = context.get(AbstractTaskEventListener.OWNER_DELETION_FLAG);
+        int deleted = 0;
         try {
-            XWikiContext context = contextProvider.get();
-            String statement =
-                "FROM doc.object(TaskManager.Code.TaskClass) as task "
-                    + "WHERE task.owner = :absoluteOwnerRef "
-                    + "OR task.owner = :compactOwnerRef "
-                    + "OR (task.owner = :relativeOwnerRef AND doc.space = :ownerSpaceRef)";
-            Query query = queryManager.createQuery(statement, Query.XWQL);
-
-            query
-                .bindValue("absoluteOwnerRef", serializer.serialize(documentReference))
-                .bindValue("compactOwnerRef", compactserializer.serialize(documentReference))
-                .bindValue("relativeOwnerRef", documentReference.getName())
-                .bindValue("ownerSpaceRef", compactserializer.serialize(documentReference.getLastSpaceReference()));
-
-            List<String> results = query.execute();
-            for (String result : results) {
-                DocumentReference taskRef = resolver.resolve(result);
+            // The macro calls of the deleted tasks are not removed from their owner, since it is being deleted too.
+            context.put(AbstractTaskEventListener.OWNER_DELETION_FLAG, documentReference);
+            for (DocumentReference taskRef : taskReferences) {
                 XWikiDocument document = context.getWiki().getDocument(taskRef, context);
-                BaseObject taskObject = document.getXObject(TASK_CLASS_REFERENCE);
-                if (taskObject == null || !resolver.resolve(taskObject.getLargeStringValue(Task.OWNER), taskRef)
-                    .equals(documentReference))
-                {
-                    continue;
+                if (document.getXObject(TASK_CLASS_REFERENCE) != null) {
+                    context.getWiki().deleteDocument(document, context);
+                    deleted++;
                 }
-                context.getWiki().deleteDocument(document, context);
             }
-        } catch (QueryException | XWikiException e) {
+        } catch (XWikiException e) {
             throw new TaskException(String.format("Failed to delete the task documents that had [%s] as owner.",
                 documentReference), e);
+        } finally {
+            context.put(AbstractTaskEventListener.OWNER_DELETION_FLAG, previousOwnerDeletion);
+        }
+        if (deleted > 0) {
+            logger.info("Deleted [{}] tasks of the page [{}] in [{}] ms.", deleted, documentReference,
+                System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Build the tasks of the given objects by retrieving all their properties with a single query, without loading
+     * the documents that hold them.
+     *
+     * @param taskObjects pairs of object id and document full name.
+     * @param wikiReference the wiki where the objects are located.
+     * @return the tasks of the given objects.
+     */
+    private List<Task> loadTasks(List<Object[]> taskObjects, WikiReference wikiReference) throws QueryException
+    {
+        List<Task> tasks = new ArrayList<>(taskObjects.size());
+        if (taskObjects.isEmpty()) {
+            return tasks;
         }
+        long cacheGeneration = taskCache.getGeneration();
+        Map<Long, Map<String, Object>> valuesByObject = new LinkedHashMap<>();
+        Map<Long, DocumentReference> referencesByObject = new HashMap<>();
+        for (Object[] taskObject : taskObjects) {
+            Long objectId = (Long) taskObject[0];
+            valuesByObject.put(objectId, new HashMap<>());
+            referencesByObject.put(objectId, resolver.resolve((String) taskObject[1], wikiReference));
+        }
+
+        for (List<Long> chunk : partition(valuesByObject.keySet())) {
+            List<BaseProperty> properties = queryManager.createQuery(TASK_PROPERTIES_STATEMENT, Query.HQL)
+                .setWiki(wikiReference.getName())
+                .bindValue("ids", chunk)
+                .bindValue("properties", TASK_PROPERTIES)
+                .execute();
+            for (BaseProperty property : properties) {
+                Map<String, Object> values = valuesByObject.get(property.getId());
+                if (values != null) {
+                    values.put(property.getName(), property.getValue());
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Map<String, Object>> entry : valuesByObject.entrySet()) {
+            Task task = createTask(referencesByObject.get(entry.getKey()), entry.getValue());
+            taskCache.put(task, cacheGeneration);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Split the values bound to an {@code in} condition into lists that all databases accept.
+     */
+    private static <T> List<List<T>> partition(Collection<T> values)
+    {
+        List<T> allValues = new ArrayList<>(values);
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < allValues.size(); i += IN_LIST_CHUNK_SIZE) {
+            chunks.add(new ArrayList<>(allValues.subList(i, Math.min(i + IN_LIST_CHUNK_SIZE, allValues.size()))));
+        }
+        return chunks;
+    }
+
+    private void joinProperty(StringBuilder from, StringBuilder where, String property)
+    {
+        String alias = property + "Prop";
+        if (from.indexOf(" as " + alias) < 0) {
+            from.append(", ").append(PROPERTY_TYPES.get(property)).append(" as ").append(alias);
+            where.append(AND).append(alias).append(".id.id = taskObj.id and ").append(alias)
+                .append(".id.name = '").append(property).append('\'');
+        }
+    }
+
+    private void addUserFilter(StringBuilder from, StringBuilder where, Map<String, Object> parameters,
+        String property, List<String> users)
+    {
+        List<String> nonEmptyUsers = new ArrayList<>();
+        for (String user : users) {
+            if (StringUtils.isNotBlank(user)) {
+                nonEmptyUsers.add(user.trim());
+            }
+        }
+        if (nonEmptyUsers.isEmpty()) {
+            return;
+        }
+        joinProperty(from, where, property);
+        where.append(" and (");
+        for (int i = 0; i < nonEmptyUsers.size(); i++) {
+            String parameter = property + i;
+            if (i > 0) {
+                where.append(OR);
+            }
+            where.append("lower(").append(property).append("Prop.value) like :").append(parameter)
+                .append(LIKE_ESCAPE);
+            parameters.put(parameter, getContainsPattern(nonEmptyUsers.get(i)));
+        }
+        where.append(')');
+    }
+
+    private void addDateFilter(StringBuilder from, StringBuilder where, Map<String, Object> parameters,
+        String property, Date[] range)
+    {
+        if (range[0] == null && range[1] == null) {
+            return;
+        }
+        joinProperty(from, where, property);
+        if (range[0] != null) {
+            where.append(AND).append(property).append("Prop.value >= :").append(property).append("From");
+            parameters.put(property + "From", range[0]);
+        }
+        if (range[1] != null) {
+            where.append(AND).append(property).append("Prop.value <= :").append(property).append("To");
+            parameters.put(property + "To", range[1]);
+        }
+    }
+
+    private void addSpaceFilter(StringBuilder where, Map<String, Object> parameters, List<String> spaces)
+    {
+        StringBuilder spaceWhere = new StringBuilder();
+        for (String space : spaces) {
+            if (StringUtils.isBlank(space)) {
+                continue;
+            }
+            String parameter = "space" + parameters.size();
+            if (spaceWhere.length() > 0) {
+                spaceWhere.append(OR);
+            }
+            // Match the pages of the space and of all its nested spaces.
+            spaceWhere.append("doc.fullName like :").append(parameter).append(LIKE_ESCAPE);
+            parameters.put(parameter, escapeLike(space) + ".%");
+        }
+        if (spaceWhere.length() > 0) {
+            where.append(" and (").append(spaceWhere).append(')');
+        }
+    }
+
+    private String getSortOrder(TaskQuery taskQuery, StringBuilder from)
+    {
+        String direction = taskQuery.isAscending() ? " asc" : " desc";
+        String sortField = taskQuery.getSortField();
+        if (Task.NUMBER.equals(sortField)) {
+            return " order by numberProp.value" + direction;
+        }
+        // Outer join so that the tasks that don't have a value for the sort field are not excluded.
+        from.append(String.format(" left join %s as sortProp on sortProp.id.id = taskObj.id "
+            + "and sortProp.id.name = '%s'", PROPERTY_TYPES.get(sortField), sortField));
+        // The tasks without a value are always last so that the keyset condition doesn't depend on the database. The
+        // number is unique so it makes the order stable between the pages.
+        return String.format(" order by sortProp.value%s nulls last, numberProp.value%s", direction, direction);
+    }
+
+    /**
+     * Build the condition that matches the tasks located after the given position, in the order of the query.
+     */
+    private String getKeysetCondition(TaskQuery taskQuery, TaskQueryContinuation continuation,
+        Map<String, Object> parameters)
+    {
+        String comparison = taskQuery.isAscending() ? " > " : " < ";
+        parameters.put("lastNumber", continuation.getNumber());
+        String afterNumber = "numberProp.value" + comparison + ":lastNumber";
+        if (Task.NUMBER.equals(taskQuery.getSortField())) {
+            return AND + afterNumber;
+        }
+        if (continuation.getSortValue() == null) {
+            return " and sortProp.value is null and " + afterNumber;
+        }
+        parameters.put("lastSortValue", continuation.getSortValue());
+        String sameSortValue = "sortProp.value = :lastSortValue";
+        if (LARGE_STRING_PROPERTY.equals(PROPERTY_TYPES.get(taskQuery.getSortField()))) {
+            // Large strings can't be compared with the equality operator on all the databases.
+            parameters.put("lastSortValueLike", escapeLike((String) continuation.getSortValue()));
+            sameSortValue = "sortProp.value like :lastSortValueLike" + LIKE_ESCAPE;
+        }
+        return String.format(" and (sortProp.value%1$s:lastSortValue or (%2$s and %3$s) or sortProp.value is null)",
+            comparison, sameSortValue, afterNumber);
+    }
+
+    private void bindValues(Query query, Map<String, Object> parameters)
+    {
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            query.bindValue(parameter.getKey(), parameter.getValue());
+        }
+    }
+
+    private String escapeLike(String value)
+    {
+        return value.replaceAll("([%_!])", "!$1");
+    }
+
+    private String getContainsPattern(String value)
+    {
+        return '%' + escapeLike(value.toLowerCase()) + '%';
+    }
+
+    private Task createTask(DocumentReference reference, Map<String, Object> values)
+    {
+        Task task = new Task();
+        task.setReference(reference);
+        task.setName((String) values.get(Task.NAME));
+        Object number = values.get(Task.NUMBER);
+        task.setNumber(number instanceof Integer ? (Integer) number : -1);
+        task.setOwner(resolver.resolve(getStringValue(values, Task.OWNER), reference));
+        task.setAssignee(resolver.resolve(getStringValue(values, Task.ASSIGNEE)));
+        task.setStatus(getStringValue(values, Task.STATUS));
+        task.setReporter(resolver.resolve(getStringValue(values, Task.REPORTER)));
+        task.setDuedate((Date) values.get(Task.DUE_DATE));
+        task.setCreateDate((Date) values.get(Task.CREATE_DATE));
+        task.setCompleteDate((Date) values.get(Task.COMPLETE_DATE));
+        return task;
+    }
+
+    private String getStringValue(Map<String, Object> values, String name)
+    {
+        Object value = values.get(name);
+        return value == null ? "" : value.toString();
     }
 }
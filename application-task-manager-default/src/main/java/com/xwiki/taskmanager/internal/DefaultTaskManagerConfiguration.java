@@ -42,6 +42,8 @@ public class DefaultTaskManagerConfiguration implements TaskManagerConfiguration
 
     private static final String DISPLAY_FORMAT_KEY = "displayDateFormat";
 
+    private static final String ASYNC_UPDATE_KEY = "asyncUpdate";
+
     private static final String DEFAULT_DATE_FORMAT = "yyyy/MM/dd HH:mm";
 
     private static final String PROPERTIES_PREFIX = "taskmanager.";
@@ -70,6 +72,12 @@ public class DefaultTaskManagerConfiguration implements TaskManagerConfiguration
         return getProperty(DISPLAY_FORMAT_KEY, getDefaultDateFormat());
     }
 
+    @Override
+    public boolean isAsyncUpdateEnabled()
+    {
+        return getProperty(ASYNC_UPDATE_KEY, Boolean.FALSE);
+    }
+
     private String getDefaultDateFormat()
     {
         return preferencesConfiguration.getProperty("dateformat", DEFAULT_DATE_FORMAT);
@@ -0,0 +1,74 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+
+import com.xwiki.taskmanager.TaskMetrics;
+import com.xwiki.taskmanager.TaskSaveTrace;
+
+/**
+ * Default implementation of {@link TaskMetrics}, backed by the {@link TaskMetricsRegistry} and the
+ * {@link TaskSaveTracer}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Singleton
+public class DefaultTaskMetrics implements TaskMetrics
+{
+    @Inject
+    private TaskMetricsRegistry registry;
+
+    @Inject
+    private TaskSaveTracer saveTracer;
+
+    @Override
+    public Map<String, Map<String, Number>> getStatistics()
+    {
+        Map<String, Map<String, Number>> statistics = new TreeMap<>();
+        for (Map.Entry<String, TaskMetricStatistics> metric : registry.getMetrics().entrySet()) {
+            TaskMetricStatistics metricStatistics = metric.getValue();
+            Map<String, Number> values = new LinkedHashMap<>();
+            values.put(COUNT, metricStatistics.getCount());
+            values.put(MEAN, metricStatistics.getMean());
+            values.put(P50, metricStatistics.getP50());
+            values.put(P99, metricStatistics.getP99());
+            values.put(MAX, metricStatistics.getMax());
+            statistics.put(metric.getKey(), values);
+        }
+        return statistics;
+    }
+
+    @Override
+    public List<TaskSaveTrace> getSlowSaveTraces()
+    {
+        return saveTracer.getSlowTraces();
+    }
+}
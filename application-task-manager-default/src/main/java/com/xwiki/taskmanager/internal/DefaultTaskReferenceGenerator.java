@@ -19,16 +19,26 @@
  */
 package com.xwiki.taskmanager.internal;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
 import org.xwiki.security.authorization.ContextualAuthorizationManager;
 import org.xwiki.security.authorization.Right;
 
@@ -36,7 +46,10 @@ import com.xwiki.taskmanager.TaskException;
 import com.xwiki.taskmanager.TaskReferenceGenerator;
 
 /**
- * The default implementation of {@link com.xwiki.taskmanager.TaskReferenceGenerator}.
+ * The default implementation of {@link com.xwiki.taskmanager.TaskReferenceGenerator}. The next free task page name of
+ * a space is computed from the existing task pages, retrieved with a single query the first time the space is used,
+ * and is then kept in memory for a bounded number of spaces. The generations of different spaces don't block each
+ * other.
  *
  * @version $Id$
  * @since 1.0
@@ -49,16 +62,40 @@ public class DefaultTaskReferenceGenerator implements TaskReferenceGenerator
 
     private static final String TASK_MANAGER_SPACE = "TaskManager";
 
+    private static final String TASK_NAMES_STATEMENT =
+        "select doc.name from XWikiDocument doc where doc.space = :space and doc.name like :prefix";
+
+    private static final int MAX_SPACES = 1000;
+
     @Inject
     private ContextualAuthorizationManager authorizationManager;
 
     @Inject
     private DocumentAccessBridge documentAccessBridge;
 
-    private final Map<SpaceReference, Integer> nameOccurences = new HashMap<>();
+    @Inject
+    private Provider<QueryManager> queryManagerProvider;
+
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    @Inject
+    private Logger logger;
+
+    private final Map<SpaceReference, SpaceCounter> nameOccurences =
+        Collections.synchronizedMap(new LinkedHashMap<SpaceReference, SpaceCounter>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SpaceReference, SpaceCounter> eldest)
+            {
+                // An evicted space is seeded again from the database the next time it is used.
+                return size() > MAX_SPACES;
+            }
+        });
 
     @Override
-    public synchronized DocumentReference generate(DocumentReference parent) throws TaskException
+    public DocumentReference generate(DocumentReference parent) throws TaskException
     {
 
         SpaceReference parentSpaceRef = parent.getLastSpaceReference();
@@ -73,18 +110,80 @@ public class DefaultTaskReferenceGenerator implements TaskReferenceGenerator
         return getUniqueName(parentSpaceRef);
     }
 
+    /**
+     * Set the next task page index of a space, unless it is already known. It allows skipping the query that
+     * retrieves the task pages of the space the first time a task is created in it.
+     *
+     * @param spaceRef the reference of a space.
+     * @param next the index that follows the highest index of the task pages of the space.
+     */
+    public void seed(SpaceReference spaceRef, int next)
+    {
+        SpaceCounter counter = nameOccurences.computeIfAbsent(spaceRef, key -> new SpaceCounter());
+        synchronized (counter) {
+            if (counter.next < 0) {
+                counter.next = next;
+            }
+        }
+    }
+
     private DocumentReference getUniqueName(SpaceReference spaceRef)
     {
+        // Only the generations of the same space wait for each other.
+        SpaceCounter counter = nameOccurences.computeIfAbsent(spaceRef, key -> new SpaceCounter());
+        synchronized (counter) {
+            int i = counter.next < 0 ? getFirstFreeIndex(spaceRef) : counter.next;
+            DocumentReference docRef = new DocumentReference(TASK_PAGE_NAME_PREFIX + i, spaceRef);
 
-        int i = nameOccurences.getOrDefault(spaceRef, 0);
-        DocumentReference docRef = new DocumentReference(TASK_PAGE_NAME_PREFIX + i, spaceRef);
+            // The task pages created by other cluster members or by hand are not known.
+            while (documentAccessBridge.exists(docRef)) {
+                i++;
+                docRef = new DocumentReference(TASK_PAGE_NAME_PREFIX + i, spaceRef);
+            }
+            counter.next = i + 1;
+            return docRef;
+        }
+    }
 
-        while (documentAccessBridge.exists(docRef)) {
-            i++;
-            docRef = new DocumentReference(TASK_PAGE_NAME_PREFIX + i, spaceRef);
-            nameOccurences.put(spaceRef, i);
+    private int getFirstFreeIndex(SpaceReference spaceRef)
+    {
+        try {
+            List<String> names = queryManagerProvider.get().createQuery(TASK_NAMES_STATEMENT, Query.HQL)
+                .bindValue("space", localSerializer.serialize(spaceRef))
+                .bindValue("prefix", TASK_PAGE_NAME_PREFIX + '%')
+                .setWiki(spaceRef.getWikiReference().getName())
+                .execute();
+            int max = -1;
+            for (String name : names) {
+                max = Math.max(max, getTaskPageIndex(name));
+            }
+            return max + 1;
+        } catch (QueryException e) {
+            logger.warn("Failed to retrieve the task pages of the space [{}]. Probing the names from the start.",
+                spaceRef, e);
+            return 0;
         }
-        nameOccurences.put(spaceRef, ++i);
-        return docRef;
+    }
+
+    /**
+     * @param name the name of a page.
+     * @return the index of the task page that has the given name or {@code -1} if the name was not generated.
+     */
+    static int getTaskPageIndex(String name)
+    {
+        String suffix = StringUtils.removeStart(name, TASK_PAGE_NAME_PREFIX);
+        // Skip the names that don't fit in an int as well.
+        if (suffix.length() < name.length() && StringUtils.isNumeric(suffix) && suffix.length() < 10) {
+            return Integer.parseInt(suffix);
+        }
+        return -1;
+    }
+
+    /**
+     * The next task page index to try in a space, {@code -1} until it is retrieved from the database.
+     */
+    private static final class SpaceCounter
+    {
+        private int next = -1;
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.QueryException;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xwiki.taskmanager.TaskException;
+
+/**
+ * {@link com.xwiki.taskmanager.TaskNumberAllocator} that persists the last reserved number in a counter document and
+ * relies on a JVM lock to prevent concurrent reservations. It is only safe for single node setups since the nodes of a
+ * cluster don't share the lock.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("local")
+@Singleton
+public class LocalTaskNumberAllocator extends AbstractTaskNumberAllocator
+{
+    private static final List<String> CODE_SPACE = Arrays.asList("TaskManager", "Code");
+
+    private static final LocalDocumentReference COUNTER_REFERENCE =
+        new LocalDocumentReference(CODE_SPACE, "TaskCounter");
+
+    private static final LocalDocumentReference COUNTER_CLASS_REFERENCE =
+        new LocalDocumentReference(CODE_SPACE, "TaskCounterClass");
+
+    private static final String LAST_RESERVED_NUMBER = "lastReservedNumber";
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Override
+    public synchronized int reserve(String wikiId, int count) throws TaskException
+    {
+        XWikiContext context = contextProvider.get();
+        try {
+            XWikiDocument counterDoc = context.getWiki()
+                .getDocument(new DocumentReference(COUNTER_REFERENCE, new WikiReference(wikiId)), context).clone();
+            BaseObject counterObj = counterDoc.getXObject(COUNTER_CLASS_REFERENCE, true, context);
+            int lastReservedNumber = Integer.max(counterObj.getIntValue(LAST_RESERVED_NUMBER), getMaxNumber(wikiId));
+            counterObj.setIntValue(LAST_RESERVED_NUMBER, lastReservedNumber + count);
+            counterDoc.setHidden(true);
+            context.getWiki().saveDocument(counterDoc, "Reserved task numbers.", true, context);
+            return lastReservedNumber + 1;
+        } catch (XWikiException | QueryException e) {
+            throw new TaskException(String.format("Failed to reserve task numbers on the wiki [%s].", wikiId), e);
+        }
+    }
+}
@@ -19,7 +19,7 @@
  */
 package com.xwiki.taskmanager.internal;
 
-import java.text.SimpleDateFormat;
+import java.text.Format;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -34,14 +34,20 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.LinkBlock;
 import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.MetaDataBlock;
 import org.xwiki.rendering.block.ParagraphBlock;
 import org.xwiki.rendering.block.SpecialSymbolBlock;
 import org.xwiki.rendering.block.WordBlock;
 import org.xwiki.rendering.block.XDOM;
 import org.xwiki.rendering.block.match.ClassBlockMatcher;
+import org.xwiki.rendering.block.match.MetadataBlockMatcher;
+import org.xwiki.rendering.listener.MetaData;
 import org.xwiki.rendering.listener.reference.ResourceReference;
 import org.xwiki.rendering.listener.reference.ResourceType;
 import org.xwiki.rendering.macro.MacroContentParser;
@@ -53,6 +59,7 @@ import org.xwiki.rendering.syntax.Syntax;
 import org.xwiki.rendering.transformation.MacroTransformationContext;
 
 import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.model.Task;
 
 /**
  * Class that will handle processing of Task blocks.
@@ -66,6 +73,10 @@ public class TaskBlockProcessor
 {
     private static final String DATE = "date";
 
+    private static final String PARSED_CONTENTS_KEY = "taskmanager.parsedTaskContents";
+
+    private static final int MAX_PARSED_CONTENTS = 1000;
+
     @Inject
     @Named("context")
     private ComponentManager contextComponentManager;
@@ -73,6 +84,16 @@ public class TaskBlockProcessor
     @Inject
     private MacroContentParser contentParser;
 
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private TaskDateCodec dateCodec;
+
+    @Inject
+    @Named("compactwiki")
+    private EntityReferenceSerializer<String> serializer;
+
     /**
      * Render the task content in the given syntax.
      *
@@ -93,24 +114,61 @@ public class TaskBlockProcessor
     }
 
     /**
-     * Get the XDOM of the content of a task macro.
+     * Get the XDOM of the content of a task macro. The result is memoized for the duration of the current request,
+     * since the same content is usually parsed both when the page is saved and when the macro is rendered.
      *
      * @param taskBlock the block whose content we want to retrieve.
      * @param syntax The syntax in which the content is encoded.
-     * @return the XDOM of the task content.
+     * @return the XDOM of the task content. It's a copy of the memoized value, so it can be freely modified.
      * @throws TaskException if parsing fails.
      */
     public XDOM getTaskContentXDOM(MacroBlock taskBlock, Syntax syntax) throws TaskException
     {
-        try {
-            MacroTransformationContext macroContext = new MacroTransformationContext();
-            macroContext.setCurrentMacroBlock(taskBlock);
-            macroContext.setSyntax(syntax);
-            return this.contentParser.parse(taskBlock.getContent(), macroContext, true, false);
-        } catch (MacroExecutionException e) {
-            throw new TaskException(String.format("Failed to parse the task block with id [%s].", taskBlock.getId()),
-                e);
+        Map<String, XDOM> parsedContents = getParsedContents();
+        String key = getParsedContentKey(taskBlock, syntax);
+        XDOM parsedContent = parsedContents == null ? null : parsedContents.get(key);
+        if (parsedContent == null) {
+            try {
+                MacroTransformationContext macroContext = new MacroTransformationContext();
+                macroContext.setCurrentMacroBlock(taskBlock);
+                macroContext.setSyntax(syntax);
+                parsedContent = this.contentParser.parse(taskBlock.getContent(), macroContext, true, false);
+            } catch (MacroExecutionException e) {
+                throw new TaskException(
+                    String.format("Failed to parse the task block with id [%s].", taskBlock.getId()), e);
+            }
+            if (parsedContents == null) {
+                return parsedContent;
+            }
+            if (parsedContents.size() < MAX_PARSED_CONTENTS) {
+                parsedContents.put(key, parsedContent);
+            }
         }
+        return parsedContent.clone();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, XDOM> getParsedContents()
+    {
+        ExecutionContext executionContext = execution.getContext();
+        if (executionContext == null) {
+            return null;
+        }
+        Map<String, XDOM> parsedContents = (Map<String, XDOM>) executionContext.getProperty(PARSED_CONTENTS_KEY);
+        if (parsedContents == null) {
+            parsedContents = new HashMap<>();
+            executionContext.setProperty(PARSED_CONTENTS_KEY, parsedContents);
+        }
+        return parsedContents;
+    }
+
+    private String getParsedContentKey(MacroBlock taskBlock, Syntax syntax)
+    {
+        // The parser adds the source of the macro to the metadata of the result.
+        MetaDataBlock sourceBlock =
+            taskBlock.getFirstBlock(new MetadataBlockMatcher(MetaData.SOURCE), Block.Axes.ANCESTOR_OR_SELF);
+        Object source = sourceBlock == null ? "" : sourceBlock.getMetaData().getMetaData(MetaData.SOURCE);
+        return String.format("%s:%s:%s", syntax.toIdString(), source, taskBlock.getContent());
     }
 
     /**
@@ -128,6 +186,38 @@ public class TaskBlockProcessor
             false);
     }
 
+    /**
+     * Create the task macro that displays a task, without the need to load the page that holds it.
+     *
+     * @param task the task to display.
+     * @param syntax the syntax in which the content of the macro is generated.
+     * @return a task {@link MacroBlock} whose parameters and content reflect the given task.
+     * @throws TaskException if the content of the macro could not be generated.
+     */
+    public MacroBlock createTaskMacroBlock(Task task, Syntax syntax) throws TaskException
+    {
+        Format storageFormat = dateCodec.getStorageFormat();
+        Map<String, String> taskParams = new HashMap<>();
+        taskParams.put(Task.REFERENCE, serializer.serialize(task.getReference()));
+        taskParams.put(Task.STATUS, task.getStatus());
+        taskParams.put(Task.REPORTER, serializer.serialize(task.getReporter()));
+        taskParams.put(Task.CREATE_DATE,
+            task.getCreateDate() != null ? storageFormat.format(task.getCreateDate()) : "");
+        taskParams.put(Task.COMPLETE_DATE,
+            task.getCompleteDate() != null ? storageFormat.format(task.getCompleteDate()) : "");
+
+        String taskContent = renderTaskContent(
+            generateTaskContentBlocks(
+                task.getAssignee() != null ? serializer.serialize(task.getAssignee()) : null,
+                task.getDueDate(),
+                task.getName(),
+                storageFormat),
+            syntax
+        );
+
+        return new MacroBlock(Task.MACRO_NAME, taskParams, taskContent, false);
+    }
+
     /**
      * Generate the content of a Task macro as a list of blocks. This list can be rendered in different syntaxes i.e.
      * xwiki/2.1.
@@ -140,7 +230,7 @@ public class TaskBlockProcessor
      * @throws TaskException if the text parameter failed to be parsed.
      */
     public List<Block> generateTaskContentBlocks(String assignee, Date duedate, String text,
-        SimpleDateFormat storageFormat) throws TaskException
+        Format storageFormat) throws TaskException
     {
         XDOM newTaskContentXDOM =
             getTaskContentXDOM(new MacroBlock("temporaryMacro", new HashMap<>(), text == null ? "" : text, false),
@@ -0,0 +1,266 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import com.xwiki.taskmanager.model.Task;
+
+/**
+ * Bounded cache of the {@link Task} models, keyed by the reference of the page that holds them. It allows displaying
+ * a task without loading its whole document. The entries are invalidated by {@link TaskCacheInvalidationListener}
+ * whenever the page of a task is updated or deleted. Each invalidation increments a generation that the loaders read
+ * before loading a task, so that a task loaded before an invalidation of its page is not cached. The usage statistics
+ * of the cache are published as a JMX bean in order to help sizing it through the
+ * {@code taskmanager.taskCacheCapacity} property of xwiki.properties.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component(roles = TaskCache.class)
+@Singleton
+public class TaskCache implements TaskCacheMBean, Initializable, Disposable, CacheEntryListener<Task>
+{
+    private static final String CAPACITY_PROPERTY = "taskmanager.taskCacheCapacity";
+
+    private static final int DEFAULT_CAPACITY = 10000;
+
+    private static final String MBEAN_NAME = "com.xwiki.taskmanager:type=TaskCache";
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Logger logger;
+
+    private Cache<Task> cache;
+
+    private int capacity;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong removals = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong size = new AtomicLong();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        capacity = xwikiProperties.getProperty(CAPACITY_PROPERTY, DEFAULT_CAPACITY);
+        try {
+            cache = cacheManager.createNewCache(new LRUCacheConfiguration("taskmanager.tasks", capacity));
+            cache.addCacheEntryListener(this);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the task cache.", e);
+        }
+
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            mbeanServer.registerMBean(this, new ObjectName(MBEAN_NAME));
+        } catch (JMException e) {
+            logger.warn("Failed to register the task cache statistics as a JMX bean.", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MBEAN_NAME));
+        } catch (JMException e) {
+            logger.debug("Failed to unregister the task cache JMX bean.", e);
+        }
+        cache.dispose();
+    }
+
+    /**
+     * @param reference the reference of a page that contains a task.
+     * @return a copy of the cached task or {@code null} if the task is not cached.
+     */
+    public Task get(DocumentReference reference)
+    {
+        Task task = cache.get(serializer.serialize(reference));
+        if (task == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(task);
+    }
+
+    /**
+     * @return the current invalidation generation, to read before loading a task that is then passed to
+     *     {@link #put(Task, long)}.
+     */
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Cache a task, unless a page was invalidated since it started to be loaded, since the task might be stale.
+     *
+     * @param task the task to cache. A copy of it is stored so that the callers can't alter the cached value.
+     * @param loadGeneration the generation returned by {@link #getGeneration()} before the task was loaded
+     */
+    public void put(Task task, long loadGeneration)
+    {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+        String key = serializer.serialize(task.getReference());
+        cache.set(key, copy(task));
+        if (generation.get() != loadGeneration) {
+            // The page was invalidated while the task was being cached.
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * Remove the task of a page from the cache.
+     *
+     * @param reference the reference of a page that was modified or deleted.
+     */
+    public void invalidate(DocumentReference reference)
+    {
+        // Incremented even if the task is not cached, since it might be being loaded.
+        generation.incrementAndGet();
+        String key = serializer.serialize(reference);
+        if (cache.get(key) != null) {
+            invalidations.incrementAndGet();
+            cache.remove(key);
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        generation.incrementAndGet();
+        cache.removeAll();
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size.get();
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    @Override
+    public long getInvalidationCount()
+    {
+        return invalidations.get();
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        // The cache notifies the same way about the evicted and the invalidated entries.
+        return Math.max(0, removals.get() - invalidations.get());
+    }
+
+    @Override
+    public void cacheEntryAdded(CacheEntryEvent<Task> event)
+    {
+        size.incrementAndGet();
+    }
+
+    @Override
+    public void cacheEntryRemoved(CacheEntryEvent<Task> event)
+    {
+        size.decrementAndGet();
+        removals.incrementAndGet();
+    }
+
+    @Override
+    public void cacheEntryModified(CacheEntryEvent<Task> event)
+    {
+        // The size of the cache doesn't change.
+    }
+
+    private Task copy(Task task)
+    {
+        Task copy = new Task();
+        copy.setReference(task.getReference());
+        copy.setName(task.getName());
+        copy.setNumber(task.getNumber());
+        copy.setOwner(task.getOwner());
+        copy.setAssignee(task.getAssignee());
+        copy.setStatus(task.getStatus());
+        copy.setReporter(task.getReporter());
+        copy.setDuedate(task.getDueDate());
+        copy.setCreateDate(task.getCreateDate());
+        copy.setCompleteDate(task.getCompleteDate());
+        return copy;
+    }
+}
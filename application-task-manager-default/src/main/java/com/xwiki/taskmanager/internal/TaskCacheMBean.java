@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+/**
+ * JMX view over the usage statistics of the {@link TaskCache}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public interface TaskCacheMBean
+{
+    /**
+     * @return the maximum number of tasks that can be cached.
+     */
+    int getCapacity();
+
+    /**
+     * @return the number of tasks currently cached.
+     */
+    long getSize();
+
+    /**
+     * @return the number of lookups that were served from the cache.
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups that had to load the task from the database.
+     */
+    long getMissCount();
+
+    /**
+     * @return the number of entries removed because their page was modified or deleted.
+     */
+    long getInvalidationCount();
+
+    /**
+     * @return the number of entries removed to make room for new ones.
+     */
+    long getEvictionCount();
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    void clear();
+}
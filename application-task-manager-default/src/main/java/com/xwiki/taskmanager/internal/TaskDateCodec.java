@@ -0,0 +1,140 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.xwiki.component.annotation.Component;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.taskmanager.TaskManagerConfiguration;
+
+/**
+ * Parses and formats the dates of the tasks using the formats configured for the current wiki. The formats are
+ * thread-safe and they are cached for each wiki, so that neither the configuration nor the patterns are processed on
+ * every call. The cached formats of a wiki are dropped by {@link TaskDateFormatInvalidationListener} whenever its
+ * configuration changes.
+ * <p>
+ * {@link FastDateFormat} is used instead of {@link java.time.format.DateTimeFormatter} because the configured
+ * patterns follow the {@link java.text.SimpleDateFormat} syntax. Like {@link java.text.SimpleDateFormat}, the formats
+ * use the default time zone and locale of the JVM.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component(roles = TaskDateCodec.class)
+@Singleton
+public class TaskDateCodec
+{
+    @Inject
+    private TaskManagerConfiguration configuration;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    private final Map<String, DateFormats> formatsByWiki = new ConcurrentHashMap<>();
+
+    /**
+     * @return the format used to store the dates inside the task macros, for the current wiki.
+     */
+    public FastDateFormat getStorageFormat()
+    {
+        return getFormats().storageFormat;
+    }
+
+    /**
+     * @return the format used to display the dates, for the current wiki.
+     */
+    public FastDateFormat getDisplayFormat()
+    {
+        return getFormats().displayFormat;
+    }
+
+    /**
+     * @param value a date formatted with the storage format.
+     * @return the parsed date.
+     * @throws ParseException if the value doesn't match the storage format.
+     */
+    public Date parseStorageDate(String value) throws ParseException
+    {
+        return getStorageFormat().parse(value);
+    }
+
+    /**
+     * @param date the date to format.
+     * @return the date formatted with the storage format.
+     */
+    public String formatStorageDate(Date date)
+    {
+        return getStorageFormat().format(date);
+    }
+
+    /**
+     * @param date the date to format.
+     * @return the date formatted with the display format.
+     */
+    public String formatDisplayDate(Date date)
+    {
+        return getDisplayFormat().format(date);
+    }
+
+    /**
+     * Drop the cached formats of a wiki. They will be created again, from the configuration, on the next access.
+     *
+     * @param wikiId the wiki whose configuration changed.
+     */
+    public void invalidate(String wikiId)
+    {
+        formatsByWiki.remove(wikiId);
+    }
+
+    private DateFormats getFormats()
+    {
+        String wikiId = StringUtils.defaultString(contextProvider.get().getWikiId());
+        return formatsByWiki.computeIfAbsent(wikiId,
+            key -> new DateFormats(FastDateFormat.getInstance(configuration.getStorageDateFormat()),
+                FastDateFormat.getInstance(configuration.getDisplayDateFormat())));
+    }
+
+    /**
+     * The date formats of a wiki.
+     */
+    private static final class DateFormats
+    {
+        private final FastDateFormat storageFormat;
+
+        private final FastDateFormat displayFormat;
+
+        DateFormats(FastDateFormat storageFormat, FastDateFormat displayFormat)
+        {
+            this.storageFormat = storageFormat;
+            this.displayFormat = displayFormat;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Listener that drops the date formats cached by {@link TaskDateCodec} for a wiki whenever the pages that hold its
+ * date configuration are modified: the Task Manager configuration and the wiki preferences, which provide the
+ * default date format.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("com.xwiki.taskmanager.internal.TaskDateFormatInvalidationListener")
+@Singleton
+public class TaskDateFormatInvalidationListener extends AbstractEventListener
+{
+    private static final LocalDocumentReference CONFIGURATION_REFERENCE =
+        new LocalDocumentReference(Arrays.asList("TaskManager", "Code"), "TaskManagerConfiguration");
+
+    private static final LocalDocumentReference PREFERENCES_REFERENCE =
+        new LocalDocumentReference("XWiki", "XWikiPreferences");
+
+    @Inject
+    private TaskDateCodec dateCodec;
+
+    /**
+     * Default constructor.
+     */
+    public TaskDateFormatInvalidationListener()
+    {
+        super(TaskDateFormatInvalidationListener.class.getName(), Arrays.asList(new DocumentCreatedEvent(),
+            new DocumentUpdatedEvent(), new DocumentDeletedEvent()));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        DocumentReference reference = ((XWikiDocument) source).getDocumentReference();
+        LocalDocumentReference localReference = reference.getLocalDocumentReference();
+        if (CONFIGURATION_REFERENCE.equals(localReference) || PREFERENCES_REFERENCE.equals(localReference)) {
+            dateCodec.invalidate(reference.getWikiReference().getName());
+        }
+    }
+}
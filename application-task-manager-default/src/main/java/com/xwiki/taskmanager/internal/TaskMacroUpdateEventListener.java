@@ -22,13 +22,18 @@ package com.xwiki.taskmanager.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
 import org.xwiki.bridge.event.DocumentCreatingEvent;
 import org.xwiki.bridge.event.DocumentDeletingEvent;
 import org.xwiki.bridge.event.DocumentUpdatingEvent;
@@ -42,11 +47,11 @@ import org.xwiki.security.authorization.Right;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
-import com.xpn.xwiki.doc.DocumentRevisionProvider;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xwiki.taskmanager.TaskException;
 import com.xwiki.taskmanager.TaskManager;
+import com.xwiki.taskmanager.TaskManagerConfiguration;
 import com.xwiki.taskmanager.model.Task;
 
 /**
@@ -68,11 +73,28 @@ public class TaskMacroUpdateEventListener extends AbstractTaskEventListener
     private EntityReferenceSerializer<String> serializer;
 
     @Inject
-    private DocumentRevisionProvider revisionProvider;
+    private EntityReferenceSerializer<String> ownerSerializer;
 
     @Inject
     private TaskManager taskManager;
 
+    @Inject
+    private TaskManagerConfiguration configuration;
+
+    @Inject
+    private TaskUpdateQueue taskUpdateQueue;
+
+    @Inject
+    private TaskOwnerUpdater taskOwnerUpdater;
+
+    @Inject
+    private TaskMetricsRegistry metrics;
+
+    @Inject
+    private TaskSaveTracer saveTracer;
+
+    private final AtomicLong skippedSaves = new AtomicLong();
+
     /**
      * Default constructor.
      */
@@ -84,8 +106,26 @@ public class TaskMacroUpdateEventListener extends AbstractTaskEventListener
 
     @Override
     protected void processEvent(XWikiDocument document, XWikiContext context, Event event)
+    {
+        long startTime = System.nanoTime();
+        try (TaskSaveSpan span = saveTracer.start("macroListener", document.getDocumentReference())) {
+            updateTaskPages(document, context, event);
+        } finally {
+            metrics.recordDuration("macroListener.processEvent", startTime);
+        }
+    }
+
+    private void updateTaskPages(XWikiDocument document, XWikiContext context, Event event)
     {
         if (event instanceof DocumentDeletingEvent) {
+            if (context.get(OWNER_DELETION_FLAG) != null && document.getXObject(TASK_CLASS_REFERENCE) != null) {
+                // The task pages deleted along with their owner don't own tasks.
+                return;
+            }
+            if (configuration.isAsyncUpdateEnabled()) {
+                // The queued updates would recreate the tasks of the deleted page.
+                taskUpdateQueue.discard(document.getDocumentReference());
+            }
             try {
                 taskManager.deleteTasksByOwner(document.getDocumentReference());
             } catch (TaskException e) {
@@ -96,27 +136,35 @@ public class TaskMacroUpdateEventListener extends AbstractTaskEventListener
         if (context.get(TASK_UPDATE_FLAG) != null) {
             return;
         }
+        if (configuration.isAsyncUpdateEnabled()) {
+            // The queued updates of the previous content are superseded by the tasks of the new content, and they
+            // would recreate the tasks whose macro was removed from it.
+            taskUpdateQueue.discard(document.getDocumentReference());
+        }
         XDOM documentContent = document.getXDOM();
+        // The task changes that wait to be reflected in the page must not be reverted by its content.
+        taskOwnerUpdater.flush(document.getDocumentReference(), documentContent);
 
-        List<Task> tasks = this.taskXDOMProcessor.extract(documentContent, document.getDocumentReference());
-
-        String previousVersion = document.getPreviousVersion();
-        List<Task> previousDocTasks = new ArrayList<>();
+        List<Task> tasks;
+        try (TaskSaveSpan span = saveTracer.start("extract")) {
+            tasks = this.taskXDOMProcessor.extract(documentContent, document.getDocumentReference());
+        }
 
-        if (previousVersion != null) {
-            try {
-                XWikiDocument previousVersionDoc = revisionProvider.getRevision(document, previousVersion);
-                XDOM previousContent = previousVersionDoc.getXDOM();
-                previousDocTasks = this.taskXDOMProcessor.extract(previousContent, document.getDocumentReference());
-                List<DocumentReference> currentTasksIds =
-                    tasks.stream().map(Task::getReference).collect(Collectors.toList());
-                previousDocTasks.removeIf(task -> currentTasksIds.contains(task.getReference()));
-            } catch (XWikiException ignored) {
+        List<DocumentReference> removedTasks = new ArrayList<>();
+        if (!document.isNew()) {
+            try (TaskSaveSpan span = saveTracer.start("previousTasks")) {
+                // The tasks that are still owned by the page but no longer have a macro in its content.
+                removedTasks =
+                    new ArrayList<>(taskManager.getTaskReferencesByOwner(document.getDocumentReference()));
+                Set<DocumentReference> currentTasks =
+                    tasks.stream().map(Task::getReference).collect(Collectors.toSet());
+                removedTasks.removeIf(currentTasks::contains);
+            } catch (TaskException e) {
                 logger.warn(
                     "Could not check for the possibly removed Task Macros and delete their associated Task Pages.");
             }
         }
-        if (tasks.size() > 0 || previousDocTasks.size() > 0) {
+        if (tasks.size() > 0 || removedTasks.size() > 0) {
             // TaskExtractor will add new IDs to the tasks if they don't have one, so we need to update the content.
             try {
                 document.setContent(documentContent);
@@ -124,77 +172,139 @@ public class TaskMacroUpdateEventListener extends AbstractTaskEventListener
                 logger.error("Could not update the content of the document!");
             }
             context.put(TASK_UPDATE_FLAG, true);
-            deleteTaskPages(document, context, previousDocTasks);
-            createOrUpdateTaskPages(document, context, tasks);
+            int savedDocuments = deleteTaskPages(context, removedTasks);
+            savedDocuments += createOrUpdateTaskPages(document, context, tasks);
             context.put(TASK_UPDATE_FLAG, null);
+            metrics.record("macroListener.documentsSavedPerEvent", savedDocuments);
         }
+        metrics.record("macroListener.tasksPerSave", tasks.size());
     }
 
-    private void deleteTaskPages(XWikiDocument document, XWikiContext context, List<Task> previousDocTasks)
+    private int deleteTaskPages(XWikiContext context, List<DocumentReference> removedTasks)
     {
-        for (Task previousDocTask : previousDocTasks) {
-            try {
-                XWikiDocument taskDoc = context.getWiki().getDocument(previousDocTask.getReference(), context);
+        int savedDocuments = 0;
+        for (DocumentReference removedTask : removedTasks) {
+            try (TaskSaveSpan span = saveTracer.start("taskPageDelete", removedTask)) {
+                XWikiDocument taskDoc = context.getWiki().getDocument(removedTask, context);
                 BaseObject taskObj = taskDoc.getXObject(TASK_CLASS_REFERENCE);
-                if (!document.getDocumentReference()
-                    .equals(resolver.resolve(taskObj.getLargeStringValue(Task.OWNER), previousDocTask.getReference())))
-                {
+                if (taskObj == null) {
                     continue;
                 }
-                if (authorizationManager.hasAccess(Right.DELETE, previousDocTask.getReference())) {
+                if (authorizationManager.hasAccess(Right.DELETE, removedTask)) {
                     context.getWiki().deleteDocument(taskDoc, context);
-                } else if (authorizationManager.hasAccess(Right.EDIT, previousDocTask.getReference())) {
+                    savedDocuments++;
+                } else if (authorizationManager.hasAccess(Right.EDIT, removedTask)) {
                     taskObj.set(Task.OWNER, "", context);
                     context.getWiki().saveDocument(taskDoc, context);
+                    savedDocuments++;
                 } else {
                     logger.warn(
                         "The task macro with id [{}] was removed but the associated page could not be deleted or "
                             + "modified.",
-                        previousDocTask.getReference());
+                        removedTask);
                 }
             } catch (XWikiException e) {
-                logger.error("Failed to remove the Task Document with id [{}]", previousDocTask.getReference());
+                logger.error("Failed to remove the Task Document with id [{}]", removedTask);
             }
         }
+        return savedDocuments;
     }
 
-    private void createOrUpdateTaskPages(XWikiDocument document, XWikiContext context, List<Task> tasks)
+    /**
+     * @return the number of task pages that were saved right away.
+     */
+    private int createOrUpdateTaskPages(XWikiDocument document, XWikiContext context, List<Task> tasks)
     {
+        DocumentReference ownerReference = document.getDocumentReference();
+        boolean asyncUpdate = configuration.isAsyncUpdateEnabled();
+        int savedDocuments = 0;
         for (Task task : tasks) {
-            DocumentReference taskReference = task.getReference();
-            try {
-                if (!authorizationManager.hasAccess(Right.EDIT, taskReference)) {
-                    logger.warn(
-                        "The user [{}] edited the macro with id [{}] but does not have edit rights over it's "
-                            + "corresponding page.",
-                        context.getUserReference(), taskReference);
-                    continue;
-                }
-
-                XWikiDocument taskDoc = context.getWiki().getDocument(taskReference, context).clone();
+            if (asyncUpdate) {
+                taskUpdateQueue.enqueue(task.getReference(), ownerReference,
+                    updateContext -> createOrUpdateTaskPage(ownerReference, task, updateContext));
+            } else if (createOrUpdateTaskPage(ownerReference, task, context)) {
+                savedDocuments++;
+            }
+        }
+        return savedDocuments;
+    }
 
-                BaseObject taskObj = taskDoc.getXObject(TASK_CLASS_REFERENCE, true, context);
+    private boolean createOrUpdateTaskPage(DocumentReference ownerReference, Task task, XWikiContext context)
+    {
+        DocumentReference taskReference = task.getReference();
+        try (TaskSaveSpan span = saveTracer.start("taskPageSave", taskReference)) {
+            if (!authorizationManager.hasAccess(Right.EDIT, taskReference)) {
+                logger.warn(
+                    "The user [{}] edited the macro with id [{}] but does not have edit rights over it's "
+                        + "corresponding page.",
+                    context.getUserReference(), taskReference);
+                return false;
+            }
 
-                if (!taskDoc.isNew() && !document.getDocumentReference()
-                    .equals(resolver.resolve(taskObj.getLargeStringValue(Task.OWNER), taskReference)))
-                {
-                    continue;
-                }
+            XWikiDocument taskDoc = context.getWiki().getDocument(taskReference, context).clone();
 
-                taskObj.set(Task.OWNER, document.getDocumentReference(), context);
+            BaseObject taskObj = taskDoc.getXObject(TASK_CLASS_REFERENCE, true, context);
 
-                populateObjectWithMacroParams(context, task, taskObj);
+            if (!taskDoc.isNew() && !ownerReference
+                .equals(resolver.resolve(taskObj.getLargeStringValue(Task.OWNER), taskReference)))
+            {
+                return false;
+            }
 
-                context.getWiki().saveDocument(taskDoc, "Task updated!", context);
-            } catch (XWikiException ignored) {
-                logger.error("Failed to retrieve the document that contains the Task Object with id [{}].",
-                    taskReference);
+            task.setOwner(ownerReference);
+            if (!taskDoc.isNew() && !hasChanges(task, taskObj)) {
+                skippedSaves.incrementAndGet();
+                return false;
             }
+
+            populateObjectWithMacroParams(context, task, taskObj);
+
+            context.getWiki().saveDocument(taskDoc, "Task updated!", context);
+            return true;
+        } catch (XWikiException ignored) {
+            logger.error("Failed to retrieve the document that contains the Task Object with id [{}].",
+                taskReference);
+            return false;
         }
     }
 
+    /**
+     * @return the number of task pages that were not saved because the task macro that they are associated with was
+     *     not modified.
+     */
+    public long getSkippedSaveCount()
+    {
+        return skippedSaves.get();
+    }
+
+    private boolean hasChanges(Task task, BaseObject taskObj)
+    {
+        // An owner stored in a legacy form is rewritten in the canonical form.
+        return !StringUtils.equals(ownerSerializer.serialize(task.getOwner()),
+            taskObj.getLargeStringValue(Task.OWNER))
+            || !StringUtils.equals(StringUtils.defaultString(task.getName()), taskObj.getStringValue(Task.NAME))
+            || !StringUtils.equals(StringUtils.defaultString(task.getStatus()), taskObj.getStringValue(Task.STATUS))
+            || !StringUtils.equals(StringUtils.defaultString(serializer.serialize(task.getReporter())),
+            taskObj.getStringValue(Task.REPORTER))
+            || !StringUtils.equals(StringUtils.defaultString(serializer.serialize(task.getAssignee())),
+            taskObj.getStringValue(Task.ASSIGNEE))
+            || !isSameDate(task.getCreateDate(), taskObj.getDateValue(Task.CREATE_DATE))
+            || !isSameDate(task.getDueDate(), taskObj.getDateValue(Task.DUE_DATE))
+            || !isSameDate(task.getCompleteDate(), taskObj.getDateValue(Task.COMPLETE_DATE));
+    }
+
+    private boolean isSameDate(Date date, Date savedDate)
+    {
+        // The saved dates are usually timestamps, which are never equal to plain dates.
+        return Objects.equals(date == null ? null : date.getTime(), savedDate == null ? null : savedDate.getTime());
+    }
+
     private void populateObjectWithMacroParams(XWikiContext context, Task task, BaseObject object)
     {
+        // The owner is always stored as an absolute reference so that the tasks of a page can be found with an
+        // equality match.
+        object.set(Task.OWNER, ownerSerializer.serialize(task.getOwner()), context);
+
         object.set(Task.NAME, task.getName(), context);
 
         object.set(Task.REPORTER, serializer.serialize(task.getReporter()), context);
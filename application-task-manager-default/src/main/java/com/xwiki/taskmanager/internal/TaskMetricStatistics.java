@@ -0,0 +1,98 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The statistics of a metric recorded by {@link TaskMetricsRegistry}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class TaskMetricStatistics
+{
+    private final long count;
+
+    private final double mean;
+
+    private final long p50;
+
+    private final long p99;
+
+    private final long max;
+
+    /**
+     * @param count the number of recorded values
+     * @param mean the average of the recorded values
+     * @param p50 the median of the recent values
+     * @param p99 the 99th percentile of the recent values
+     * @param max the highest recorded value
+     */
+    @ConstructorProperties({ "count", "mean", "p50", "p99", "max" })
+    public TaskMetricStatistics(long count, double mean, long p50, long p99, long max)
+    {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the average of the recorded values
+     */
+    public double getMean()
+    {
+        return mean;
+    }
+
+    /**
+     * @return the median of the recent values
+     */
+    public long getP50()
+    {
+        return p50;
+    }
+
+    /**
+     * @return the 99th percentile of the recent values
+     */
+    public long getP99()
+    {
+        return p99;
+    }
+
+    /**
+     * @return the highest recorded value
+     */
+    public long getMax()
+    {
+        return max;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+/**
+ * Records the durations of the Task Manager operations and the sizes of the work they do. Each metric keeps its count,
+ * sum and maximum since the start, and a window of its most recent values from which the percentiles are computed.
+ * The statistics are published as a JMX bean and through {@link com.xwiki.taskmanager.TaskMetrics}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component(roles = TaskMetricsRegistry.class)
+@Singleton
+public class TaskMetricsRegistry implements TaskMetricsMXBean, Initializable, Disposable
+{
+    private static final String MBEAN_NAME = "com.xwiki.taskmanager:type=TaskMetrics";
+
+    private static final int WINDOW_SIZE = 1024;
+
+    @Inject
+    private Logger logger;
+
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MBEAN_NAME));
+        } catch (JMException e) {
+            logger.warn("Failed to register the task metrics as a JMX bean.", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MBEAN_NAME));
+        } catch (JMException e) {
+            logger.debug("Failed to unregister the task metrics JMX bean.", e);
+        }
+    }
+
+    /**
+     * Record the duration of an operation that ends now.
+     *
+     * @param name the name of the metric
+     * @param startTime the value of {@link System#nanoTime()} when the operation started
+     */
+    public void recordDuration(String name, long startTime)
+    {
+        record(name, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+    }
+
+    /**
+     * Execute an operation and record its duration.
+     *
+     * @param name the name of the metric
+     * @param operation the operation to execute
+     * @param <T> the type of the result of the operation
+     * @param <E> the type of the exception thrown by the operation
+     * @return the result of the operation
+     * @throws E if the operation failed, in which case its duration is recorded too
+     */
+    public <T, E extends Exception> T time(String name, TimedOperation<T, E> operation) throws E
+    {
+        long startTime = System.nanoTime();
+        try {
+            return operation.execute();
+        } finally {
+            recordDuration(name, startTime);
+        }
+    }
+
+    /**
+     * Execute an operation that has no result and record its duration.
+     *
+     * @param name the name of the metric
+     * @param action the operation to execute
+     * @param <E> the type of the exception thrown by the operation
+     * @throws E if the operation failed, in which case its duration is recorded too
+     */
+    public <E extends Exception> void time(String name, TimedAction<E> action) throws E
+    {
+        long startTime = System.nanoTime();
+        try {
+            action.execute();
+        } finally {
+            recordDuration(name, startTime);
+        }
+    }
+
+    /**
+     * @param name the name of the metric
+     * @param value the value to record
+     */
+    public void record(String name, long value)
+    {
+        metrics.computeIfAbsent(name, key -> new Metric()).record(value);
+    }
+
+    @Override
+    public Map<String, TaskMetricStatistics> getMetrics()
+    {
+        Map<String, TaskMetricStatistics> statistics = new TreeMap<>();
+        metrics.forEach((name, metric) -> statistics.put(name, metric.getStatistics()));
+        return statistics;
+    }
+
+    @Override
+    public void reset()
+    {
+        metrics.clear();
+    }
+
+    /**
+     * An operation whose duration is recorded.
+     *
+     * @param <T> the type of the result of the operation
+     * @param <E> the type of the exception thrown by the operation
+     */
+    @FunctionalInterface
+    public interface TimedOperation<T, E extends Exception>
+    {
+        /**
+         * @return the result of the operation
+         * @throws E if the operation failed
+         */
+        T execute() throws E;
+    }
+
+    /**
+     * An operation without result whose duration is recorded.
+     *
+     * @param <E> the type of the exception thrown by the operation
+     */
+    @FunctionalInterface
+    public interface TimedAction<E extends Exception>
+    {
+        /**
+         * @throws E if the operation failed
+         */
+        void execute() throws E;
+    }
+
+    /**
+     * The values recorded for a metric.
+     */
+    private static final class Metric
+    {
+        private final long[] window = new long[WINDOW_SIZE];
+
+        private long count;
+
+        private long sum;
+
+        private long max;
+
+        synchronized void record(long value)
+        {
+            window[(int) (count % WINDOW_SIZE)] = value;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        TaskMetricStatistics getStatistics()
+        {
+            long[] recentValues;
+            long currentCount;
+            long currentSum;
+            long currentMax;
+            synchronized (this) {
+                currentCount = count;
+                currentSum = sum;
+                currentMax = max;
+                recentValues = Arrays.copyOf(window, (int) Math.min(count, WINDOW_SIZE));
+            }
+            Arrays.sort(recentValues);
+            return new TaskMetricStatistics(currentCount, currentCount == 0 ? 0 : (double) currentSum / currentCount,
+                percentile(recentValues, 50), percentile(recentValues, 99), currentMax);
+        }
+
+        private long percentile(long[] sortedValues, int percentile)
+        {
+            if (sortedValues.length == 0) {
+                return 0;
+            }
+            return sortedValues[(int) Math.ceil(percentile / 100.0 * sortedValues.length) - 1];
+        }
+    }
+}
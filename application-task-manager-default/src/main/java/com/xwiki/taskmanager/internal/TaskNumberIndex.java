@@ -0,0 +1,166 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * In-memory index that maps the number of a task to the reference of the page that holds it. The index of a wiki is
+ * loaded with a single query the first time it is accessed and it is then kept up to date by
+ * {@link TaskObjectUpdateEventListener}. The entries are only hints: the callers are expected to validate the
+ * returned reference and to fall back on the database when it is stale.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component(roles = TaskNumberIndex.class)
+@Singleton
+public class TaskNumberIndex
+{
+    private static final String LOAD_STATEMENT = "select doc.fullName, task.number "
+        + "from Document doc, doc.object(TaskManager.Code.TaskClass) as task";
+
+    @Inject
+    private Provider<QueryManager> queryManagerProvider;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private DocumentReferenceResolver<String> resolver;
+
+    @Inject
+    private Logger logger;
+
+    private final Map<String, Map<Integer, DocumentReference>> wikiIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * @param number the number of a task from the current wiki.
+     * @return the reference of the page that holds the task with the given number or {@code null} if the index does
+     *     not know about it.
+     */
+    public DocumentReference get(int number)
+    {
+        Map<Integer, DocumentReference> wikiIndex = getWikiIndex(contextProvider.get().getWikiId());
+        return wikiIndex == null ? null : wikiIndex.get(number);
+    }
+
+    /**
+     * Associate a task number with the page that holds it. Nothing happens if the index of the wiki was not loaded
+     * yet, since the entry will be retrieved when it will be.
+     *
+     * @param number the number of the task.
+     * @param taskReference the reference of the page that holds the task.
+     */
+    public void put(int number, DocumentReference taskReference)
+    {
+        Map<Integer, DocumentReference> wikiIndex = wikiIndexes.get(taskReference.getWikiReference().getName());
+        if (wikiIndex != null) {
+            wikiIndex.put(number, taskReference);
+        }
+    }
+
+    /**
+     * Remove a task number from the index, if it still points to the given page.
+     *
+     * @param number the number of the task.
+     * @param taskReference the reference of the page that held the task.
+     */
+    public void remove(int number, DocumentReference taskReference)
+    {
+        Map<Integer, DocumentReference> wikiIndex = wikiIndexes.get(taskReference.getWikiReference().getName());
+        if (wikiIndex != null) {
+            wikiIndex.remove(number, taskReference);
+        }
+    }
+
+    /**
+     * Drop the index of a wiki. It will be loaded again on the next access.
+     *
+     * @param wikiId the id of the wiki whose index should be dropped.
+     */
+    public void invalidate(String wikiId)
+    {
+        wikiIndexes.remove(wikiId);
+    }
+
+    /**
+     * Fill the index of a wiki with entries retrieved by the caller, unless it is already loaded.
+     *
+     * @param wikiId the id of the wiki.
+     * @param references the references of the pages that hold the tasks of the wiki, mapped by the task numbers.
+     */
+    public void preload(String wikiId, Map<Integer, DocumentReference> references)
+    {
+        Map<Integer, DocumentReference> wikiIndex = new ConcurrentHashMap<>(Math.max(16, references.size() * 2));
+        wikiIndex.putAll(references);
+        wikiIndexes.putIfAbsent(wikiId, wikiIndex);
+    }
+
+    private Map<Integer, DocumentReference> getWikiIndex(String wikiId)
+    {
+        Map<Integer, DocumentReference> wikiIndex = wikiIndexes.get(wikiId);
+        if (wikiIndex == null) {
+            try {
+                wikiIndex = load(wikiId);
+                Map<Integer, DocumentReference> existingIndex = wikiIndexes.putIfAbsent(wikiId, wikiIndex);
+                if (existingIndex != null) {
+                    wikiIndex = existingIndex;
+                }
+            } catch (QueryException e) {
+                logger.warn("Failed to load the task number index of the wiki [{}]. Cause: [{}].", wikiId,
+                    ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+        return wikiIndex;
+    }
+
+    private Map<Integer, DocumentReference> load(String wikiId) throws QueryException
+    {
+        List<Object[]> results =
+            queryManagerProvider.get().createQuery(LOAD_STATEMENT, Query.XWQL).setWiki(wikiId).execute();
+        WikiReference wikiReference = new WikiReference(wikiId);
+        Map<Integer, DocumentReference> wikiIndex = new ConcurrentHashMap<>(Math.max(16, results.size() * 2));
+        for (Object[] result : results) {
+            if (result[1] != null) {
+                wikiIndex.put((Integer) result[1], resolver.resolve((String) result[0], wikiReference));
+            }
+        }
+        return wikiIndex;
+    }
+}
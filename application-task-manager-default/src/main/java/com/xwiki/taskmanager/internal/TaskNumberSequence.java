@@ -0,0 +1,207 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A named sequence stored in a dedicated table of the wiki database. The sequence is incremented with a single
+ * {@code UPDATE} statement, so the database row lock serializes the concurrent reservations, including the ones made
+ * by the other nodes of a cluster. The statements are executed on the given connection and it's up to the caller to
+ * handle the transaction.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class TaskNumberSequence
+{
+    /**
+     * The name of the table holding the sequences.
+     */
+    public static final String TABLE_NAME = "taskmanager_sequence";
+
+    private static final String[] TABLE_TYPES = new String[] { "TABLE" };
+
+    private static final String CREATE_TABLE_STATEMENT = "CREATE TABLE " + TABLE_NAME
+        + " (seq_name VARCHAR(255) NOT NULL PRIMARY KEY, seq_value INTEGER NOT NULL)";
+
+    private static final String INSERT_STATEMENT =
+        "INSERT INTO " + TABLE_NAME + " (seq_name, seq_value) VALUES (?, ?)";
+
+    private static final String UPDATE_STATEMENT =
+        "UPDATE " + TABLE_NAME + " SET seq_value = seq_value + ? WHERE seq_name = ?";
+
+    private static final String RAISE_STATEMENT =
+        "UPDATE " + TABLE_NAME + " SET seq_value = ? WHERE seq_name = ? AND seq_value < ?";
+
+    private static final String SELECT_STATEMENT = "SELECT seq_value FROM " + TABLE_NAME + " WHERE seq_name = ?";
+
+    private static final String DELETE_STATEMENT = "DELETE FROM " + TABLE_NAME + " WHERE seq_name = ?";
+
+    private final String name;
+
+    /**
+     * @param name the name of the sequence.
+     */
+    public TaskNumberSequence(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Create the table holding the sequences, if it's missing. It's called by {@link TaskTablesDataMigration}.
+     *
+     * @param connection the connection to the database of a wiki.
+     * @throws SQLException if the table could not be created.
+     */
+    public void createTable(Connection connection) throws SQLException
+    {
+        if (!tableExists(connection)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(CREATE_TABLE_STATEMENT);
+            }
+        }
+    }
+
+    /**
+     * Create the sequence. It fails if the sequence already exists.
+     *
+     * @param connection the connection to the database of a wiki.
+     * @param initialValue the initial value of the sequence.
+     * @throws SQLException if the sequence could not be created.
+     */
+    public void create(Connection connection, int initialValue) throws SQLException
+    {
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_STATEMENT)) {
+            insert.setString(1, this.name);
+            insert.setInt(2, initialValue);
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * Increment the sequence. The row of the sequence stays locked until the end of the current transaction.
+     *
+     * @param connection the connection to the database of a wiki.
+     * @param count the value to add to the sequence.
+     * @return the new value of the sequence or -1 if the sequence doesn't exist yet.
+     * @throws SQLException if the sequence could not be incremented.
+     */
+    public int increment(Connection connection, int count) throws SQLException
+    {
+        if (!tableExists(connection)) {
+            return -1;
+        }
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_STATEMENT)) {
+            update.setInt(1, count);
+            update.setString(2, this.name);
+            if (update.executeUpdate() == 0) {
+                return -1;
+            }
+        }
+        return readValue(connection);
+    }
+
+    /**
+     * Raise the sequence to the given value, if it's lower. The row of the sequence stays locked until the end of the
+     * current transaction.
+     *
+     * @param connection the connection to the database of a wiki.
+     * @param minValue the minimum value of the sequence.
+     * @return {@code true} if the sequence exists, {@code false} otherwise.
+     * @throws SQLException if the sequence could not be raised.
+     */
+    public boolean raise(Connection connection, int minValue) throws SQLException
+    {
+        try (PreparedStatement update = connection.prepareStatement(RAISE_STATEMENT)) {
+            update.setInt(1, minValue);
+            update.setString(2, this.name);
+            update.setInt(3, minValue);
+            if (update.executeUpdate() > 0) {
+                return true;
+            }
+        }
+        return readValue(connection) != -1;
+    }
+
+    /**
+     * @param connection the connection to the database of a wiki.
+     * @return the current value of the sequence or -1 if the sequence doesn't exist.
+     * @throws SQLException if the sequence could not be read.
+     */
+    public int get(Connection connection) throws SQLException
+    {
+        return tableExists(connection) ? readValue(connection) : -1;
+    }
+
+    /**
+     * Delete the sequence, if it exists.
+     *
+     * @param connection the connection to the database of a wiki.
+     * @throws SQLException if the sequence could not be deleted.
+     */
+    public void delete(Connection connection) throws SQLException
+    {
+        if (tableExists(connection)) {
+            try (PreparedStatement delete = connection.prepareStatement(DELETE_STATEMENT)) {
+                delete.setString(1, this.name);
+                delete.executeUpdate();
+            }
+        }
+    }
+
+    private int readValue(Connection connection) throws SQLException
+    {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_STATEMENT)) {
+            select.setString(1, this.name);
+            try (ResultSet result = select.executeQuery()) {
+                return result.next() ? result.getInt(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * @param connection the connection to the database of a wiki.
+     * @return {@code true} if the table holding the sequences exists, {@code false} otherwise.
+     * @throws SQLException if the database metadata could not be read.
+     */
+    public boolean tableExists(Connection connection) throws SQLException
+    {
+        DatabaseMetaData metaData = connection.getMetaData();
+        // Depending on the database, the unquoted identifiers are stored in lower or upper case.
+        for (String tableName : Arrays.asList(TABLE_NAME, TABLE_NAME.toUpperCase(Locale.ROOT))) {
+            try (ResultSet tables =
+                metaData.getTables(connection.getCatalog(), connection.getSchema(), tableName, TABLE_TYPES))
+            {
+                if (tables.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -55,6 +55,18 @@ public class TaskObjectUpdateEventListener extends AbstractTaskEventListener
     @Inject
     private TaskCounter taskCounter;
 
+    @Inject
+    private TaskNumberIndex taskNumberIndex;
+
+    @Inject
+    private TaskOwnerUpdater taskOwnerUpdater;
+
+    @Inject
+    private TaskMetricsRegistry metrics;
+
+    @Inject
+    private TaskSaveTracer saveTracer;
+
     /**
      * Constructor.
      */
@@ -66,14 +78,31 @@ public class TaskObjectUpdateEventListener extends AbstractTaskEventListener
 
     @Override
     protected void processEvent(XWikiDocument document, XWikiContext context, Event event)
+    {
+        long startTime = System.nanoTime();
+        try (TaskSaveSpan span = saveTracer.start("objectListener", document.getDocumentReference())) {
+            updateTaskNumberAndOwner(document, context, event);
+        } finally {
+            metrics.recordDuration("objectListener.processEvent", startTime);
+        }
+    }
+
+    private void updateTaskNumberAndOwner(XWikiDocument document, XWikiContext context, Event event)
     {
         if (event instanceof DocumentDeletingEvent) {
             try {
                 XWikiDocument actualDoc = context.getWiki().getDocument(document.getDocumentReference(), context);
                 BaseObject object = actualDoc.getXObject(TASK_CLASS_REFERENCE);
+                if (object != null) {
+                    taskNumberIndex.remove(object.getIntValue(Task.NUMBER), document.getDocumentReference());
+                }
                 if (object != null && !object.getStringValue(Task.OWNER).isEmpty()) {
-                    taskXDOMProcessor.removeTaskMacroCall(document.getDocumentReference(),
-                        resolver.resolve(object.getStringValue(Task.OWNER), document.getDocumentReference()), context);
+                    DocumentReference ownerRef =
+                        resolver.resolve(object.getStringValue(Task.OWNER), document.getDocumentReference());
+                    // The owner page is being deleted as well, so there's no macro call to remove.
+                    if (!ownerRef.equals(context.get(OWNER_DELETION_FLAG))) {
+                        taskXDOMProcessor.removeTaskMacroCall(document.getDocumentReference(), ownerRef, context);
+                    }
                 }
             } catch (XWikiException e) {
                 logger.warn("Failed to remove the macro call from the owner document of the task [{}]",
@@ -89,23 +118,18 @@ public class TaskObjectUpdateEventListener extends AbstractTaskEventListener
 
         maybeSetTaskNumber(context, taskObj);
 
+        int number = taskObj.getIntValue(Task.NUMBER, -1);
+        if (number != -1) {
+            taskNumberIndex.put(number, document.getDocumentReference());
+        }
+
         if (context.get(TASK_UPDATE_FLAG) != null || taskObj.getStringValue(Task.OWNER).isEmpty()) {
             return;
         }
 
-        String taskOwner = taskObj.getStringValue(Task.OWNER);
-
-        DocumentReference taskOwnerRef = resolver.resolve(taskOwner, document.getDocumentReference());
-
-        try {
-            context.put(TASK_UPDATE_FLAG, true);
-            if (!taskOwner.isEmpty()) {
-                taskXDOMProcessor.updateTaskMacroCall(taskOwnerRef, taskObj, context);
-            }
-            context.put(TASK_UPDATE_FLAG, null);
-        } catch (XWikiException e) {
-            logger.error("Failed to process the owner document of the task [{}].", taskOwnerRef);
-        }
+        DocumentReference taskOwnerRef =
+            resolver.resolve(taskObj.getStringValue(Task.OWNER), document.getDocumentReference());
+        taskOwnerUpdater.update(taskOwnerRef, taskObj);
     }
 
     private void maybeSetTaskNumber(XWikiContext context, BaseObject taskObj)
@@ -0,0 +1,209 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.hibernate.jdbc.ReturningWork;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xwiki.taskmanager.model.Task;
+
+/**
+ * Rewrites the owner of the existing tasks of a wiki to the canonical form, i.e. the absolute reference of the owner
+ * page, so that the tasks of a page can be found with an equality match on the owner. The older versions stored the
+ * owner in a form relative to the task page. The migration is run by the {@link TaskWarmUpJob} and its completion is
+ * recorded in the database of the wiki so that the other cluster nodes and the next restarts skip it. The tasks are
+ * processed by batches and each modified task page is saved as a minor edit, so that its history is kept and the
+ * caches of all the cluster nodes are invalidated. The platform data migrations are not used since their version is
+ * shared with the platform and an extension installed on a more recent platform would never have them executed.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component(roles = TaskOwnerMigration.class)
+@Singleton
+public class TaskOwnerMigration
+{
+    private static final TaskNumberSequence MARKER = new TaskNumberSequence("taskmanager.migration.canonicalOwner");
+
+    private static final String OWNERS_STATEMENT = "select taskObj.id, taskObj.name, ownerProp.value "
+        + "from BaseObject as taskObj, StringProperty as ownerProp "
+        + "where taskObj.className = 'TaskManager.Code.TaskClass' and ownerProp.id.id = taskObj.id "
+        + "and ownerProp.id.name = 'owner' and ownerProp.value <> '' and taskObj.id > :lastId "
+        + "order by taskObj.id";
+
+    private static final int BATCH_SIZE = 500;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private DocumentReferenceResolver<String> resolver;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Logger logger;
+
+    private final Set<String> migratedWikis = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> runningWikis = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Migrate the owners of the tasks of a wiki, if it wasn't already done. Nothing happens if the wiki is already
+     * being migrated.
+     *
+     * @param wikiId the wiki whose tasks are migrated
+     */
+    public void migrate(String wikiId)
+    {
+        if (isMigrated(wikiId) || !runningWikis.add(wikiId)) {
+            return;
+        }
+        XWikiContext context = contextProvider.get();
+        String currentWikiId = context.getWikiId();
+        try {
+            context.setWikiId(wikiId);
+            if (execute(context, false, connection -> MARKER.tableExists(connection))) {
+                migrateOwners(context);
+                execute(context, true, connection -> {
+                    MARKER.delete(connection);
+                    MARKER.create(connection, 1);
+                    return null;
+                });
+                migratedWikis.add(wikiId);
+            }
+        } catch (XWikiException | QueryException e) {
+            logger.warn("Failed to migrate the task owners of the wiki [{}].", wikiId, e);
+        } finally {
+            runningWikis.remove(wikiId);
+            context.setWikiId(currentWikiId);
+        }
+    }
+
+    /**
+     * @param wikiId a wiki
+     * @return {@code true} if the owners of the tasks of the wiki are in the canonical form, {@code false} if the
+     *     wiki wasn't migrated yet or if it could not be checked
+     */
+    public boolean isMigrated(String wikiId)
+    {
+        if (migratedWikis.contains(wikiId)) {
+            return true;
+        }
+        XWikiContext context = contextProvider.get();
+        String currentWikiId = context.getWikiId();
+        try {
+            context.setWikiId(wikiId);
+            // The migration might have been run by another cluster node.
+            if (execute(context, false, connection -> MARKER.get(connection) != -1)) {
+                migratedWikis.add(wikiId);
+                return true;
+            }
+        } catch (XWikiException e) {
+            logger.warn("Failed to check the migration of the task owners of the wiki [{}]. Root cause: [{}].",
+                wikiId, e.getMessage());
+        } finally {
+            context.setWikiId(currentWikiId);
+        }
+        return false;
+    }
+
+    private void migrateOwners(XWikiContext context) throws QueryException, XWikiException
+    {
+        WikiReference wikiReference = new WikiReference(context.getWikiId());
+        long lastId = Long.MIN_VALUE;
+        int count = 0;
+        Object previousFlag = context.get(AbstractTaskEventListener.TASK_UPDATE_FLAG);
+        // Only the task pages are modified, their owner already has the right macro calls.
+        context.put(AbstractTaskEventListener.TASK_UPDATE_FLAG, true);
+        try {
+            while (true) {
+                List<Object[]> owners = queryManager.createQuery(OWNERS_STATEMENT, Query.HQL)
+                    .setWiki(wikiReference.getName())
+                    .bindValue("lastId", lastId)
+                    .setLimit(BATCH_SIZE)
+                    .execute();
+                if (owners.isEmpty()) {
+                    break;
+                }
+                for (Object[] owner : owners) {
+                    DocumentReference taskReference = resolver.resolve((String) owner[1], wikiReference);
+                    String canonicalOwner = serializer.serialize(resolver.resolve((String) owner[2], taskReference));
+                    if (!canonicalOwner.equals(owner[2]) && migrateOwner(context, taskReference, canonicalOwner)) {
+                        count++;
+                    }
+                }
+                lastId = (Long) owners.get(owners.size() - 1)[0];
+            }
+        } finally {
+            context.put(AbstractTaskEventListener.TASK_UPDATE_FLAG, previousFlag);
+        }
+        logger.info("Migrated the owner of [{}] tasks of the wiki [{}].", count, wikiReference.getName());
+    }
+
+    private boolean migrateOwner(XWikiContext context, DocumentReference taskReference, String canonicalOwner)
+        throws XWikiException
+    {
+        XWikiDocument taskDocument = context.getWiki().getDocument(taskReference, context).clone();
+        BaseObject taskObject = taskDocument.getXObject(AbstractTaskEventListener.TASK_CLASS_REFERENCE);
+        if (taskObject == null) {
+            return false;
+        }
+        taskObject.set(Task.OWNER, canonicalOwner, context);
+        context.getWiki().saveDocument(taskDocument, "Migrated the task owner to the canonical form.", true,
+            context);
+        return true;
+    }
+
+    private <T> T execute(XWikiContext context, boolean write, ReturningWork<T> work) throws XWikiException
+    {
+        XWikiHibernateStore store = context.getWiki().getHibernateStore();
+        if (write) {
+            return store.executeWrite(context, session -> session.doReturningWork(work));
+        } else {
+            return store.executeRead(context, session -> session.doReturningWork(work));
+        }
+    }
+}
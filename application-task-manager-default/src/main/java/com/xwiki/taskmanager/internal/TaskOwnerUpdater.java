@@ -0,0 +1,285 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.XDOM;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+
+/**
+ * Coalesces the updates of the task macros of an owner page, so that changing many tasks of the same page results in
+ * a single parse of its content and a single save. The updates are coalesced either:
+ * <ul>
+ * <li>between {@link #startBatch()} and {@link #endBatch()}, in which case they are applied by the calling thread
+ * when the outermost batch ends;</li>
+ * <li>during the window configured through the {@code taskmanager.ownerUpdateWindow} property of xwiki.properties,
+ * in milliseconds, in which case they are applied by a background thread when the window of the owner page
+ * elapses.</li>
+ * </ul>
+ * When no batch is started and no window is configured, the owner page is updated right away.
+ * <p>
+ * The window is disabled by default because it trades consistency for fewer saves: the owner page lags behind its
+ * tasks until the window elapses. The pending updates are grouped by owner page and by user, so that each save is
+ * made with the rights and the authorship of the user who changed the tasks. When the owner page is saved during the
+ * window, its pending updates are applied to the saved content through {@link #flush(DocumentReference, XDOM)}, so
+ * that the macros of the saved content don't revert the changes of the tasks. The values of the tasks win over the
+ * edits of their macros made in that content.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component(roles = TaskOwnerUpdater.class)
+@Singleton
+public class TaskOwnerUpdater implements Initializable, Disposable
+{
+    private static final String WINDOW_PROPERTY = "taskmanager.ownerUpdateWindow";
+
+    private static final String BATCH_KEY = "taskmanager.ownerUpdateBatch";
+
+    @Inject
+    private TaskXDOMProcessor taskXDOMProcessor;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Inject
+    private Logger logger;
+
+    private final Map<Pair<DocumentReference, DocumentReference>, OwnerUpdate> pendingUpdates = new HashMap<>();
+
+    private long window;
+
+    private ScheduledExecutorService executor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        window = xwikiProperties.getProperty(WINDOW_PROPERTY, 0L);
+        if (window > 0) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Task Manager owner update worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (executor != null) {
+            // Apply the updates that are still waiting for their window to elapse.
+            executor.shutdown();
+            try {
+                executor.awaitTermination(window + 10000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Start coalescing the owner page updates requested by the current request. Calls can be nested, the updates are
+     * applied when the outermost batch ends.
+     */
+    public void startBatch()
+    {
+        XWikiContext context = contextProvider.get();
+        Batch batch = (Batch) context.get(BATCH_KEY);
+        if (batch == null) {
+            batch = new Batch();
+            context.put(BATCH_KEY, batch);
+        }
+        batch.depth++;
+    }
+
+    /**
+     * End a batch started by {@link #startBatch()} and, if it's the outermost one, update each of the owner pages
+     * that were modified during the batch.
+     */
+    public void endBatch()
+    {
+        XWikiContext context = contextProvider.get();
+        Batch batch = (Batch) context.get(BATCH_KEY);
+        if (batch == null || --batch.depth > 0) {
+            return;
+        }
+        context.put(BATCH_KEY, null);
+        for (Map.Entry<DocumentReference, Map<DocumentReference, BaseObject>> entry : batch.updates.entrySet()) {
+            apply(entry.getKey(), entry.getValue(), context);
+        }
+    }
+
+    /**
+     * Update the macro call of a task in the page that owns it, possibly later, along with the other tasks of the
+     * same page.
+     *
+     * @param ownerReference the reference of the page that contains the task macro.
+     * @param taskObject the task object whose values should be reflected in the macro call.
+     */
+    public void update(DocumentReference ownerReference, BaseObject taskObject)
+    {
+        XWikiContext context = contextProvider.get();
+        Batch batch = (Batch) context.get(BATCH_KEY);
+        if (batch != null) {
+            batch.updates.computeIfAbsent(ownerReference, key -> new LinkedHashMap<>())
+                .put(taskObject.getDocumentReference(), taskObject.clone());
+        } else if (executor != null) {
+            schedule(ownerReference, taskObject, context);
+        } else {
+            apply(ownerReference, Collections.singletonMap(taskObject.getDocumentReference(), taskObject), context);
+        }
+    }
+
+    /**
+     * Apply the updates of an owner page that wait for their window to elapse to a content of that page that is being
+     * saved, instead of saving the page later.
+     *
+     * @param ownerReference the reference of the page that contains the task macros.
+     * @param content the content of the page that is being saved. It is modified in place.
+     */
+    public void flush(DocumentReference ownerReference, XDOM content)
+    {
+        if (executor == null) {
+            return;
+        }
+        Map<DocumentReference, BaseObject> taskObjects = new LinkedHashMap<>();
+        synchronized (pendingUpdates) {
+            Iterator<Map.Entry<Pair<DocumentReference, DocumentReference>, OwnerUpdate>> iterator =
+                pendingUpdates.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Pair<DocumentReference, DocumentReference>, OwnerUpdate> entry = iterator.next();
+                if (ownerReference.equals(entry.getKey().getLeft())) {
+                    taskObjects.putAll(entry.getValue().taskObjects);
+                    iterator.remove();
+                }
+            }
+        }
+        if (!taskObjects.isEmpty()) {
+            taskXDOMProcessor.updateTaskMacroCalls(content, ownerReference, taskObjects);
+        }
+    }
+
+    private void schedule(DocumentReference ownerReference, BaseObject taskObject, XWikiContext context)
+    {
+        Pair<DocumentReference, DocumentReference> key = Pair.of(ownerReference, context.getUserReference());
+        synchronized (pendingUpdates) {
+            OwnerUpdate ownerUpdate = pendingUpdates.get(key);
+            if (ownerUpdate == null) {
+                OwnerUpdate newOwnerUpdate = new OwnerUpdate(context.getUserReference());
+                pendingUpdates.put(key, newOwnerUpdate);
+                executor.schedule(new AbstractXWikiRunnable()
+                {
+                    @Override
+                    protected void runInternal()
+                    {
+                        applyPending(key, newOwnerUpdate);
+                    }
+                }, window, TimeUnit.MILLISECONDS);
+                ownerUpdate = newOwnerUpdate;
+            }
+            // Only the latest version of each task matters.
+            ownerUpdate.taskObjects.put(taskObject.getDocumentReference(), taskObject.clone());
+        }
+    }
+
+    private void applyPending(Pair<DocumentReference, DocumentReference> key, OwnerUpdate ownerUpdate)
+    {
+        synchronized (pendingUpdates) {
+            // The updates could have been flushed in a save of the owner page.
+            if (!pendingUpdates.remove(key, ownerUpdate)) {
+                return;
+            }
+        }
+        DocumentReference ownerReference = key.getLeft();
+        XWikiContext context = contextProvider.get();
+        context.setWikiId(ownerReference.getWikiReference().getName());
+        context.setUserReference(ownerUpdate.userReference);
+        apply(ownerReference, ownerUpdate.taskObjects, context);
+    }
+
+    private void apply(DocumentReference ownerReference, Map<DocumentReference, BaseObject> taskObjects,
+        XWikiContext context)
+    {
+        Object previousFlag = context.get(AbstractTaskEventListener.TASK_UPDATE_FLAG);
+        context.put(AbstractTaskEventListener.TASK_UPDATE_FLAG, true);
+        try {
+            taskXDOMProcessor.updateTaskMacroCalls(ownerReference, taskObjects, context);
+        } catch (XWikiException e) {
+            logger.error("Failed to process the owner document of the tasks [{}].", taskObjects.keySet(), e);
+        } finally {
+            context.put(AbstractTaskEventListener.TASK_UPDATE_FLAG, previousFlag);
+        }
+    }
+
+    /**
+     * The owner page updates requested during a batch.
+     */
+    private static final class Batch
+    {
+        private final Map<DocumentReference, Map<DocumentReference, BaseObject>> updates = new LinkedHashMap<>();
+
+        private int depth;
+    }
+
+    /**
+     * The task updates of an owner page that wait for their window to elapse.
+     */
+    private static final class OwnerUpdate
+    {
+        private final DocumentReference userReference;
+
+        private final Map<DocumentReference, BaseObject> taskObjects = new LinkedHashMap<>();
+
+        OwnerUpdate(DocumentReference userReference)
+        {
+            this.userReference = userReference;
+        }
+    }
+}
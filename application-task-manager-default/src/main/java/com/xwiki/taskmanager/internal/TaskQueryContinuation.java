@@ -0,0 +1,143 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.TaskQuery;
+
+/**
+ * The position of the last task of a page of search results, on which the next page is started. It is exchanged with
+ * the clients as an opaque token that holds the sort of the query, the sort value and the number of the task, so
+ * that the next page can be retrieved with a range condition instead of skipping all the previous results.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+final class TaskQueryContinuation
+{
+    private static final char SEPARATOR = '|';
+
+    private static final String NULL_VALUE = "n";
+
+    private static final String DATE_VALUE = "d";
+
+    private static final String STRING_VALUE = "s";
+
+    private final String sortField;
+
+    private final boolean ascending;
+
+    private final Object sortValue;
+
+    private final int number;
+
+    /**
+     * @param sortField the field by which the results are sorted
+     * @param ascending the direction of the sort
+     * @param sortValue the value of the sort field for the last task of the page, can be {@code null}
+     * @param number the number of the last task of the page
+     */
+    TaskQueryContinuation(String sortField, boolean ascending, Object sortValue, int number)
+    {
+        this.sortField = sortField;
+        this.ascending = ascending;
+        this.sortValue = sortValue;
+        this.number = number;
+    }
+
+    /**
+     * @param token a token created by {@link #toToken()}
+     * @param query the query whose results are paginated
+     * @return the position encoded by the token
+     * @throws TaskException if the token is malformed or if it was created for a query with another sort
+     */
+    static TaskQueryContinuation fromToken(String token, TaskQuery query) throws TaskException
+    {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = StringUtils.split(decoded, SEPARATOR);
+            if (parts.length < 4 || !query.getSortField().equals(parts[0])
+                || query.isAscending() != Boolean.parseBoolean(parts[1]))
+            {
+                throw new TaskException(String.format("The continuation token [%s] does not match the sort of the "
+                    + "query.", token));
+            }
+            // The string values can contain the separator.
+            String value = StringUtils.substringAfter(decoded, String.join(String.valueOf(SEPARATOR), parts[0],
+                parts[1], parts[2], ""));
+            return new TaskQueryContinuation(parts[0], query.isAscending(), parseValue(value),
+                Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new TaskException(String.format("Invalid continuation token [%s].", token), e);
+        }
+    }
+
+    /**
+     * @return the opaque token that encodes this position
+     */
+    String toToken()
+    {
+        String value;
+        if (sortValue == null) {
+            value = NULL_VALUE;
+        } else if (sortValue instanceof Date) {
+            value = DATE_VALUE + ((Date) sortValue).getTime();
+        } else {
+            value = STRING_VALUE + sortValue;
+        }
+        String decoded = String.join(String.valueOf(SEPARATOR), sortField, String.valueOf(ascending),
+            String.valueOf(number), value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the value of the sort field for the last task of the page, can be {@code null}
+     */
+    Object getSortValue()
+    {
+        return sortValue;
+    }
+
+    /**
+     * @return the number of the last task of the page
+     */
+    int getNumber()
+    {
+        return number;
+    }
+
+    private static Object parseValue(String value)
+    {
+        if (value.startsWith(DATE_VALUE)) {
+            return new Date(Long.parseLong(value.substring(DATE_VALUE.length())));
+        } else if (value.startsWith(STRING_VALUE)) {
+            return value.substring(STRING_VALUE.length());
+        } else if (NULL_VALUE.equals(value)) {
+            return null;
+        }
+        throw new IllegalArgumentException(String.format("Unknown sort value [%s].", value));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.xwiki.taskmanager.TaskSaveTrace;
+
+/**
+ * A traced step of the task synchronization, started by {@link TaskSaveTracer#start(String)} and ended by
+ * {@link #close()}, usually through a try-with-resources statement.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class TaskSaveSpan implements TaskSaveTrace, AutoCloseable
+{
+    private final TaskSaveTracer tracer;
+
+    private final TaskSaveSpan parent;
+
+    private final String name;
+
+    private final long startDate;
+
+    private final long startTime;
+
+    private final List<TaskSaveTrace> children = new ArrayList<>();
+
+    private long duration;
+
+    TaskSaveSpan(TaskSaveTracer tracer, TaskSaveSpan parent, String name)
+    {
+        this.tracer = tracer;
+        this.parent = parent;
+        this.name = name;
+        this.startDate = System.currentTimeMillis();
+        this.startTime = System.nanoTime();
+        if (parent != null) {
+            parent.children.add(this);
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public Date getStartDate()
+    {
+        return new Date(startDate);
+    }
+
+    @Override
+    public long getDuration()
+    {
+        return duration;
+    }
+
+    @Override
+    public List<TaskSaveTrace> getChildren()
+    {
+        return Collections.unmodifiableList(children);
+    }
+
+    TaskSaveSpan getParent()
+    {
+        return parent;
+    }
+
+    @Override
+    public void close()
+    {
+        if (tracer != null) {
+            duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            tracer.end(this);
+        }
+    }
+}
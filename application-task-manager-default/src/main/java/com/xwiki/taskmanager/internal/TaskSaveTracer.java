@@ -0,0 +1,172 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import com.xwiki.taskmanager.TaskSaveTrace;
+
+/**
+ * Opt-in tracing of the task synchronization that runs when a page is saved. When the
+ * {@code taskmanager.saveTracing.enabled} property of xwiki.properties is set, the steps of the synchronization
+ * (the task listeners, the extraction of the task macros, the load of the previous tasks of the page, the save of each
+ * task page and the rewrite of the owner pages) are recorded as a tree of {@link TaskSaveSpan}s for each thread. The
+ * trees that took longer than {@code taskmanager.saveTracing.threshold} milliseconds are logged and the last
+ * {@code taskmanager.saveTracing.bufferSize} of them are kept in memory, to be displayed in the administration.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component(roles = TaskSaveTracer.class)
+@Singleton
+public class TaskSaveTracer implements Initializable
+{
+    private static final String ENABLED_PROPERTY = "taskmanager.saveTracing.enabled";
+
+    private static final String THRESHOLD_PROPERTY = "taskmanager.saveTracing.threshold";
+
+    private static final String BUFFER_SIZE_PROPERTY = "taskmanager.saveTracing.bufferSize";
+
+    private static final long DEFAULT_THRESHOLD = 1000L;
+
+    private static final int DEFAULT_BUFFER_SIZE = 20;
+
+    private static final TaskSaveSpan NOOP_SPAN = new TaskSaveSpan(null, null, "");
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Logger logger;
+
+    private final ThreadLocal<TaskSaveSpan> currentSpan = new ThreadLocal<>();
+
+    private final Deque<TaskSaveTrace> slowTraces = new ArrayDeque<>();
+
+    private boolean enabled;
+
+    private long threshold;
+
+    private int bufferSize;
+
+    @Override
+    public void initialize()
+    {
+        enabled = xwikiProperties.getProperty(ENABLED_PROPERTY, false);
+        threshold = xwikiProperties.getProperty(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD);
+        bufferSize = xwikiProperties.getProperty(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Start a step of the task synchronization. The step is a child of the step that is in progress in the current
+     * thread, if any.
+     *
+     * @param name the name of the step
+     * @return the started step, that has to be closed once the step is done
+     */
+    public TaskSaveSpan start(String name)
+    {
+        if (!enabled) {
+            return NOOP_SPAN;
+        }
+        TaskSaveSpan span = new TaskSaveSpan(this, currentSpan.get(), name);
+        currentSpan.set(span);
+        return span;
+    }
+
+    /**
+     * Start a step of the task synchronization that handles a given page.
+     *
+     * @param name the name of the step
+     * @param reference the reference of the page handled by the step
+     * @return the started step, that has to be closed once the step is done
+     * @see #start(String)
+     */
+    public TaskSaveSpan start(String name, EntityReference reference)
+    {
+        if (!enabled) {
+            return NOOP_SPAN;
+        }
+        return start(String.format("%s [%s]", name, serializer.serialize(reference)));
+    }
+
+    /**
+     * @return the last traces that took longer than the threshold, the most recent first.
+     */
+    public List<TaskSaveTrace> getSlowTraces()
+    {
+        synchronized (slowTraces) {
+            return new ArrayList<>(slowTraces);
+        }
+    }
+
+    void end(TaskSaveSpan span)
+    {
+        if (span.getParent() != null) {
+            currentSpan.set(span.getParent());
+            return;
+        }
+        currentSpan.remove();
+        if (span.getDuration() < threshold) {
+            return;
+        }
+        if (logger.isWarnEnabled()) {
+            StringBuilder summary = new StringBuilder();
+            appendTrace(summary, span, 1);
+            logger.warn("The task synchronization took [{}] ms:{}", span.getDuration(), summary);
+        }
+        synchronized (slowTraces) {
+            slowTraces.addFirst(span);
+            while (slowTraces.size() > bufferSize) {
+                slowTraces.removeLast();
+            }
+        }
+    }
+
+    private void appendTrace(StringBuilder summary, TaskSaveTrace trace, int depth)
+    {
+        summary.append('\n');
+        for (int i = 0; i < depth; i++) {
+            summary.append("  ");
+        }
+        summary.append(trace.getName()).append(": ").append(trace.getDuration()).append(" ms");
+        for (TaskSaveTrace child : trace.getChildren()) {
+            appendTrace(summary, child, depth + 1);
+        }
+    }
+}
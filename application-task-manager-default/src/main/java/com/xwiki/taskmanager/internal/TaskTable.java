@@ -0,0 +1,269 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A denormalized copy of the task objects of a wiki, stored in a dedicated table of the wiki database. Each task is
+ * stored in a single indexed row, so the lookups by number or by owner don't need to join the generic object property
+ * tables. The table is only a projection of the task objects, that remain the reference. The statements are executed
+ * on the given connection and it's up to the caller to handle the transaction.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class TaskTable
+{
+    /**
+     * The name of the table holding the tasks.
+     */
+    public static final String TABLE_NAME = "taskmanager_task";
+
+    private static final String[] TABLE_TYPES = new String[] { "TABLE" };
+
+    private static final String CREATE_TABLE_STATEMENT = "CREATE TABLE " + TABLE_NAME
+        + " (doc_name VARCHAR(768) NOT NULL PRIMARY KEY, task_number INTEGER, owner VARCHAR(768), "
+        + "assignee VARCHAR(255), reporter VARCHAR(255), status VARCHAR(255), create_date TIMESTAMP, "
+        + "due_date TIMESTAMP, complete_date TIMESTAMP)";
+
+    private static final List<String> CREATE_INDEX_STATEMENTS = Arrays.asList(
+        "CREATE INDEX taskmanager_task_number ON " + TABLE_NAME + " (task_number)",
+        "CREATE INDEX taskmanager_task_owner ON " + TABLE_NAME + " (owner)",
+        "CREATE INDEX taskmanager_task_assignee ON " + TABLE_NAME + " (assignee, status)",
+        "CREATE INDEX taskmanager_task_duedate ON " + TABLE_NAME + " (due_date)");
+
+    private static final String DELETE_STATEMENT = "DELETE FROM " + TABLE_NAME + " WHERE doc_name = ?";
+
+    private static final String DELETE_ALL_STATEMENT = "DELETE FROM " + TABLE_NAME;
+
+    private static final String INSERT_STATEMENT = "INSERT INTO " + TABLE_NAME + " (doc_name, task_number, owner, "
+        + "assignee, reporter, status, create_date, due_date, complete_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_BY_NUMBER_STATEMENT =
+        "SELECT doc_name FROM " + TABLE_NAME + " WHERE task_number = ? ORDER BY doc_name";
+
+    private static final String SELECT_BY_OWNER_STATEMENT =
+        "SELECT doc_name FROM " + TABLE_NAME + " WHERE owner = ? ORDER BY doc_name";
+
+    /**
+     * The values of a row of the table. The references are serialized by the caller.
+     */
+    public static class Row
+    {
+        private final String documentName;
+
+        private final int number;
+
+        private final String owner;
+
+        private final String assignee;
+
+        private final String reporter;
+
+        private final String status;
+
+        private final Date[] dates;
+
+        /**
+         * @param documentName the local reference of the page that holds the task
+         * @param number the number of the task
+         * @param owner the absolute reference of the page that contains the task macro
+         * @param assignee the reference of the user to whom the task is assigned, can be {@code null}
+         * @param reporter the reference of the user that created the task, can be {@code null}
+         * @param status the status of the task
+         * @param dates the creation, due and completion dates of the task, each of them can be {@code null}
+         */
+        public Row(String documentName, int number, String owner, String assignee, String reporter, String status,
+            Date... dates)
+        {
+            this.documentName = documentName;
+            this.number = number;
+            this.owner = owner;
+            this.assignee = assignee;
+            this.reporter = reporter;
+            this.status = status;
+            this.dates = Arrays.copyOf(dates, 3);
+        }
+    }
+
+    /**
+     * Create the table holding the tasks and its indexes, if it's missing. It's called by
+     * {@link TaskTablesDataMigration}.
+     *
+     * @param connection the connection to the database of a wiki.
+     * @return {@code true} if the table was created, {@code false} if it already existed
+     * @throws SQLException if the table could not be created.
+     */
+    public boolean createTable(Connection connection) throws SQLException
+    {
+        if (tableExists(connection)) {
+            return false;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(CREATE_TABLE_STATEMENT);
+            for (String createIndex : CREATE_INDEX_STATEMENTS) {
+                statement.executeUpdate(createIndex);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Insert or replace the rows of some tasks.
+     *
+     * @param connection the connection to the database of a wiki.
+     * @param rows the rows to save
+     * @throws SQLException if the rows could not be saved.
+     */
+    public void save(Connection connection, List<Row> rows) throws SQLException
+    {
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_STATEMENT);
+            PreparedStatement insert = connection.prepareStatement(INSERT_STATEMENT))
+        {
+            for (Row row : rows) {
+                delete.setString(1, row.documentName);
+                delete.addBatch();
+
+                insert.setString(1, row.documentName);
+                insert.setInt(2, row.number);
+                insert.setString(3, row.owner);
+                insert.setString(4, row.assignee);
+                insert.setString(5, row.reporter);
+                insert.setString(6, row.status);
+                for (int i = 0; i < row.dates.length; i++) {
+                    setDate(insert, 7 + i, row.dates[i]);
+                }
+                insert.addBatch();
+            }
+            delete.executeBatch();
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Remove the row of a task.
+     *
+     * @param connection the connection to the database of a wiki.
+     * @param documentName the local reference of the page that held the task
+     * @throws SQLException if the row could not be removed.
+     */
+    public void delete(Connection connection, String documentName) throws SQLException
+    {
+        try (PreparedStatement delete = connection.prepareStatement(DELETE_STATEMENT)) {
+            delete.setString(1, documentName);
+            delete.executeUpdate();
+        }
+    }
+
+    /**
+     * Remove all the rows of the table.
+     *
+     * @param connection the connection to the database of a wiki.
+     * @throws SQLException if the rows could not be removed.
+     */
+    public void clear(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(DELETE_ALL_STATEMENT);
+        }
+    }
+
+    /**
+     * @param connection the connection to the database of a wiki.
+     * @param number the number of a task
+     * @return the local references of the pages that hold a task with the given number
+     * @throws SQLException if the table could not be queried.
+     */
+    public List<String> getDocumentsByNumber(Connection connection, int number) throws SQLException
+    {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_BY_NUMBER_STATEMENT)) {
+            select.setInt(1, number);
+            return getDocuments(select);
+        }
+    }
+
+    /**
+     * @param connection the connection to the database of a wiki.
+     * @param owner the absolute reference of a page
+     * @return the local references of the pages that hold a task owned by the given page
+     * @throws SQLException if the table could not be queried.
+     */
+    public List<String> getDocumentsByOwner(Connection connection, String owner) throws SQLException
+    {
+        try (PreparedStatement select = connection.prepareStatement(SELECT_BY_OWNER_STATEMENT)) {
+            select.setString(1, owner);
+            return getDocuments(select);
+        }
+    }
+
+    private List<String> getDocuments(PreparedStatement select) throws SQLException
+    {
+        List<String> documents = new ArrayList<>();
+        try (ResultSet result = select.executeQuery()) {
+            while (result.next()) {
+                documents.add(result.getString(1));
+            }
+        }
+        return documents;
+    }
+
+    private void setDate(PreparedStatement statement, int index, Date date) throws SQLException
+    {
+        if (date == null) {
+            statement.setNull(index, Types.TIMESTAMP);
+        } else {
+            statement.setTimestamp(index, new Timestamp(date.getTime()));
+        }
+    }
+
+    /**
+     * @param connection the connection to the database of a wiki.
+     * @return {@code true} if the table holding the tasks exists, {@code false} otherwise.
+     * @throws SQLException if the database metadata could not be read.
+     */
+    public boolean tableExists(Connection connection) throws SQLException
+    {
+        DatabaseMetaData metaData = connection.getMetaData();
+        // Depending on the database, the unquoted identifiers are stored in lower or upper case.
+        for (String tableName : Arrays.asList(TABLE_NAME, TABLE_NAME.toUpperCase(Locale.ROOT))) {
+            try (ResultSet tables =
+                metaData.getTables(connection.getCatalog(), connection.getSchema(), tableName, TABLE_TYPES))
+            {
+                if (tables.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.hibernate.jdbc.ReturningWork;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.TaskManager;
+import com.xwiki.taskmanager.model.Task;
+
+/**
+ * Keeps the {@link TaskTable} of each wiki in sync with the task objects and serves the lookups that it can answer
+ * without joining the object property tables. The table is optional and is enabled through the
+ * {@code taskmanager.taskTable.enabled} property of xwiki.properties, and it's created by
+ * {@link TaskTablesDataMigration}.
+ * <p>
+ * The table of a wiki is filled from the existing task objects by {@link #synchronize(String)}, in the background, and
+ * the completion of the fill is recorded with a marker row in the {@link TaskNumberSequence#TABLE_NAME} table. The
+ * lookups check the marker in the same transaction and return {@code null} when it's missing, so that the callers
+ * fall back on the task objects. The marker is removed when the table misses a change of the tasks, either because
+ * the table is disabled or because a row could not be written, and the table is then filled again.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component(roles = TaskTableStore.class)
+@Singleton
+public class TaskTableStore implements Initializable, Disposable
+{
+    private static final String ENABLED_PROPERTY = "taskmanager.taskTable.enabled";
+
+    private static final TaskTable TABLE = new TaskTable();
+
+    private static final TaskNumberSequence SYNC_MARKER =
+        new TaskNumberSequence("taskmanager.taskTable.synchronized");
+
+    private static final LocalDocumentReference TASK_CLASS_REFERENCE =
+        new LocalDocumentReference(Arrays.asList("TaskManager", "Code"), "TaskClass");
+
+    private static final String TASK_PAGES_STATEMENT = "select distinct taskObj.name from BaseObject as taskObj "
+        + "where taskObj.className = 'TaskManager.Code.TaskClass' and taskObj.name > :lastName "
+        + "order by taskObj.name";
+
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private Provider<TaskManager> taskManagerProvider;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private DocumentReferenceResolver<String> resolver;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    @Inject
+    private Logger logger;
+
+    private final Set<String> availableTables = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> invalidatedWikis = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> scheduledWikis = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The pages of each wiki whose task was modified while the table of the wiki is being filled.
+     */
+    private final Map<String, Set<String>> backfillChanges = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    @Override
+    public void initialize()
+    {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Task Manager task table synchronization");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return {@code true} if the task table is enabled, {@code false} otherwise
+     */
+    public boolean isEnabled()
+    {
+        return xwikiProperties.getProperty(ENABLED_PROPERTY, Boolean.FALSE);
+    }
+
+    /**
+     * Update the row of the task held by a page that was created or modified.
+     *
+     * @param document the page that was saved
+     */
+    public void save(XWikiDocument document)
+    {
+        BaseObject taskObject = document.getXObject(TASK_CLASS_REFERENCE);
+        DocumentReference reference = document.getDocumentReference();
+        String wikiId = reference.getWikiReference().getName();
+        String documentName = localSerializer.serialize(reference);
+        recordBackfillChange(wikiId, documentName);
+        XWikiContext context = contextProvider.get();
+        String currentWiki = context.getWikiId();
+        try {
+            context.setWikiId(wikiId);
+            if (!isTableAvailable(context)) {
+                return;
+            }
+            if (taskObject == null) {
+                execute(context, true, connection -> {
+                    TABLE.delete(connection, documentName);
+                    return null;
+                });
+            } else {
+                TaskTable.Row row = createRow(createTask(reference, taskObject));
+                execute(context, true, connection -> {
+                    TABLE.save(connection, Collections.singletonList(row));
+                    return null;
+                });
+            }
+        } catch (XWikiException e) {
+            logger.warn("Failed to update the task table for the page [{}].", reference, e);
+            handleWriteFailure(wikiId);
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    /**
+     * Remove the row of the task held by a page that was deleted.
+     *
+     * @param reference the page that was deleted
+     */
+    public void delete(DocumentReference reference)
+    {
+        String wikiId = reference.getWikiReference().getName();
+        String documentName = localSerializer.serialize(reference);
+        recordBackfillChange(wikiId, documentName);
+        XWikiContext context = contextProvider.get();
+        String currentWiki = context.getWikiId();
+        try {
+            context.setWikiId(wikiId);
+            if (!isTableAvailable(context)) {
+                return;
+            }
+            execute(context, true, connection -> {
+                TABLE.delete(connection, documentName);
+                return null;
+            });
+        } catch (XWikiException e) {
+            logger.warn("Failed to remove the page [{}] from the task table.", reference, e);
+            handleWriteFailure(wikiId);
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    /**
+     * Record that the table of a wiki missed a change of its tasks, because the table is disabled, so that it's filled
+     * again when it's enabled. The marker of the wiki is removed only once per wiki, until the table is filled again.
+     *
+     * @param wikiId the wiki whose tasks were modified
+     */
+    public void invalidate(String wikiId)
+    {
+        if (invalidatedWikis.add(wikiId) && !removeMarker(wikiId)) {
+            invalidatedWikis.remove(wikiId);
+        }
+    }
+
+    /**
+     * Fill the table of a wiki from the existing task objects, unless it's marked as in sync with them. The task saves
+     * are not blocked meanwhile: the rows of the tasks modified during the fill are written again at the end of it.
+     * Nothing happens if the table is disabled or if it's already being filled.
+     *
+     * @param wikiId the wiki whose table is filled
+     */
+    public void synchronize(String wikiId)
+    {
+        Set<String> changes = ConcurrentHashMap.newKeySet();
+        if (!isEnabled() || backfillChanges.putIfAbsent(wikiId, changes) != null) {
+            return;
+        }
+        XWikiContext context = contextProvider.get();
+        String currentWiki = context.getWikiId();
+        try {
+            context.setWikiId(wikiId);
+            if (!isTableAvailable(context)) {
+                logger.debug("The task table is missing from the wiki [{}], it's created by the database migrations.",
+                    wikiId);
+                return;
+            }
+            boolean synchronizedTable =
+                execute(context, false, connection -> SYNC_MARKER.get(connection) != -1);
+            if (!synchronizedTable) {
+                backfill(context, changes);
+                execute(context, true, connection -> {
+                    SYNC_MARKER.delete(connection);
+                    SYNC_MARKER.create(connection, 1);
+                    return null;
+                });
+            }
+            invalidatedWikis.remove(wikiId);
+        } catch (XWikiException | TaskException e) {
+            logger.warn("Failed to fill the task table of the wiki [{}].", wikiId, e);
+        } finally {
+            backfillChanges.remove(wikiId);
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    /**
+     * @param wikiId the wiki where the task is located
+     * @param number the number of a task
+     * @return the page that holds the task with the given number or {@code null} if the table doesn't have such a
+     *     task or can't be used
+     */
+    public DocumentReference getDocumentByNumber(String wikiId, int number)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        List<DocumentReference> references = getDocuments(new WikiReference(wikiId), number, null);
+        return references == null || references.isEmpty() ? null : references.get(0);
+    }
+
+    /**
+     * @param owner the page that contains some task macros
+     * @return the pages that hold the tasks owned by the given page or {@code null} if the table can't be used
+     */
+    public List<DocumentReference> getDocumentsByOwner(DocumentReference owner)
+    {
+        return getDocuments(owner.getWikiReference(), -1, owner);
+    }
+
+    private List<DocumentReference> getDocuments(WikiReference wikiReference, int number, DocumentReference owner)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+        XWikiContext context = contextProvider.get();
+        String currentWiki = context.getWikiId();
+        try {
+            context.setWikiId(wikiReference.getName());
+            List<String> documentNames = execute(context, false, connection -> {
+                if (SYNC_MARKER.get(connection) == -1) {
+                    return null;
+                }
+                return owner == null ? TABLE.getDocumentsByNumber(connection, number)
+                    : TABLE.getDocumentsByOwner(connection, serializer.serialize(owner));
+            });
+            if (documentNames == null) {
+                // The table is not in sync with the task objects.
+                scheduleSynchronization(wikiReference.getName());
+                return null;
+            }
+            List<DocumentReference> references = new ArrayList<>(documentNames.size());
+            for (String documentName : documentNames) {
+                references.add(resolver.resolve(documentName, wikiReference));
+            }
+            return references;
+        } catch (XWikiException e) {
+            logger.warn("Failed to query the task table of the wiki [{}]. Root cause: [{}].", wikiReference,
+                e.getMessage());
+            return null;
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    private <T> T execute(XWikiContext context, boolean write, ReturningWork<T> work) throws XWikiException
+    {
+        XWikiHibernateStore store = context.getWiki().getHibernateStore();
+        if (write) {
+            return store.executeWrite(context, session -> session.doReturningWork(work));
+        } else {
+            return store.executeRead(context, session -> session.doReturningWork(work));
+        }
+    }
+
+    /**
+     * @return {@code true} if the tables used by the store exist in the database of the current wiki. They are created
+     *     by {@link TaskTablesDataMigration}.
+     */
+    private boolean isTableAvailable(XWikiContext context) throws XWikiException
+    {
+        String wikiId = context.getWikiId();
+        if (!availableTables.contains(wikiId) && execute(context, false,
+            connection -> TABLE.tableExists(connection) && SYNC_MARKER.tableExists(connection)))
+        {
+            availableTables.add(wikiId);
+        }
+        return availableTables.contains(wikiId);
+    }
+
+    /**
+     * The table missed a change, so it must not be used until it's filled again.
+     */
+    private void handleWriteFailure(String wikiId)
+    {
+        if (removeMarker(wikiId)) {
+            scheduleSynchronization(wikiId);
+        }
+    }
+
+    private boolean removeMarker(String wikiId)
+    {
+        XWikiContext context = contextProvider.get();
+        String currentWiki = context.getWikiId();
+        try {
+            context.setWikiId(wikiId);
+            context.getWiki().getHibernateStore().executeWrite(context,
+                session -> session.doReturningWork(connection -> {
+                    SYNC_MARKER.delete(connection);
+                    return null;
+                }));
+            return true;
+        } catch (XWikiException e) {
+            logger.error("Failed to mark the task table of the wiki [{}] as out of sync. It might miss some tasks.",
+                wikiId, e);
+            return false;
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    private void scheduleSynchronization(String wikiId)
+    {
+        if (isEnabled() && scheduledWikis.add(wikiId)) {
+            executor.execute(new TableSynchronization(wikiId));
+        }
+    }
+
+    private void recordBackfillChange(String wikiId, String documentName)
+    {
+        Set<String> changes = backfillChanges.get(wikiId);
+        if (changes != null) {
+            changes.add(documentName);
+        }
+    }
+
+    private void backfill(XWikiContext context, Set<String> changes) throws XWikiException, TaskException
+    {
+        WikiReference wikiReference = new WikiReference(context.getWikiId());
+        logger.info("Filling the task table of the wiki [{}] from the existing tasks.", wikiReference.getName());
+        String lastName = "";
+        int count = 0;
+        // Drop the rows of the tasks that were deleted while the table was out of sync.
+        execute(context, true, connection -> {
+            TABLE.clear(connection);
+            return null;
+        });
+        try {
+            while (true) {
+                List<String> names = queryManager.createQuery(TASK_PAGES_STATEMENT, Query.HQL)
+                    .setWiki(wikiReference.getName())
+                    .bindValue("lastName", lastName)
+                    .setLimit(BACKFILL_BATCH_SIZE)
+                    .execute();
+                if (names.isEmpty()) {
+                    break;
+                }
+                count += writeRows(context, wikiReference, names);
+                lastName = names.get(names.size() - 1);
+            }
+        } catch (QueryException e) {
+            throw new TaskException(String.format("Failed to fill the task table of the wiki [%s].",
+                wikiReference.getName()), e);
+        }
+        // The rows written by the fill can be older than the ones written by the task saves made meanwhile.
+        List<String> changedNames = new ArrayList<>(changes);
+        while (!changedNames.isEmpty()) {
+            changes.removeAll(changedNames);
+            writeRows(context, wikiReference, changedNames);
+            changedNames = new ArrayList<>(changes);
+        }
+        logger.info("Added [{}] tasks to the task table of the wiki [{}].", count, wikiReference.getName());
+    }
+
+    /**
+     * Write the rows of the given pages from their current task objects, and remove the rows of the pages that don't
+     * hold a task anymore.
+     */
+    private int writeRows(XWikiContext context, WikiReference wikiReference, List<String> names)
+        throws XWikiException, TaskException
+    {
+        List<DocumentReference> references = new ArrayList<>(names.size());
+        for (String name : names) {
+            references.add(resolver.resolve(name, wikiReference));
+        }
+        Map<DocumentReference, Task> tasks = taskManagerProvider.get().getTasks(references);
+        List<TaskTable.Row> rows = new ArrayList<>(tasks.size());
+        for (Task task : tasks.values()) {
+            rows.add(createRow(task));
+        }
+        List<String> removedNames = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (!tasks.containsKey(references.get(i))) {
+                removedNames.add(names.get(i));
+            }
+        }
+        execute(context, true, connection -> {
+            TABLE.save(connection, rows);
+            for (String removedName : removedNames) {
+                TABLE.delete(connection, removedName);
+            }
+            return null;
+        });
+        return rows.size();
+    }
+
+    private Task createTask(DocumentReference reference, BaseObject taskObject)
+    {
+        Task task = new Task();
+        task.setReference(reference);
+        task.setNumber(taskObject.getIntValue(Task.NUMBER, -1));
+        task.setOwner(resolver.resolve(taskObject.getLargeStringValue(Task.OWNER), reference));
+        task.setAssignee(resolveUser(taskObject.getLargeStringValue(Task.ASSIGNEE)));
+        task.setReporter(resolveUser(taskObject.getLargeStringValue(Task.REPORTER)));
+        task.setStatus(taskObject.getStringValue(Task.STATUS));
+        task.setDuedate(taskObject.getDateValue(Task.DUE_DATE));
+        task.setCreateDate(taskObject.getDateValue(Task.CREATE_DATE));
+        task.setCompleteDate(taskObject.getDateValue(Task.COMPLETE_DATE));
+        return task;
+    }
+
+    private DocumentReference resolveUser(String user)
+    {
+        return user == null || user.isEmpty() ? null : resolver.resolve(user);
+    }
+
+    private TaskTable.Row createRow(Task task)
+    {
+        return new TaskTable.Row(localSerializer.serialize(task.getReference()), task.getNumber(),
+            serialize(task.getOwner()), serialize(task.getAssignee()), serialize(task.getReporter()),
+            task.getStatus(), task.getCreateDate(), task.getDueDate(), task.getCompleteDate());
+    }
+
+    private String serialize(EntityReference reference)
+    {
+        return reference == null ? null : serializer.serialize(reference);
+    }
+
+    /**
+     * Fills the table of a wiki in the background, with its own execution context.
+     */
+    private final class TableSynchronization extends AbstractXWikiRunnable
+    {
+        private final String wikiId;
+
+        TableSynchronization(String wikiId)
+        {
+            this.wikiId = wikiId;
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            scheduledWikis.remove(wikiId);
+            synchronize(wikiId);
+        }
+    }
+}
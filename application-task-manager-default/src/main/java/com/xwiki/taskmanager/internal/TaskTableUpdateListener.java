@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Listener that reflects the changes of the task pages in the {@link TaskTable}, when it's enabled. When it's disabled,
+ * the table is marked as out of sync instead.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("com.xwiki.taskmanager.internal.TaskTableUpdateListener")
+@Singleton
+public class TaskTableUpdateListener extends AbstractEventListener
+{
+    private static final LocalDocumentReference TASK_CLASS_REFERENCE =
+        new LocalDocumentReference(Arrays.asList("TaskManager", "Code"), "TaskClass");
+
+    @Inject
+    private TaskTableStore taskTableStore;
+
+    /**
+     * Default constructor.
+     */
+    public TaskTableUpdateListener()
+    {
+        super(TaskTableUpdateListener.class.getName(), Arrays.asList(new DocumentCreatedEvent(),
+            new DocumentUpdatedEvent(), new DocumentDeletedEvent()));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument document = (XWikiDocument) source;
+        if (!taskTableStore.isEnabled()) {
+            // The table misses the change, so it has to be filled again when it's enabled.
+            if (document.getXObject(TASK_CLASS_REFERENCE) != null
+                || document.getOriginalDocument().getXObject(TASK_CLASS_REFERENCE) != null)
+            {
+                taskTableStore.invalidate(document.getDocumentReference().getWikiReference().getName());
+            }
+        } else if (event instanceof DocumentDeletedEvent) {
+            if (document.getOriginalDocument().getXObject(TASK_CLASS_REFERENCE) != null) {
+                taskTableStore.delete(document.getDocumentReference());
+            }
+        } else if (document.getXObject(TASK_CLASS_REFERENCE) != null
+            || document.getOriginalDocument().getXObject(TASK_CLASS_REFERENCE) != null)
+        {
+            // The task object could also have been removed from the page.
+            taskTableStore.save(document);
+        }
+    }
+}
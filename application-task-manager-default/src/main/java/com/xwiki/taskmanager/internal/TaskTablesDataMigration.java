@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.migration.DataMigrationException;
+import com.xpn.xwiki.store.migration.XWikiDBVersion;
+import com.xpn.xwiki.store.migration.hibernate.AbstractHibernateDataMigration;
+
+/**
+ * Database migration that creates the tables of the Task Manager: the {@link TaskNumberSequence#TABLE_NAME} table,
+ * used by the {@link DatabaseTaskNumberAllocator} and by the {@link TaskTableStore}, and the {@link TaskTable}. The
+ * databases created after the migration are not migrated, so their tables are created by {@link TaskTablesListener}
+ * when their wiki is ready.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("R121000900TaskManager")
+@Singleton
+public class TaskTablesDataMigration extends AbstractHibernateDataMigration
+{
+    private static final TaskTable TASK_TABLE = new TaskTable();
+
+    private static final TaskNumberSequence SEQUENCE = new TaskNumberSequence("taskmanager.task.number");
+
+    @Override
+    public String getDescription()
+    {
+        return "Create the tables of the Task Manager.";
+    }
+
+    @Override
+    public XWikiDBVersion getVersion()
+    {
+        return new XWikiDBVersion(121000900);
+    }
+
+    @Override
+    protected void hibernateMigrate() throws DataMigrationException, XWikiException
+    {
+        createTables(getXWikiContext());
+    }
+
+    /**
+     * Create the tables of the Task Manager in the database of the current wiki, if they're missing.
+     *
+     * @param context the context of the current wiki
+     * @throws XWikiException if the tables could not be created
+     */
+    static void createTables(XWikiContext context) throws XWikiException
+    {
+        context.getWiki().getHibernateStore().executeWrite(context,
+            session -> session.doReturningWork(connection -> {
+                SEQUENCE.createTable(connection);
+                TASK_TABLE.createTable(connection);
+                return null;
+            }));
+    }
+}
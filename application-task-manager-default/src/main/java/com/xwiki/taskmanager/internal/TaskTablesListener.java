@@ -0,0 +1,81 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+
+import java.util.Collections;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.bridge.event.WikiReadyEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+
+/**
+ * Listener that creates the tables of the Task Manager in the database of a wiki when the wiki is ready, if they're
+ * missing. It covers the databases that are created after the {@link TaskTablesDataMigration}, since the migrations
+ * are not applied to them.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("com.xwiki.taskmanager.internal.TaskTablesListener")
+@Singleton
+public class TaskTablesListener extends AbstractEventListener
+{
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Default constructor.
+     */
+    public TaskTablesListener()
+    {
+        super(TaskTablesListener.class.getName(), Collections.singletonList(new WikiReadyEvent()));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        String wikiId = ((WikiReadyEvent) event).getWikiId();
+        XWikiContext context = contextProvider.get();
+        String currentWikiId = context.getWikiId();
+        try {
+            context.setWikiId(wikiId);
+            TaskTablesDataMigration.createTables(context);
+        } catch (XWikiException e) {
+            logger.error("Failed to create the tables of the Task Manager in the wiki [{}].", wikiId, e);
+        } finally {
+            context.setWikiId(currentWikiId);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+
+/**
+ * Bounded queue of task page updates that are applied by a background worker, so that saving a page with many task
+ * macros doesn't wait for the task pages to be saved. The updates are keyed by the reference of the task page: an
+ * update of a task that is still waiting in the queue replaces the previous one. When the queue is full, the updates
+ * are applied right away by the calling thread. The updates of the tasks of an owner page are discarded when the page
+ * is saved again or deleted, since its new content supersedes them. The worker is restarted by the next update if it
+ * stopped unexpectedly. The state of the queue is published as a JMX bean.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component(roles = TaskUpdateQueue.class)
+@Singleton
+public class TaskUpdateQueue implements TaskUpdateQueueMBean, Initializable, Disposable
+{
+    private static final String CAPACITY_PROPERTY = "taskmanager.asyncUpdateQueueCapacity";
+
+    private static final int DEFAULT_CAPACITY = 10000;
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final String MBEAN_NAME = "com.xwiki.taskmanager:type=TaskUpdateQueue";
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Inject
+    private Logger logger;
+
+    private final Map<DocumentReference, TaskUpdate> pendingUpdates = new LinkedHashMap<>();
+
+    private final List<TaskUpdate> currentBatch = new ArrayList<>();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong overflows = new AtomicLong();
+
+    private final AtomicLong workerRestarts = new AtomicLong();
+
+    private int capacity;
+
+    private Thread worker;
+
+    private volatile boolean disposed;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        capacity = xwikiProperties.getProperty(CAPACITY_PROPERTY, DEFAULT_CAPACITY);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MBEAN_NAME));
+        } catch (JMException e) {
+            logger.warn("Failed to register the task update queue statistics as a JMX bean.", e);
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        disposed = true;
+        Thread currentWorker;
+        synchronized (pendingUpdates) {
+            currentWorker = worker;
+            pendingUpdates.notifyAll();
+        }
+        if (currentWorker != null) {
+            try {
+                currentWorker.join(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MBEAN_NAME));
+        } catch (JMException e) {
+            logger.debug("Failed to unregister the task update queue JMX bean.", e);
+        }
+    }
+
+    /**
+     * Schedule the update of a task page. The update is executed in a context that targets the current wiki, on
+     * behalf of the current user, and that prevents the task macros from being updated back.
+     *
+     * @param taskReference the reference of the task page to update.
+     * @param ownerReference the reference of the page that contains the macro of the task.
+     * @param update the update to apply.
+     */
+    public void enqueue(DocumentReference taskReference, DocumentReference ownerReference,
+        Consumer<XWikiContext> update)
+    {
+        XWikiContext context = contextProvider.get();
+        TaskUpdate taskUpdate = new TaskUpdate(taskReference, ownerReference, context.getWikiId(),
+            context.getUserReference(), update);
+        synchronized (pendingUpdates) {
+            TaskUpdate previousUpdate = pendingUpdates.get(taskReference);
+            if (previousUpdate != null) {
+                // Only the latest version of the task matters. The update keeps its place in the queue.
+                taskUpdate.enqueueTime = previousUpdate.enqueueTime;
+                pendingUpdates.put(taskReference, taskUpdate);
+                coalesced.incrementAndGet();
+                startWorker();
+                return;
+            }
+            if (pendingUpdates.size() < capacity && !disposed) {
+                pendingUpdates.put(taskReference, taskUpdate);
+                startWorker();
+                pendingUpdates.notifyAll();
+                return;
+            }
+        }
+        overflows.incrementAndGet();
+        logger.debug("The task update queue is full. Updating the task page [{}] synchronously.", taskReference);
+        update.accept(context);
+    }
+
+    /**
+     * Discard the updates of the tasks of an owner page that were not applied yet. The updates that the worker is
+     * applying when this method is called are skipped if they didn't start.
+     *
+     * @param ownerReference the reference of the page that contains the task macros.
+     */
+    public void discard(DocumentReference ownerReference)
+    {
+        synchronized (pendingUpdates) {
+            Iterator<TaskUpdate> iterator = pendingUpdates.values().iterator();
+            while (iterator.hasNext()) {
+                if (ownerReference.equals(iterator.next().ownerReference)) {
+                    iterator.remove();
+                }
+            }
+            for (TaskUpdate taskUpdate : currentBatch) {
+                if (ownerReference.equals(taskUpdate.ownerReference)) {
+                    taskUpdate.discarded = true;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        synchronized (pendingUpdates) {
+            return pendingUpdates.size();
+        }
+    }
+
+    @Override
+    public long getLag()
+    {
+        synchronized (pendingUpdates) {
+            if (pendingUpdates.isEmpty()) {
+                return 0;
+            }
+            return System.currentTimeMillis() - pendingUpdates.values().iterator().next().enqueueTime;
+        }
+    }
+
+    @Override
+    public long getProcessedCount()
+    {
+        return processed.get();
+    }
+
+    @Override
+    public long getCoalescedCount()
+    {
+        return coalesced.get();
+    }
+
+    @Override
+    public long getOverflowCount()
+    {
+        return overflows.get();
+    }
+
+    @Override
+    public boolean isWorkerFailed()
+    {
+        synchronized (pendingUpdates) {
+            return !disposed && worker != null && !worker.isAlive();
+        }
+    }
+
+    @Override
+    public long getWorkerRestartCount()
+    {
+        return workerRestarts.get();
+    }
+
+    private void startWorker()
+    {
+        if (worker != null && !worker.isAlive()) {
+            // The worker stopped because of an error that the updates don't catch.
+            workerRestarts.incrementAndGet();
+            logger.warn("Restarting the task update worker, which stopped unexpectedly.");
+        }
+        if (worker == null || !worker.isAlive()) {
+            worker = new Thread(new AbstractXWikiRunnable()
+            {
+                @Override
+                protected void runInternal()
+                {
+                    processUpdates();
+                }
+            }, "Task Manager update worker");
+            worker.setDaemon(true);
+            worker.setUncaughtExceptionHandler(
+                (thread, e) -> logger.error("The task update worker stopped unexpectedly.", e));
+            worker.start();
+        }
+    }
+
+    private void processUpdates()
+    {
+        while (true) {
+            List<TaskUpdate> batch;
+            try {
+                batch = takeBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch.isEmpty()) {
+                // The queue was disposed and all the waiting updates were applied.
+                return;
+            }
+            XWikiContext context = contextProvider.get();
+            for (TaskUpdate taskUpdate : batch) {
+                if (taskUpdate.discarded) {
+                    continue;
+                }
+                context.setWikiId(taskUpdate.wikiId);
+                context.setUserReference(taskUpdate.userReference);
+                context.put(AbstractTaskEventListener.TASK_UPDATE_FLAG, true);
+                try {
+                    taskUpdate.update.accept(context);
+                } catch (Exception e) {
+                    logger.error("Failed to update the task page [{}].", taskUpdate.taskReference, e);
+                } finally {
+                    context.put(AbstractTaskEventListener.TASK_UPDATE_FLAG, null);
+                    processed.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private List<TaskUpdate> takeBatch() throws InterruptedException
+    {
+        synchronized (pendingUpdates) {
+            currentBatch.clear();
+            while (pendingUpdates.isEmpty()) {
+                if (disposed) {
+                    return Collections.emptyList();
+                }
+                pendingUpdates.wait();
+            }
+            List<TaskUpdate> batch = new ArrayList<>(Math.min(BATCH_SIZE, pendingUpdates.size()));
+            Iterator<TaskUpdate> iterator = pendingUpdates.values().iterator();
+            while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+            currentBatch.addAll(batch);
+            return batch;
+        }
+    }
+
+    /**
+     * An update of a task page, along with the context in which it was requested.
+     */
+    private static final class TaskUpdate
+    {
+        private final DocumentReference taskReference;
+
+        private final DocumentReference ownerReference;
+
+        private final String wikiId;
+
+        private final DocumentReference userReference;
+
+        private final Consumer<XWikiContext> update;
+
+        private long enqueueTime = System.currentTimeMillis();
+
+        private volatile boolean discarded;
+
+        TaskUpdate(DocumentReference taskReference, DocumentReference ownerReference, String wikiId,
+            DocumentReference userReference, Consumer<XWikiContext> update)
+        {
+            this.taskReference = taskReference;
+            this.ownerReference = ownerReference;
+            this.wikiId = wikiId;
+            this.userReference = userReference;
+            this.update = update;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+/**
+ * JMX view over the state of the {@link TaskUpdateQueue}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public interface TaskUpdateQueueMBean
+{
+    /**
+     * @return the maximum number of task updates that can wait in the queue.
+     */
+    int getCapacity();
+
+    /**
+     * @return the number of task updates waiting to be processed.
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the number of milliseconds since the oldest waiting task update was enqueued or 0 if the queue is
+     *     empty.
+     */
+    long getLag();
+
+    /**
+     * @return the number of task updates processed by the background worker.
+     */
+    long getProcessedCount();
+
+    /**
+     * @return the number of task updates that replaced a waiting update of the same task.
+     */
+    long getCoalescedCount();
+
+    /**
+     * @return the number of task updates that were processed synchronously because the queue was full.
+     */
+    long getOverflowCount();
+
+    /**
+     * @return {@code true} if the background worker stopped unexpectedly and was not restarted yet. It's restarted by
+     *     the next task update.
+     */
+    boolean isWorkerFailed();
+
+    /**
+     * @return the number of times the background worker was restarted after stopping unexpectedly.
+     */
+    long getWorkerRestartCount();
+}
@@ -0,0 +1,163 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.InstantiationStrategy;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.job.AbstractJob;
+import org.xwiki.job.DefaultJobStatus;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+import org.xwiki.wiki.manager.WikiManagerException;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xwiki.taskmanager.TaskReferenceGenerator;
+
+/**
+ * Background job that loads, for each wiki, the in-memory state of the Task Manager that is otherwise built by the
+ * first task displays and creations after a restart: the {@link TaskNumberIndex} and the next task page index of each
+ * space known by the {@link DefaultTaskReferenceGenerator}. It also runs the {@link TaskOwnerMigration} and fills the
+ * {@link TaskTable} of the wikis where it's not in sync with the task objects, through
+ * {@link TaskTableStore#synchronize(String)}. The task pages of a wiki are retrieved with a single query whose results
+ * are streamed. The job is started by {@link TaskWarmUpListener}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named(TaskWarmUpJob.JOB_TYPE)
+@InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
+public class TaskWarmUpJob extends AbstractJob<DefaultRequest, DefaultJobStatus<DefaultRequest>>
+{
+    /**
+     * The type of the job.
+     */
+    public static final String JOB_TYPE = "taskmanager.warmUp";
+
+    private static final String TASK_PAGES_STATEMENT = "select doc.fullName, numberProp.value "
+        + "from XWikiDocument as doc, BaseObject as taskObj, IntegerProperty as numberProp "
+        + "where taskObj.name = doc.fullName and taskObj.className = 'TaskManager.Code.TaskClass' "
+        + "and numberProp.id.id = taskObj.id and numberProp.id.name = 'number'";
+
+    private static final int FETCH_SIZE = 1000;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private DocumentReferenceResolver<String> resolver;
+
+    @Inject
+    private TaskNumberIndex taskNumberIndex;
+
+    @Inject
+    private TaskReferenceGenerator taskReferenceGenerator;
+
+    @Inject
+    private TaskOwnerMigration ownerMigration;
+
+    @Inject
+    private TaskTableStore taskTableStore;
+
+    @Override
+    public String getType()
+    {
+        return JOB_TYPE;
+    }
+
+    @Override
+    protected void runInternal() throws WikiManagerException
+    {
+        List<String> wikiIds = wikiDescriptorManager.getAllIds();
+        progressManager.pushLevelProgress(wikiIds.size(), this);
+        try {
+            for (String wikiId : wikiIds) {
+                progressManager.startStep(this);
+                try {
+                    warmUp(wikiId);
+                } catch (XWikiException e) {
+                    logger.warn("Failed to load the tasks of the wiki [{}].", wikiId, e);
+                }
+                ownerMigration.migrate(wikiId);
+                taskTableStore.synchronize(wikiId);
+                progressManager.endStep(this);
+            }
+        } finally {
+            progressManager.popLevelProgress(this);
+        }
+    }
+
+    private void warmUp(String wikiId) throws XWikiException
+    {
+        WikiReference wikiReference = new WikiReference(wikiId);
+        Map<Integer, DocumentReference> taskReferences = new HashMap<>();
+        Map<SpaceReference, Integer> nextIndexes = new HashMap<>();
+
+        XWikiContext context = contextProvider.get();
+        String currentWikiId = context.getWikiId();
+        try {
+            context.setWikiId(wikiId);
+            context.getWiki().getHibernateStore().executeRead(context, session -> {
+                try (ScrollableResults results = session.createQuery(TASK_PAGES_STATEMENT).setReadOnly(true)
+                    .setFetchSize(FETCH_SIZE).scroll(ScrollMode.FORWARD_ONLY))
+                {
+                    while (results.next()) {
+                        DocumentReference taskReference = resolver.resolve((String) results.get(0), wikiReference);
+                        Integer number = (Integer) results.get(1);
+                        if (number != null) {
+                            taskReferences.put(number, taskReference);
+                        }
+                        int index = DefaultTaskReferenceGenerator.getTaskPageIndex(taskReference.getName());
+                        nextIndexes.merge(taskReference.getLastSpaceReference(), index + 1, Math::max);
+                    }
+                }
+                return null;
+            });
+        } finally {
+            context.setWikiId(currentWikiId);
+        }
+
+        taskNumberIndex.preload(wikiId, taskReferences);
+        if (taskReferenceGenerator instanceof DefaultTaskReferenceGenerator) {
+            nextIndexes.forEach(((DefaultTaskReferenceGenerator) taskReferenceGenerator)::seed);
+        }
+        logger.info("Loaded [{}] tasks from [{}] spaces of the wiki [{}].", taskReferences.size(), nextIndexes.size(),
+            wikiId);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.job.DefaultRequest;
+import org.xwiki.job.JobException;
+import org.xwiki.job.JobExecutor;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Listener that starts the {@link TaskWarmUpJob} once the application is ready, unless the
+ * {@code taskmanager.warmUp.enabled} property of xwiki.properties is set to {@code false}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("com.xwiki.taskmanager.internal.TaskWarmUpListener")
+@Singleton
+public class TaskWarmUpListener extends AbstractEventListener
+{
+    private static final String ENABLED_PROPERTY = "taskmanager.warmUp.enabled";
+
+    @Inject
+    private JobExecutor jobExecutor;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Default constructor.
+     */
+    public TaskWarmUpListener()
+    {
+        super(TaskWarmUpListener.class.getName(), Collections.singletonList(new ApplicationReadyEvent()));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (!xwikiProperties.getProperty(ENABLED_PROPERTY, true)) {
+            return;
+        }
+        DefaultRequest request = new DefaultRequest();
+        request.setId(Arrays.asList("taskmanager", "warmUp"));
+        try {
+            jobExecutor.execute(TaskWarmUpJob.JOB_TYPE, request);
+        } catch (JobException e) {
+            logger.warn("Failed to start the loading of the tasks.", e);
+        }
+    }
+}
@@ -20,8 +20,8 @@
 package com.xwiki.taskmanager.internal;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +31,7 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.reference.DocumentReference;
@@ -39,6 +40,7 @@ import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.MacroBlock;
 import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
 import org.xwiki.rendering.block.match.MacroBlockMatcher;
 import org.xwiki.rendering.listener.MetaData;
 import org.xwiki.rendering.syntax.Syntax;
@@ -48,7 +50,6 @@ import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xwiki.taskmanager.TaskException;
-import com.xwiki.taskmanager.TaskManagerConfiguration;
 import com.xwiki.taskmanager.TaskReferenceGenerator;
 import com.xwiki.taskmanager.model.Task;
 
@@ -74,7 +75,7 @@ public class TaskXDOMProcessor
     private EntityReferenceSerializer<String> serializer;
 
     @Inject
-    private TaskManagerConfiguration configuration;
+    private TaskDateCodec dateCodec;
 
     @Inject
     private Logger logger;
@@ -85,6 +86,12 @@ public class TaskXDOMProcessor
     @Inject
     private TaskBlockProcessor taskBlockProcessor;
 
+    @Inject
+    private TaskMetricsRegistry metrics;
+
+    @Inject
+    private TaskSaveTracer saveTracer;
+
     /**
      * Extracts the existing Tasks from a given XDOM.
      *
@@ -94,9 +101,19 @@ public class TaskXDOMProcessor
      *     one that has an id.
      */
     public List<Task> extract(XDOM content, DocumentReference contentSource)
+    {
+        return metrics.time("xdomProcessor.extract", () -> extractTasks(content, contentSource));
+    }
+
+    private List<Task> extractTasks(XDOM content, DocumentReference contentSource)
     {
         List<MacroBlock> macros = content.getBlocks(new MacroBlockMatcher(Task.MACRO_NAME), Block.Axes.DESCENDANT);
         List<Task> tasks = new ArrayList<>();
+        if (macros.isEmpty()) {
+            return tasks;
+        }
+        Syntax syntax = (Syntax) content.getMetaData().getMetaData().getOrDefault(MetaData.SYNTAX, Syntax.XWIKI_2_1);
+        FastDateFormat storageFormat = dateCodec.getStorageFormat();
 
         for (MacroBlock macro : macros) {
             Map<String, String> macroParams = macro.getParameters();
@@ -118,21 +135,13 @@ public class TaskXDOMProcessor
                 taskReference = resolver.resolve(macroId, contentSource);
             }
 
-            extractBasicProperties(macroParams, taskReference, task);
-
-            Syntax syntax =
-                (Syntax) content.getMetaData().getMetaData().getOrDefault(MetaData.SYNTAX, Syntax.XWIKI_2_1);
+            extractBasicProperties(macroParams, taskReference, task, storageFormat);
 
             try {
-
                 XDOM macroContent = taskBlockProcessor.getTaskContentXDOM(macro, syntax);
                 task.setName(
                     taskBlockProcessor.renderTaskContent(macroContent.getChildren(), Syntax.PLAIN_1_0));
-                task.setAssignee(extractAssignedUser(macroContent));
-
-                Date deadline = extractDeadlineDate(macroContent);
-
-                task.setDuedate(deadline);
+                extractContentProperties(macroContent, task, storageFormat);
             } catch (TaskException e) {
                 logger.warn(e.getMessage());
                 continue;
@@ -153,48 +162,88 @@ public class TaskXDOMProcessor
     public void updateTaskMacroCall(DocumentReference documentReference, BaseObject taskObject, XWikiContext context)
         throws XWikiException
     {
-        XWikiDocument ownerDocument = context.getWiki().getDocument(documentReference, context).clone();
-        if (ownerDocument.isNew()) {
-            return;
+        updateTaskMacroCalls(documentReference, Collections.singletonMap(taskObject.getDocumentReference(),
+            taskObject), context);
+    }
+
+    /**
+     * Parse the content of a document once and sync the task macros of several task objects, saving the document a
+     * single time.
+     *
+     * @param documentReference the reference to the document that contains the task macros that need updating.
+     * @param taskObjects the task objects that will be used to update the task macros, mapped by the reference of
+     *     the page that holds them.
+     * @param context the current context.
+     */
+    public void updateTaskMacroCalls(DocumentReference documentReference,
+        Map<DocumentReference, BaseObject> taskObjects, XWikiContext context) throws XWikiException
+    {
+        try (TaskSaveSpan span = saveTracer.start("ownerRewrite", documentReference)) {
+            XWikiDocument ownerDocument = context.getWiki().getDocument(documentReference, context).clone();
+            if (ownerDocument.isNew() || taskObjects.isEmpty()) {
+                return;
+            }
+            XDOM content = ownerDocument.getXDOM();
+            updateTaskMacroCalls(content, documentReference, taskObjects);
+            ownerDocument.setContent(content);
+            String comment = taskObjects.size() == 1
+                ? String.format("Task [%s] has been updated!", taskObjects.keySet().iterator().next())
+                : String.format("[%d] tasks have been updated!", taskObjects.size());
+            context.getWiki().saveDocument(ownerDocument, comment, context);
         }
-        DocumentReference taskDocRef = taskObject.getDocumentReference();
-        XDOM content = ownerDocument.getXDOM();
+    }
+
+    /**
+     * Sync the task macros of a content with the given task objects.
+     *
+     * @param content the XDOM that contains the task macros to update. It is modified in place.
+     * @param contentSource the reference of the document that holds the content.
+     * @param taskObjects the task objects that will be used to update the task macros, mapped by the reference of
+     *     the page that holds them.
+     */
+    public void updateTaskMacroCalls(XDOM content, DocumentReference contentSource,
+        Map<DocumentReference, BaseObject> taskObjects)
+    {
+        metrics.time("xdomProcessor.updateTaskMacroCalls",
+            () -> updateTaskMacros(content, contentSource, taskObjects));
+    }
+
+    private void updateTaskMacros(XDOM content, DocumentReference contentSource,
+        Map<DocumentReference, BaseObject> taskObjects)
+    {
         List<MacroBlock> macros = content.getBlocks(new MacroBlockMatcher(Task.MACRO_NAME), Block.Axes.DESCENDANT);
-        SimpleDateFormat storageFormat = new SimpleDateFormat(configuration.getStorageDateFormat());
+        FastDateFormat storageFormat = dateCodec.getStorageFormat();
+        Syntax syntax = (Syntax) content.getMetaData().getMetaData().getOrDefault(MetaData.SYNTAX, Syntax.XWIKI_2_1);
         for (MacroBlock macro : macros) {
             DocumentReference taskRef =
-                resolver.resolve(macro.getParameters().getOrDefault(Task.REFERENCE, ""), ownerDocument);
-            if (taskRef.equals(taskDocRef)) {
+                resolver.resolve(macro.getParameters().getOrDefault(Task.REFERENCE, ""), contentSource);
+            BaseObject taskObject = taskObjects.get(taskRef);
+            if (taskObject == null) {
+                continue;
+            }
 
-                setBasicMacroParameters(taskObject, storageFormat, macro);
+            setBasicMacroParameters(taskObject, storageFormat, macro);
 
-                try {
-                    List<Block> siblings = macro.getParent().getChildren();
-                    int macroIndex = siblings.indexOf(macro);
-                    siblings.remove(macroIndex);
-                    Syntax syntax =
-                        (Syntax) content.getMetaData().getMetaData().getOrDefault(MetaData.SYNTAX, Syntax.XWIKI_2_1);
-
-                    List<Block> newTaskContentBlocks = taskBlockProcessor.generateTaskContentBlocks(
-                        taskObject.getLargeStringValue(Task.ASSIGNEE),
-                        taskObject.getDateValue(Task.DUE_DATE),
-                        taskObject.getStringValue(Task.NAME), storageFormat
-                    );
-
-                    String newContent = taskBlockProcessor.renderTaskContent(newTaskContentBlocks, syntax);
-
-                    MacroBlock newMacroBlock =
-                        new MacroBlock(macro.getId(), macro.getParameters(), newContent, macro.isInline());
-                    siblings.add(macroIndex, newMacroBlock);
-                } catch (TaskException e) {
-                    logger.warn(e.getMessage());
-                }
-                break;
+            try {
+                List<Block> siblings = macro.getParent().getChildren();
+                int macroIndex = siblings.indexOf(macro);
+                siblings.remove(macroIndex);
+
+                List<Block> newTaskContentBlocks = taskBlockProcessor.generateTaskContentBlocks(
+                    taskObject.getLargeStringValue(Task.ASSIGNEE),
+                    taskObject.getDateValue(Task.DUE_DATE),
+                    taskObject.getStringValue(Task.NAME), storageFormat
+                );
+
+                String newContent = taskBlockProcessor.renderTaskContent(newTaskContentBlocks, syntax);
+
+                MacroBlock newMacroBlock =
+                    new MacroBlock(macro.getId(), macro.getParameters(), newContent, macro.isInline());
+                siblings.add(macroIndex, newMacroBlock);
+            } catch (TaskException e) {
+                logger.warn(e.getMessage());
             }
         }
-        ownerDocument.setContent(content);
-        context.getWiki()
-            .saveDocument(ownerDocument, String.format("Task [%s] has been updated!", taskDocRef), context);
     }
 
     /**
@@ -207,7 +256,8 @@ public class TaskXDOMProcessor
     public void removeTaskMacroCall(DocumentReference taskReference, DocumentReference location,
         XWikiContext context)
     {
-        try {
+        long startTime = System.nanoTime();
+        try (TaskSaveSpan span = saveTracer.start("ownerRewrite", location)) {
             XWikiDocument hostDocument = context.getWiki().getDocument(location, context);
             XDOM docContent = hostDocument.getXDOM();
             List<MacroBlock> macros =
@@ -225,10 +275,12 @@ public class TaskXDOMProcessor
             }
         } catch (XWikiException e) {
             logger.warn("Failed to remove the possible macro calls from the document [{}]", location);
+        } finally {
+            metrics.recordDuration("xdomProcessor.removeTaskMacroCall", startTime);
         }
     }
 
-    private void setBasicMacroParameters(BaseObject taskObject, SimpleDateFormat storageFormat, MacroBlock macro)
+    private void setBasicMacroParameters(BaseObject taskObject, FastDateFormat storageFormat, MacroBlock macro)
     {
         Date completeDate = taskObject.getDateValue(Task.COMPLETE_DATE);
         if (completeDate != null) {
@@ -240,7 +292,8 @@ public class TaskXDOMProcessor
         macro.setParameter(Task.REPORTER, taskObject.getStringValue(Task.REPORTER));
     }
 
-    private void extractBasicProperties(Map<String, String> macroParams, DocumentReference macroId, Task task)
+    private void extractBasicProperties(Map<String, String> macroParams, DocumentReference macroId, Task task,
+        FastDateFormat dateFormat)
     {
         task.setReference(macroId);
 
@@ -251,14 +304,12 @@ public class TaskXDOMProcessor
         String strCreateDate = macroParams.getOrDefault(Task.CREATE_DATE, "");
         String strCompletedDate = macroParams.getOrDefault(Task.COMPLETE_DATE, "");
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat(configuration.getStorageDateFormat());
-
         Date createDate;
         try {
             createDate = dateFormat.parse(strCreateDate);
         } catch (ParseException e) {
             logger.warn("Failed to parse the createDate macro parameter [{}]. Expected format is [{}]",
-                strCreateDate, configuration.getStorageDateFormat());
+                strCreateDate, dateFormat.getPattern());
             createDate = new Date();
         }
         task.setCreateDate(createDate);
@@ -269,41 +320,52 @@ public class TaskXDOMProcessor
                 completedDate = dateFormat.parse(strCompletedDate);
             } catch (ParseException e) {
                 logger.warn("Failed to parse the completeDate macro parameter [{}]. Expected format is [{}]",
-                    strCreateDate, configuration.getStorageDateFormat());
+                    strCreateDate, dateFormat.getPattern());
                 completedDate = new Date();
             }
             task.setCompleteDate(completedDate);
         }
     }
 
-    private DocumentReference extractAssignedUser(XDOM taskContent)
+    /**
+     * Retrieve the assignee and the deadline of a task by walking its content only once.
+     */
+    private void extractContentProperties(XDOM taskContent, Task task, FastDateFormat storageFormat)
     {
-        MacroBlock macro =
-            taskContent.getFirstBlock(new MacroBlockMatcher(MENTION_MACRO_ID), Block.Axes.DESCENDANT);
+        MacroBlock mentionMacro = null;
+        MacroBlock dateMacro = null;
+        for (Block block : taskContent.getBlocks(new ClassBlockMatcher(MacroBlock.class), Block.Axes.DESCENDANT)) {
+            MacroBlock macro = (MacroBlock) block;
+            if (mentionMacro == null && MENTION_MACRO_ID.equals(macro.getId())) {
+                mentionMacro = macro;
+            } else if (dateMacro == null && DATE_MACRO_ID.equals(macro.getId())) {
+                dateMacro = macro;
+            }
+            if (mentionMacro != null && dateMacro != null) {
+                break;
+            }
+        }
 
-        if (macro == null) {
-            return null;
+        if (mentionMacro != null) {
+            task.setAssignee(resolver.resolve(mentionMacro.getParameters().get(Task.REFERENCE)));
         }
-        return resolver.resolve(macro.getParameters().get(Task.REFERENCE));
+        task.setDuedate(extractDeadlineDate(dateMacro, storageFormat));
     }
 
-    private Date extractDeadlineDate(XDOM taskContent)
+    private Date extractDeadlineDate(MacroBlock macro, FastDateFormat storageFormat)
     {
         Date deadline = new Date();
 
-        MacroBlock macro =
-            taskContent.getFirstBlock(new MacroBlockMatcher(DATE_MACRO_ID), Block.Axes.DESCENDANT);
-
         if (macro == null) {
             return deadline;
         }
 
         String dateValue = macro.getParameters().get("value");
         try {
-            deadline = new SimpleDateFormat(configuration.getStorageDateFormat()).parse(dateValue);
+            deadline = storageFormat.parse(dateValue);
         } catch (ParseException e) {
             logger.warn("Failed to parse the deadline date [{}] of the Task macro! Expected format is [{}]",
-                dateValue, configuration.getStorageDateFormat());
+                dateValue, storageFormat.getPattern());
         }
         return deadline;
     }
@@ -21,7 +21,6 @@ package com.xwiki.taskmanager.internal.macro;
  */
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -40,7 +39,7 @@ import org.xwiki.rendering.macro.MacroExecutionException;
 import org.xwiki.rendering.transformation.MacroTransformationContext;
 import org.xwiki.skinx.SkinExtension;
 
-import com.xwiki.taskmanager.TaskManagerConfiguration;
+import com.xwiki.taskmanager.internal.TaskDateCodec;
 import com.xwiki.taskmanager.macro.DateMacroParameters;
 
 /**
@@ -65,7 +64,7 @@ public class DateMacro extends AbstractMacro<DateMacroParameters>
     public static final String SKIN_RESOURCES_DOCUMENT_REFERENCE = "TaskManager.Code.SkinExtensions";
 
     @Inject
-    private TaskManagerConfiguration configuration;
+    private TaskDateCodec dateCodec;
 
     @Inject
     @Named("ssx")
@@ -93,12 +92,12 @@ public class DateMacro extends AbstractMacro<DateMacroParameters>
 
         Date paramDate = null;
         try {
-            paramDate = new SimpleDateFormat(configuration.getStorageDateFormat()).parse(parameters.getValue());
+            paramDate = dateCodec.parseStorageDate(parameters.getValue());
         } catch (ParseException e) {
             throw new MacroExecutionException("Failed to parse the given date!");
         }
 
-        String displayDate = new SimpleDateFormat(configuration.getDisplayDateFormat()).format(paramDate);
+        String displayDate = dateCodec.formatDisplayDate(paramDate);
 
         Block returnBlock = new FormatBlock(Collections.singletonList(new WordBlock(displayDate)), Format.NONE);
         returnBlock.setParameters(Collections.singletonMap("class", "xwiki-date"));
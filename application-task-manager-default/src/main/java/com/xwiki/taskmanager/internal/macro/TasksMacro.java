@@ -19,12 +19,12 @@
  */
 package com.xwiki.taskmanager.internal.macro;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -32,7 +32,6 @@ import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.localization.ContextualLocalizationManager;
-import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.MacroBlock;
 import org.xwiki.rendering.macro.AbstractMacro;
@@ -43,7 +42,6 @@ import org.xwiki.security.authorization.Right;
 
 import com.xwiki.taskmanager.TaskException;
 import com.xwiki.taskmanager.TaskManager;
-import com.xwiki.taskmanager.TaskManagerConfiguration;
 import com.xwiki.taskmanager.internal.TaskBlockProcessor;
 import com.xwiki.taskmanager.macro.TasksMacroParameters;
 import com.xwiki.taskmanager.model.Task;
@@ -59,19 +57,14 @@ import com.xwiki.taskmanager.model.Task;
 @Singleton
 public class TasksMacro extends AbstractMacro<TasksMacroParameters>
 {
+    private static final String ERROR_MACRO = "error";
+
     @Inject
     private TaskBlockProcessor blockProcessor;
 
     @Inject
     private TaskManager taskManager;
 
-    @Inject
-    private TaskManagerConfiguration configuration;
-
-    @Inject
-    @Named("compactwiki")
-    private EntityReferenceSerializer<String> serializer;
-
     @Inject
     private ContextualAuthorizationManager authorizationManager;
 
@@ -96,42 +89,47 @@ public class TasksMacro extends AbstractMacro<TasksMacroParameters>
     public List<Block> execute(TasksMacroParameters parameters, String content, MacroTransformationContext context)
         throws MacroExecutionException
     {
-        String ids = parameters.getIds();
+        String[] ids = parameters.getIds().split("\\s*,\\s*");
 
         List<Block> blocks = new ArrayList<>();
 
-        SimpleDateFormat storageFormat = new SimpleDateFormat(configuration.getStorageDateFormat());
-        for (String id : ids.split("\\s*,\\s*")) {
+        Map<Integer, Task> tasks;
+        try {
+            tasks = taskManager.getTasksByNumber(getNumbers(ids));
+        } catch (TaskException e) {
+            return Collections.singletonList(new MacroBlock(ERROR_MACRO, Collections.emptyMap(), e.getMessage(),
+                false));
+        }
+
+        for (String id : ids) {
             try {
-                Task task = taskManager.getTask(Integer.parseInt(id));
+                Task task = tasks.get(Integer.parseInt(id));
+                if (task == null) {
+                    throw new TaskException(String.format("There is no task with the id [%s].", id));
+                }
                 if (!authorizationManager.hasAccess(Right.VIEW, task.getReference())) {
                     throw new TaskException(
                         localizationManager.getTranslationPlain("taskmanager.macro.tasks.noRights", id));
                 }
-                Map<String, String> taskParams = new HashMap<>();
-                taskParams.put(Task.REFERENCE, serializer.serialize(task.getReference()));
-                taskParams.put(Task.STATUS, task.getStatus());
-                taskParams.put(Task.REPORTER, serializer.serialize(task.getReporter()));
-                taskParams.put(Task.CREATE_DATE,
-                    task.getCreateDate() != null ? storageFormat.format(task.getCreateDate()) : "");
-                taskParams.put(Task.COMPLETE_DATE,
-                    task.getCompleteDate() != null ? storageFormat.format(task.getCompleteDate()) : "");
-
-                String taskContent = blockProcessor.renderTaskContent(
-                    blockProcessor.generateTaskContentBlocks(
-                        task.getAssignee() != null ? serializer.serialize(task.getAssignee()) : null,
-                        task.getDueDate(),
-                        task.getName(),
-                        storageFormat),
-                    context.getSyntax()
-                );
-
-                blocks.add(new MacroBlock("task", taskParams, taskContent, false));
+                blocks.add(blockProcessor.createTaskMacroBlock(task, context.getSyntax()));
             } catch (NumberFormatException | TaskException e) {
                 blocks.add(
-                    new MacroBlock("error", Collections.emptyMap(), e.getMessage(), false));
+                    new MacroBlock(ERROR_MACRO, Collections.emptyMap(), e.getMessage(), false));
             }
         }
         return blocks;
     }
+
+    private Set<Integer> getNumbers(String[] ids)
+    {
+        Set<Integer> numbers = new HashSet<>();
+        for (String id : ids) {
+            try {
+                numbers.add(Integer.parseInt(id));
+            } catch (NumberFormatException ignored) {
+                // The invalid ids are reported when the tasks are displayed.
+            }
+        }
+        return numbers;
+    }
 }
@@ -0,0 +1,308 @@
+package com.xwiki.taskmanager.internal.rest;
+
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.localization.ContextualLocalizationManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.transformation.Transformation;
+import org.xwiki.rendering.transformation.TransformationContext;
+import org.xwiki.rendering.transformation.TransformationException;
+import org.xwiki.rest.XWikiResource;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.xml.XMLUtils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.TaskQuery;
+import com.xwiki.taskmanager.TaskQueryResult;
+import com.xwiki.taskmanager.internal.TaskBlockProcessor;
+import com.xwiki.taskmanager.internal.TaskDateCodec;
+import com.xwiki.taskmanager.model.Task;
+
+/**
+ * Base class of the resources that provide tasks as JSON, in the format expected by the live tables.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public abstract class AbstractTasksResource extends XWikiResource
+{
+    /**
+     * The factory of the JSON parsers and generators, that is thread safe.
+     */
+    protected static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String VIEW_ACTION = "view";
+
+    private static final String RANGE_SEPARATOR = "-";
+
+    /**
+     * Used to check the rights of the current user on the tasks.
+     */
+    @Inject
+    protected ContextualAuthorizationManager authorizationManager;
+
+    @Inject
+    private TaskBlockProcessor blockProcessor;
+
+    @Inject
+    private TaskDateCodec dateCodec;
+
+    @Inject
+    @Named("macro")
+    private Transformation macroTransformation;
+
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    @Inject
+    @Named("compactwiki")
+    private EntityReferenceSerializer<String> compactSerializer;
+
+    @Inject
+    private ContextualLocalizationManager localizationManager;
+
+    /**
+     * Create the query of the tasks requested by a live table. The parameters are the ones of the resources.
+     *
+     * @param offset the 1-based index of the first task to return
+     * @param limit the number of tasks to return
+     * @param sort the field on which the tasks are sorted. The columns that can't be sorted, such as the location,
+     *     are displayed in the order of the task numbers
+     * @param dir the direction of the sort, {@code asc} or {@code desc}
+     * @param status the status of the tasks
+     * @param name text contained by the name of the tasks
+     * @param owner the page that contains the tasks
+     * @param assignees the users to whom the tasks are assigned
+     * @param reporters the users that created the tasks
+     * @param spaces the spaces of the pages that contain the tasks
+     * @param tags the tags of the pages that contain the tasks
+     * @param createDate a range of creation dates, as {@code from-to} timestamps
+     * @param duedate a range of due dates, as {@code from-to} timestamps
+     * @param completeDate a range of completion dates, as {@code from-to} timestamps
+     * @param continuation the continuation token returned with the previous page
+     * @return the query of the requested page of tasks
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    protected TaskQuery createQuery(int offset, int limit, String sort, String dir, String status, String name,
+        String owner, List<String> assignees, List<String> reporters, List<String> spaces, List<String> tags,
+        String createDate, String duedate, String completeDate, String continuation)
+    {
+        TaskQuery query = new TaskQuery()
+            .setStatus(status)
+            .setName(name)
+            .setOwner(owner)
+            .setAssignees(assignees)
+            .setReporters(reporters)
+            .setSpaces(spaces)
+            .setTags(tags)
+            .setOffset(Math.max(0, offset - 1))
+            .setLimit(limit)
+            .setContinuation(StringUtils.defaultIfBlank(continuation, null));
+        setDateRange(query, Task.CREATE_DATE, createDate);
+        setDateRange(query, Task.DUE_DATE, duedate);
+        setDateRange(query, Task.COMPLETE_DATE, completeDate);
+        query.setSort(TaskQuery.SORT_FIELDS.contains(sort) ? sort : Task.NUMBER, !"desc".equals(dir));
+        return query;
+    }
+
+    private void setDateRange(TaskQuery query, String field, String range)
+    {
+        if (StringUtils.isBlank(range)) {
+            return;
+        }
+        String from = StringUtils.substringBefore(range, RANGE_SEPARATOR);
+        String to = StringUtils.substringAfter(range, RANGE_SEPARATOR);
+        query.setDateRange(field, parseTimestamp(from), parseTimestamp(to));
+    }
+
+    private Date parseTimestamp(String timestamp)
+    {
+        return StringUtils.isNumeric(timestamp) ? new Date(Long.parseLong(timestamp)) : null;
+    }
+
+    /**
+     * @param tasks the tasks to display
+     * @param context the current context
+     * @return the live table row of each task, in the same order. The data of the tasks that the current user is not
+     *     allowed to view is not disclosed
+     * @throws TaskException if the macros of the tasks could not be created
+     * @throws TransformationException if the names of the tasks could not be rendered
+     */
+    protected List<Map<String, Object>> getRows(List<Task> tasks, XWikiContext context)
+        throws TaskException, TransformationException
+    {
+        XWiki wiki = context.getWiki();
+        List<Map<String, Object>> rows = new ArrayList<>(tasks.size());
+        List<Task> viewableTasks = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            boolean viewable = authorizationManager.hasAccess(Right.VIEW, task.getReference());
+            row.put("doc_viewable", viewable);
+            if (viewable) {
+                // The live table displays the values as HTML, so only the rendered name and the user links are not
+                // escaped.
+                row.put("doc_fullName", XMLUtils.escape(localSerializer.serialize(task.getReference())));
+                row.put("doc_url", wiki.getURL(task.getReference(), VIEW_ACTION, context));
+                row.put(Task.NUMBER, task.getNumber());
+                row.put(Task.STATUS, escape(task.getStatus()));
+                row.put(Task.ASSIGNEE, getUserName(task.getAssignee(), context));
+                row.put(Task.REPORTER, getUserName(task.getReporter(), context));
+                row.put(Task.OWNER, XMLUtils.escape(compactSerializer.serialize(task.getOwner())));
+                row.put("owner_url", wiki.getURL(task.getOwner(), VIEW_ACTION, context));
+                row.put(Task.DUE_DATE, formatDate(task.getDueDate()));
+                row.put(Task.CREATE_DATE, formatDate(task.getCreateDate()));
+                row.put(Task.COMPLETE_DATE, formatDate(task.getCompleteDate()));
+                viewableTasks.add(task);
+            } else {
+                row.put(Task.NAME, localizationManager.getTranslationPlain("taskmanager.livetable.noRights"));
+            }
+            rows.add(row);
+        }
+
+        List<String> names = renderNames(viewableTasks);
+        int nameIndex = 0;
+        for (Map<String, Object> row : rows) {
+            if (Boolean.TRUE.equals(row.get("doc_viewable"))) {
+                row.put(Task.NAME, names.get(nameIndex++));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Render the task macros of all the given tasks with a single macro transformation and return the HTML of each
+     * of them.
+     */
+    private List<String> renderNames(List<Task> tasks) throws TaskException, TransformationException
+    {
+        List<String> names = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) {
+            return names;
+        }
+        List<Block> taskBlocks = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            taskBlocks.add(blockProcessor.createTaskMacroBlock(task, Syntax.XWIKI_2_1));
+        }
+        XDOM xdom = new XDOM(taskBlocks);
+        TransformationContext transformationContext = new TransformationContext(xdom, Syntax.XWIKI_2_1, true);
+        transformationContext.setTargetSyntax(Syntax.XHTML_1_0);
+        macroTransformation.transform(xdom, transformationContext);
+        // The macro transformation replaces each task macro block with the result of its execution, in place.
+        for (Block renderedTask : xdom.getChildren()) {
+            names.add(blockProcessor.renderTaskContent(renderedTask.getChildren(), Syntax.XHTML_1_0));
+        }
+        return names;
+    }
+
+    private String getUserName(DocumentReference user, XWikiContext context)
+    {
+        if (user == null) {
+            return "";
+        }
+        return context.getWiki().getUserName(compactSerializer.serialize(user), null, true, context);
+    }
+
+    private String formatDate(Date date)
+    {
+        return date == null ? "" : XMLUtils.escape(dateCodec.formatDisplayDate(date));
+    }
+
+    private String escape(String value)
+    {
+        return value == null ? null : XMLUtils.escape(value);
+    }
+
+    /**
+     * @param result the tasks of the requested page
+     * @param rows the live table rows of the tasks
+     * @param offset the requested offset, that is sent back
+     * @param reqNo the number of the live table request, that is sent back
+     * @return the live table response
+     */
+    protected Response createResponse(TaskQueryResult result, List<Map<String, Object>> rows, int offset, int reqNo)
+    {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("totalrows", result.getTotalCount());
+        response.put("returnedrows", rows.size());
+        response.put("offset", offset);
+        response.put("reqNo", reqNo);
+        response.put("continuation", result.getContinuation());
+        return Response.ok((StreamingOutput) output -> writeJSON(output, response, rows),
+            MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    private void writeJSON(OutputStream output, Map<String, Object> response, List<Map<String, Object>> rows)
+        throws IOException
+    {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            writeFields(generator, response);
+            generator.writeArrayFieldStart("rows");
+            for (Map<String, Object> row : rows) {
+                generator.writeStartObject();
+                writeFields(generator, row);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeFields(JsonGenerator generator, Map<String, Object> fields) throws IOException
+    {
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object value = field.getValue();
+            if (value instanceof Boolean) {
+                generator.writeBooleanField(field.getKey(), (Boolean) value);
+            } else if (value instanceof Number) {
+                generator.writeNumberField(field.getKey(), ((Number) value).longValue());
+            } else {
+                generator.writeStringField(field.getKey(), value == null ? null : value.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.xwiki.taskmanager.internal.rest;
+
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.core.Response;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rendering.transformation.TransformationException;
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.xml.XMLUtils;
+
+import com.xwiki.taskmanager.FarmTaskManager;
+import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.TaskQuery;
+import com.xwiki.taskmanager.TaskQueryResult;
+import com.xwiki.taskmanager.rest.FarmTasksResource;
+
+/**
+ * Default implementation of {@link FarmTasksResource}. The wikis are searched with {@link FarmTaskManager} and the
+ * rows are built the same way as for the tasks of a single wiki, with the wiki of each task.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("com.xwiki.taskmanager.internal.rest.DefaultFarmTasksResource")
+@Singleton
+public class DefaultFarmTasksResource extends AbstractTasksResource implements FarmTasksResource
+{
+    @Inject
+    private FarmTaskManager farmTaskManager;
+
+    @Override
+    public Response getTasks(List<String> wikis, int offset, int limit, String sort, String dir, int reqNo,
+        String status, String name, String owner, List<String> assignees, List<String> reporters,
+        List<String> spaces, List<String> tags, String createDate, String duedate, String completeDate,
+        String continuation)
+        throws XWikiRestException
+    {
+        try {
+            TaskQuery query = createQuery(offset, limit, sort, dir, status, name, owner, assignees, reporters, spaces,
+                tags, createDate, duedate, completeDate, continuation);
+
+            TaskQueryResult result = farmTaskManager.findTasks(query, wikis);
+            List<Map<String, Object>> rows = getRows(result.getTasks(), getXWikiContext());
+            for (int i = 0; i < rows.size(); i++) {
+                Map<String, Object> row = rows.get(i);
+                if (Boolean.TRUE.equals(row.get("doc_viewable"))) {
+                    row.put("doc_wiki",
+                        XMLUtils.escape(result.getTasks().get(i).getReference().getWikiReference().getName()));
+                }
+            }
+            return createResponse(result, rows, offset, reqNo);
+        } catch (TaskException | TransformationException | IllegalArgumentException e) {
+            throw new XWikiRestException(String.format("Failed to retrieve the tasks of the wikis %s.", wikis), e);
+        }
+    }
+}
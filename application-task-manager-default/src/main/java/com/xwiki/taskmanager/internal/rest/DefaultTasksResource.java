@@ -0,0 +1,299 @@
+package com.xwiki.taskmanager.internal.rest;
+
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.rendering.transformation.TransformationException;
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.security.authorization.Right;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xwiki.taskmanager.TaskException;
+import com.xwiki.taskmanager.TaskManager;
+import com.xwiki.taskmanager.TaskQuery;
+import com.xwiki.taskmanager.TaskQueryResult;
+import com.xwiki.taskmanager.internal.TaskOwnerUpdater;
+import com.xwiki.taskmanager.model.Task;
+import com.xwiki.taskmanager.rest.TasksResource;
+
+/**
+ * Default implementation of {@link TasksResource}. The tasks of the requested page are retrieved with a constant
+ * number of queries and their names are rendered with a single macro transformation, so the cost of a request
+ * doesn't depend on the number of displayed tasks. The status changes of several tasks are applied with a single update
+ * of each of the pages that contain their macros.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("com.xwiki.taskmanager.internal.rest.DefaultTasksResource")
+@Singleton
+public class DefaultTasksResource extends AbstractTasksResource implements TasksResource
+{
+    private static final LocalDocumentReference TASK_CLASS_REFERENCE =
+        new LocalDocumentReference(Arrays.asList("TaskManager", "Code"), "TaskClass");
+
+    private static final int MAX_STATUS_CHANGES = 1000;
+
+    private static final List<String> STATUSES = Arrays.asList(Task.STATUS_IN_PROGRESS, Task.STATUS_DONE);
+
+    private static final String RESULT_OK = "ok";
+
+    private static final String RESULT_NOT_FOUND = "notFound";
+
+    @Inject
+    private TaskManager taskManager;
+
+    @Inject
+    private DocumentReferenceResolver<String> resolver;
+
+    @Inject
+    private TaskOwnerUpdater taskOwnerUpdater;
+
+    @Override
+    public Response getTasks(String wikiName, int offset, int limit, String sort, String dir, int reqNo,
+        String status, String name, String owner, List<String> assignees, List<String> reporters,
+        List<String> spaces, List<String> tags, String createDate, String duedate, String completeDate,
+        String continuation)
+        throws XWikiRestException
+    {
+        XWikiContext context = getXWikiContext();
+        String currentWiki = context.getWikiId();
+        try {
+            context.setWikiId(wikiName);
+
+            TaskQuery query = createQuery(offset, limit, sort, dir, status, name, owner, assignees, reporters, spaces,
+                tags, createDate, duedate, completeDate, continuation);
+
+            TaskQueryResult result = taskManager.findTasks(query);
+            return createResponse(result, getRows(result.getTasks(), context), offset, reqNo);
+        } catch (TaskException | TransformationException | IllegalArgumentException e) {
+            throw new XWikiRestException(String.format("Failed to retrieve the tasks of the wiki [%s].", wikiName),
+                e);
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    @Override
+    public Response changeTaskStatuses(String wikiName, InputStream body) throws XWikiRestException
+    {
+        List<StatusChange> changes;
+        try {
+            changes = parseStatusChanges(body);
+        } catch (IOException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+
+        XWikiContext context = getXWikiContext();
+        String currentWiki = context.getWikiId();
+        try {
+            context.setWikiId(wikiName);
+            resolveReferences(changes, new WikiReference(wikiName));
+
+            // The owner pages are updated once all the tasks have been saved.
+            taskOwnerUpdater.startBatch();
+            try {
+                for (StatusChange change : changes) {
+                    change.result = changeStatus(change, context);
+                }
+            } finally {
+                taskOwnerUpdater.endBatch();
+            }
+
+            return Response.ok((StreamingOutput) output -> writeStatusChanges(output, changes),
+                MediaType.APPLICATION_JSON_TYPE).build();
+        } catch (TaskException e) {
+            throw new XWikiRestException(String.format("Failed to change the status of the tasks of the wiki [%s].",
+                wikiName), e);
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+    }
+
+    private List<StatusChange> parseStatusChanges(InputStream body) throws IOException
+    {
+        List<StatusChange> changes = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of status changes.");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                if (changes.size() == MAX_STATUS_CHANGES) {
+                    throw new JsonParseException(parser,
+                        String.format("At most [%d] status changes can be sent at once.", MAX_STATUS_CHANGES));
+                }
+                StatusChange change = new StatusChange();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if (Task.REFERENCE.equals(field)) {
+                        change.reference = parser.getValueAsString();
+                    } else if (Task.NUMBER.equals(field)) {
+                        change.number = parser.getValueAsInt(-1);
+                    } else if (Task.STATUS.equals(field)) {
+                        change.status = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                changes.add(change);
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Expected a status change object.");
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Resolve the pages of the tasks that are identified by their number with a single query. The references that
+     * target another wiki are marked as invalid.
+     */
+    private void resolveReferences(List<StatusChange> changes, WikiReference wikiReference) throws TaskException
+    {
+        Set<Integer> numbers = new HashSet<>();
+        for (StatusChange change : changes) {
+            if (StringUtils.isNotBlank(change.reference)) {
+                DocumentReference reference = resolver.resolve(change.reference, wikiReference);
+                // The tasks of the other wikis can't be changed through this wiki.
+                change.invalidReference = !wikiReference.equals(reference.getWikiReference());
+                change.documentReference = change.invalidReference ? null : reference;
+            } else if (change.number > 0) {
+                numbers.add(change.number);
+            }
+        }
+        if (numbers.isEmpty()) {
+            return;
+        }
+        Map<Integer, Task> tasks = taskManager.getTasksByNumber(numbers);
+        for (StatusChange change : changes) {
+            Task task = change.documentReference == null ? tasks.get(change.number) : null;
+            if (task != null) {
+                change.documentReference = task.getReference();
+            }
+        }
+    }
+
+    private String changeStatus(StatusChange change, XWikiContext context)
+    {
+        if (!STATUSES.contains(change.status) || change.invalidReference) {
+            return "invalid";
+        }
+        if (change.documentReference == null) {
+            return RESULT_NOT_FOUND;
+        }
+        if (!authorizationManager.hasAccess(Right.EDIT, change.documentReference)) {
+            return "forbidden";
+        }
+        try {
+            XWikiDocument document = context.getWiki().getDocument(change.documentReference, context);
+            BaseObject taskObject = document.getXObject(TASK_CLASS_REFERENCE);
+            if (taskObject == null) {
+                return RESULT_NOT_FOUND;
+            }
+            if (change.status.equals(taskObject.getStringValue(Task.STATUS))) {
+                // Nothing to save.
+                return RESULT_OK;
+            }
+
+            document = document.clone();
+            taskObject = document.getXObject(TASK_CLASS_REFERENCE);
+            taskObject.set(Task.STATUS, change.status, context);
+            taskObject.set(Task.COMPLETE_DATE, Task.STATUS_DONE.equals(change.status) ? new Date() : null, context);
+            context.getWiki().saveDocument(document, "Task status was updated.", context);
+            return RESULT_OK;
+        } catch (XWikiException e) {
+            logger.warn("Failed to change the status of the task [{}].", change.documentReference, e);
+            return "error";
+        }
+    }
+
+    private void writeStatusChanges(OutputStream output, List<StatusChange> changes) throws IOException
+    {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (StatusChange change : changes) {
+                generator.writeStartObject();
+                if (change.reference != null) {
+                    generator.writeStringField(Task.REFERENCE, change.reference);
+                }
+                if (change.number > 0) {
+                    generator.writeNumberField(Task.NUMBER, change.number);
+                }
+                generator.writeStringField(Task.STATUS, change.status);
+                generator.writeStringField("result", change.result);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+
+    /**
+     * A status change requested through {@link #changeTaskStatuses(String, InputStream)}.
+     */
+    private static final class StatusChange
+    {
+        private String reference;
+
+        private int number = -1;
+
+        private String status;
+
+        private DocumentReference documentReference;
+
+        private boolean invalidReference;
+
+        private String result;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectComponentManager;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+import org.xwiki.test.mockito.MockitoComponentManager;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.web.Utils;
+import com.xwiki.taskmanager.internal.DefaultFarmTaskManager;
+import com.xwiki.taskmanager.internal.TaskMetricsRegistry;
+import com.xwiki.taskmanager.model.Task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+@ComponentList(TaskMetricsRegistry.class)
+public class DefaultFarmTaskManagerTest
+{
+    private static final String MAIN_WIKI = "xwiki";
+
+    private static final String SUBWIKI = "sub1";
+
+    private static final String FORBIDDEN_WIKI = "sub2";
+
+    @InjectMockComponents
+    private DefaultFarmTaskManager farmTaskManager;
+
+    @InjectComponentManager
+    private MockitoComponentManager componentManager;
+
+    @MockComponent
+    private TaskManager taskManager;
+
+    @MockComponent
+    private WikiDescriptorManager wikiDescriptorManager;
+
+    @MockComponent
+    private ContextualAuthorizationManager authorizationManager;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @MockComponent
+    private Execution execution;
+
+    @MockComponent
+    private ExecutionContextManager executionContextManager;
+
+    @Mock
+    private XWikiContext context;
+
+    private final ThreadLocal<String> contextWiki = new ThreadLocal<>();
+
+    /**
+     * The tasks of each wiki, sorted by number.
+     */
+    private final Map<String, List<Task>> wikiTasks = new HashMap<>();
+
+    /**
+     * The order of the strings in the database of each wiki.
+     */
+    private final Map<String, Comparator<String>> wikiCollations = new HashMap<>();
+
+    /**
+     * The last query received by each wiki.
+     */
+    private final Map<String, TaskQuery> wikiQueries = new ConcurrentHashMap<>();
+
+    @BeforeComponent
+    public void configure()
+    {
+        when(this.xwikiProperties.getProperty(anyString(), any(Object.class)))
+            .thenAnswer(invocation -> invocation.getArgument(1));
+    }
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        // The wiki searches are run as XWiki runnables, which need an execution context.
+        Utils.setComponentManager(this.componentManager);
+        when(this.execution.getContext()).thenReturn(new ExecutionContext());
+
+        when(this.contextProvider.get()).thenReturn(this.context);
+        doAnswer(invocation -> {
+            this.contextWiki.set(invocation.getArgument(0));
+            return null;
+        }).when(this.context).setWikiId(anyString());
+
+        when(this.wikiDescriptorManager.getAllIds()).thenReturn(Arrays.asList(MAIN_WIKI, SUBWIKI, FORBIDDEN_WIKI));
+        when(this.wikiDescriptorManager.exists(anyString())).thenReturn(true);
+        when(this.authorizationManager.hasAccess(any(Right.class), any(WikiReference.class))).thenReturn(true);
+        when(this.authorizationManager.hasAccess(Right.VIEW, new WikiReference(FORBIDDEN_WIKI))).thenReturn(false);
+
+        this.wikiTasks.put(MAIN_WIKI, createTasks(MAIN_WIKI, 1, 3, 5));
+        this.wikiTasks.put(SUBWIKI, createTasks(SUBWIKI, 2, 3, 4));
+        this.wikiTasks.put(FORBIDDEN_WIKI, createTasks(FORBIDDEN_WIKI, 1));
+        when(this.taskManager.findTasks(any(TaskQuery.class))).thenAnswer(invocation -> {
+            String wikiId = this.contextWiki.get();
+            TaskQuery query = invocation.getArgument(0);
+            this.wikiQueries.put(wikiId, query);
+            // Emulate an ascending search, where the continuation tokens are the numbers of the tasks.
+            List<Task> tasks = new ArrayList<>(this.wikiTasks.get(wikiId));
+            if (Task.NAME.equals(query.getSortField())) {
+                tasks.sort(Comparator.comparing(Task::getName,
+                    this.wikiCollations.getOrDefault(wikiId, Comparator.naturalOrder())));
+            }
+            int start = 0;
+            if (query.getContinuation() != null) {
+                int after = Integer.parseInt(query.getContinuation());
+                while (tasks.get(start).getNumber() != after) {
+                    start++;
+                }
+                start++;
+            }
+            List<Task> page = tasks.subList(start, Math.min(tasks.size(), start + query.getLimit()));
+            List<String> tokens =
+                page.stream().map(task -> String.valueOf(task.getNumber())).collect(Collectors.toList());
+            String continuation = start + page.size() < tasks.size() ? tokens.get(tokens.size() - 1) : null;
+            return new TaskQueryResult(page, tasks.size(), continuation, tokens);
+        });
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        Utils.setComponentManager(null);
+    }
+
+    @Test
+    public void findTasksMergesTheResultsOfTheWikis() throws TaskException
+    {
+        TaskQueryResult result = this.farmTaskManager.findTasks(new TaskQuery().setOffset(2).setLimit(3),
+            Collections.emptyList());
+
+        // The tasks with the same number are sorted by the identifier of their wiki.
+        assertEquals(Arrays.asList("sub1:3", "xwiki:3", "sub1:4"), toStrings(result.getTasks()));
+        assertEquals(6, result.getTotalCount());
+        assertNotNull(result.getContinuation());
+        // The offset is applied to the merged results.
+        assertEquals(5, this.wikiQueries.get(MAIN_WIKI).getLimit());
+        assertEquals(0, this.wikiQueries.get(MAIN_WIKI).getOffset());
+        assertFalse(this.wikiQueries.containsKey(FORBIDDEN_WIKI));
+    }
+
+    @Test
+    public void findTasksWithContinuation() throws TaskException
+    {
+        TaskQueryResult firstPage =
+            this.farmTaskManager.findTasks(new TaskQuery().setLimit(3), Arrays.asList(SUBWIKI, MAIN_WIKI));
+        assertEquals(Arrays.asList("xwiki:1", "sub1:2", "sub1:3"), toStrings(firstPage.getTasks()));
+
+        TaskQueryResult secondPage = this.farmTaskManager.findTasks(
+            new TaskQuery().setLimit(3).setContinuation(firstPage.getContinuation()), Arrays.asList(SUBWIKI,
+                MAIN_WIKI));
+
+        // Each wiki resumes after the last task that it returned.
+        assertEquals("3", this.wikiQueries.get(SUBWIKI).getContinuation());
+        assertEquals("1", this.wikiQueries.get(MAIN_WIKI).getContinuation());
+        assertEquals(Arrays.asList("xwiki:3", "sub1:4", "xwiki:5"), toStrings(secondPage.getTasks()));
+        assertNull(secondPage.getContinuation());
+    }
+
+    @Test
+    public void findTasksSortedByMixedCaseNames() throws TaskException
+    {
+        // The databases of the wikis don't sort the strings the same way.
+        this.wikiTasks.put(MAIN_WIKI, createNamedTasks(MAIN_WIKI, "cherry", "Banana", "apple"));
+        this.wikiCollations.put(MAIN_WIKI, String.CASE_INSENSITIVE_ORDER);
+        this.wikiTasks.put(SUBWIKI, createNamedTasks(SUBWIKI, "avocado", "Blueberry", "Apricot"));
+        List<String> wikis = Arrays.asList(MAIN_WIKI, SUBWIKI);
+
+        List<Task> pagedTasks = new ArrayList<>();
+        String continuation = null;
+        do {
+            TaskQueryResult page = this.farmTaskManager.findTasks(new TaskQuery().setSort(Task.NAME, true)
+                .setLimit(2).setContinuation(continuation), wikis);
+            pagedTasks.addAll(page.getTasks());
+            continuation = page.getContinuation();
+        } while (continuation != null);
+
+        // No task is skipped or repeated and each wiki keeps the order of its database.
+        List<String> expected = Arrays.asList("apple", "Apricot", "Banana", "Blueberry", "avocado", "cherry");
+        assertEquals(expected, pagedTasks.stream().map(Task::getName).collect(Collectors.toList()));
+        TaskQueryResult allTasks =
+            this.farmTaskManager.findTasks(new TaskQuery().setSort(Task.NAME, true).setLimit(10), wikis);
+        assertEquals(expected, allTasks.getTasks().stream().map(Task::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findTasksSkipsTheForbiddenWikis() throws TaskException
+    {
+        TaskQueryResult result =
+            this.farmTaskManager.findTasks(new TaskQuery().setLimit(10), Collections.singletonList(FORBIDDEN_WIKI));
+
+        assertEquals(0, result.getTasks().size());
+        assertEquals(0, result.getTotalCount());
+    }
+
+    @Test
+    public void findTasksWhenAWikiFails() throws TaskException
+    {
+        doThrow(new TaskException("Search failed.")).when(this.taskManager).findTasks(any(TaskQuery.class));
+
+        TaskException exception = assertThrows(TaskException.class,
+            () -> this.farmTaskManager.findTasks(new TaskQuery().setLimit(10), Collections.singletonList(SUBWIKI)));
+
+        assertEquals("Failed to search the tasks of the wiki [sub1].", exception.getMessage());
+    }
+
+    @Test
+    public void findTasksWithLargeOffset() throws TaskException
+    {
+        TaskException exception = assertThrows(TaskException.class, () -> this.farmTaskManager.findTasks(
+            new TaskQuery().setOffset(1001).setLimit(10), Collections.singletonList(SUBWIKI)));
+
+        assertEquals("The tasks beyond the first [1000] of a farm search can only be retrieved with a continuation "
+            + "token.", exception.getMessage());
+        verify(this.taskManager, never()).findTasks(any(TaskQuery.class));
+    }
+
+    private List<Task> createTasks(String wikiId, int... numbers)
+    {
+        return Arrays.stream(numbers).mapToObj(number -> {
+            Task task = new Task();
+            task.setReference(new DocumentReference(wikiId, "Sandbox", "Task_" + number));
+            task.setNumber(number);
+            return task;
+        }).collect(Collectors.toList());
+    }
+
+    private List<Task> createNamedTasks(String wikiId, String... names)
+    {
+        List<Task> tasks = createTasks(wikiId, 1, 2, 3);
+        for (int i = 0; i < names.length; i++) {
+            tasks.get(i).setName(names[i]);
+        }
+        return tasks;
+    }
+
+    private List<String> toStrings(List<Task> tasks)
+    {
+        return tasks.stream().map(task -> task.getReference().getWikiReference().getName() + ':' + task.getNumber())
+            .collect(Collectors.toList());
+    }
+}
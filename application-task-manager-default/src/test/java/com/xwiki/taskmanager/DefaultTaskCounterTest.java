@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.taskmanager.internal.DefaultTaskCounter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class DefaultTaskCounterTest
+{
+    private static final String WIKI = "xwiki";
+
+    @InjectMockComponents
+    private DefaultTaskCounter taskCounter;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Mock
+    private ComponentManager componentManager;
+
+    @Mock
+    private TaskNumberAllocator allocator;
+
+    @Mock
+    private XWikiContext context;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        when(this.contextProvider.get()).thenReturn(this.context);
+        when(this.context.getWikiId()).thenReturn(WIKI);
+        when(this.xwikiProperties.getProperty("taskmanager.numberAllocator", "default")).thenReturn("default");
+        when(this.componentManagerProvider.get()).thenReturn(this.componentManager);
+        when(this.componentManager.getInstance(TaskNumberAllocator.class, "default")).thenReturn(this.allocator);
+    }
+
+    @Test
+    public void getNextNumberReservesBlocks() throws TaskException
+    {
+        when(this.allocator.reserve(WIKI, 100)).thenReturn(8, 301);
+
+        for (int i = 8; i < 108; i++) {
+            assertEquals(i, this.taskCounter.getNextNumber());
+        }
+        assertEquals(301, this.taskCounter.getNextNumber());
+
+        verify(this.allocator, times(2)).reserve(WIKI, 100);
+    }
+
+    @Test
+    public void getNextNumberIsUniqueAcrossThreads() throws Exception
+    {
+        AtomicInteger lastReserved = new AtomicInteger();
+        when(this.allocator.reserve(anyString(), anyInt()))
+            .thenAnswer(invocation -> lastReserved.getAndAdd(invocation.getArgument(1)) + 1);
+
+        Set<Integer> numbers = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        numbers.add(this.taskCounter.getNextNumber());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(8000, numbers.size());
+        verify(this.allocator, times(80)).reserve(WIKI, 100);
+    }
+}
@@ -19,23 +19,33 @@
  */
 package com.xwiki.taskmanager;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import javax.inject.Named;
 import javax.inject.Provider;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
-import org.xwiki.query.QueryParameter;
+import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.junit5.mockito.ComponentTest;
 import org.xwiki.test.junit5.mockito.InjectMockComponents;
 import org.xwiki.test.junit5.mockito.MockComponent;
@@ -45,16 +55,36 @@ import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.IntegerProperty;
+import com.xpn.xwiki.objects.StringProperty;
 import com.xwiki.taskmanager.internal.DefaultTaskManager;
+import com.xwiki.taskmanager.internal.TaskCache;
+import com.xwiki.taskmanager.internal.TaskMetricsRegistry;
+import com.xwiki.taskmanager.internal.TaskNumberIndex;
+import com.xwiki.taskmanager.internal.TaskOwnerMigration;
+import com.xwiki.taskmanager.internal.TaskTableStore;
 import com.xwiki.taskmanager.model.Task;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ComponentTest
+@ComponentList(TaskMetricsRegistry.class)
 public class DefaultTaskManagerTest
 {
     private static final String TASK_0_NAME = "Task";
@@ -84,6 +114,18 @@ public class DefaultTaskManagerTest
     @Named("compactwiki")
     private EntityReferenceSerializer<String> compactSerializer;
 
+    @MockComponent
+    private TaskNumberIndex taskNumberIndex;
+
+    @MockComponent
+    private TaskCache taskCache;
+
+    @MockComponent
+    private TaskTableStore taskTableStore;
+
+    @MockComponent
+    private TaskOwnerMigration ownerMigration;
+
     @Mock
     private XWikiContext context;
 
@@ -132,8 +174,9 @@ public class DefaultTaskManagerTest
     }
 
     @Test
-    public void getTaskByReference() throws TaskException
+    public void getTaskByReference() throws TaskException, XWikiException
     {
+        when(this.taskCache.getGeneration()).thenReturn(3L);
 
         Task task = this.taskManager.getTask(documentReference);
 
@@ -143,6 +186,25 @@ public class DefaultTaskManagerTest
         assertEquals(TASK_0_NAME, task.getName());
         assertEquals(userReference, task.getReporter());
         assertEquals(TASK_0_DATE, task.getCreateDate());
+        // The cache generation is read before the page is loaded, so that a concurrent invalidation is detected.
+        InOrder inOrder = inOrder(this.taskCache, this.wiki);
+        inOrder.verify(this.taskCache).getGeneration();
+        inOrder.verify(this.wiki).getDocument(documentReference, this.context);
+        inOrder.verify(this.taskCache).put(task, 3L);
+    }
+
+    @Test
+    public void getTaskByReferenceFromCache() throws TaskException, XWikiException
+    {
+        Task cachedTask = new Task();
+        cachedTask.setReference(documentReference);
+        cachedTask.setNumber(TASK_0_NUMBER);
+        when(this.taskCache.get(documentReference)).thenReturn(cachedTask);
+
+        Task task = this.taskManager.getTask(documentReference);
+
+        assertEquals(cachedTask, task);
+        verify(this.wiki, never()).getDocument(documentReference, this.context);
     }
 
     @Test
@@ -168,27 +230,315 @@ public class DefaultTaskManagerTest
         assertEquals(TASK_0_DATE, task.getCreateDate());
     }
 
+    @Test
+    public void getTaskByIdFromIndex() throws TaskException, QueryException
+    {
+        when(this.taskNumberIndex.get(TASK_0_NUMBER)).thenReturn(documentReference);
+
+        Task task = this.taskManager.getTask(TASK_0_NUMBER);
+
+        assertEquals(TASK_0_NUMBER, task.getNumber());
+        assertEquals(documentReference, task.getReference());
+        verify(this.queryManager, never()).createQuery(anyString(), anyString());
+    }
+
+    @Test
+    public void getTaskByIdWithStaleIndexEntry() throws TaskException, QueryException
+    {
+        DocumentReference staleReference = new DocumentReference("wiki", "XWiki", "Stale");
+        when(this.taskNumberIndex.get(TASK_0_NUMBER)).thenReturn(staleReference);
+        XWikiDocument staleDocument = mock(XWikiDocument.class);
+        when(this.wiki.getDocument(staleReference, this.context)).thenReturn(staleDocument);
+
+        when(this.queryManager.createQuery(anyString(), anyString())).thenReturn(this.query);
+        when(this.query.bindValue("id", TASK_0_NUMBER)).thenReturn(this.query);
+        when(this.query.execute()).thenReturn(Collections.singletonList(documentReference.toString()));
+
+        Task task = this.taskManager.getTask(TASK_0_NUMBER);
+
+        assertEquals(documentReference, task.getReference());
+        verify(this.taskNumberIndex).remove(TASK_0_NUMBER, staleReference);
+        verify(this.taskNumberIndex).put(TASK_0_NUMBER, documentReference);
+    }
+
+    @Test
+    public void getTasksByNumber() throws TaskException, QueryException
+    {
+        Query propertiesQuery = mock(Query.class);
+        when(this.context.getWikiId()).thenReturn("wiki");
+        when(this.queryManager.createQuery(startsWith("select taskObj.id"), eq(Query.HQL))).thenReturn(this.query);
+        when(this.queryManager.createQuery(startsWith("select prop"), eq(Query.HQL))).thenReturn(propertiesQuery);
+        when(this.query.bindValue(eq("numbers"), any())).thenReturn(this.query);
+        when(this.query.execute()).thenReturn(Collections.singletonList(new Object[] { 10L, "XWiki.Doc" }));
+        when(propertiesQuery.setWiki("wiki")).thenReturn(propertiesQuery);
+        when(propertiesQuery.bindValue(anyString(), any())).thenReturn(propertiesQuery);
+        when(this.resolver.resolve("XWiki.Doc", new WikiReference("wiki"))).thenReturn(documentReference);
+
+        IntegerProperty numberProperty = new IntegerProperty();
+        numberProperty.setId(10L);
+        numberProperty.setName(Task.NUMBER);
+        numberProperty.setValue(TASK_0_NUMBER);
+        StringProperty nameProperty = new StringProperty();
+        nameProperty.setId(10L);
+        nameProperty.setName(Task.NAME);
+        nameProperty.setValue(TASK_0_NAME);
+        when(propertiesQuery.execute()).thenReturn(Arrays.asList(numberProperty, nameProperty));
+
+        Map<Integer, Task> tasks = this.taskManager.getTasksByNumber(Arrays.asList(TASK_0_NUMBER, 2));
+
+        assertEquals(1, tasks.size());
+        assertFalse(tasks.containsKey(2));
+        Task task = tasks.get(TASK_0_NUMBER);
+        assertEquals(documentReference, task.getReference());
+        assertEquals(TASK_0_NAME, task.getName());
+        verify(this.wiki, never()).getDocument(any(DocumentReference.class), any(XWikiContext.class));
+        verify(this.taskNumberIndex).put(TASK_0_NUMBER, documentReference);
+    }
+
+    @Test
+    public void getTasksByNumberInChunks() throws TaskException, QueryException
+    {
+        when(this.queryManager.createQuery(startsWith("select taskObj.id"), eq(Query.HQL))).thenReturn(this.query);
+        when(this.query.bindValue(eq("numbers"), any())).thenReturn(this.query);
+        when(this.query.execute()).thenReturn(Collections.emptyList());
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 1; i <= 1200; i++) {
+            numbers.add(i);
+        }
+
+        assertTrue(this.taskManager.getTasksByNumber(numbers).isEmpty());
+
+        // The lists bound to the query are kept below the limit of the databases.
+        ArgumentCaptor<List<Integer>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(this.query, times(3)).bindValue(eq("numbers"), chunks.capture());
+        assertEquals(Arrays.asList(500, 500, 200),
+            chunks.getAllValues().stream().map(List::size).collect(Collectors.toList()));
+        assertEquals(numbers, chunks.getAllValues().stream().flatMap(List::stream).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void findTasks() throws TaskException, QueryException
+    {
+        Query countQuery = mock(Query.class, RETURNS_SELF);
+        Query tasksQuery = mock(Query.class, RETURNS_SELF);
+        Query propertiesQuery = mock(Query.class, RETURNS_SELF);
+        when(this.context.getWikiId()).thenReturn("wiki");
+        when(this.queryManager.createQuery(startsWith("select count"), eq(Query.HQL))).thenReturn(countQuery);
+        when(this.queryManager.createQuery(startsWith("select taskObj.id"), eq(Query.HQL))).thenReturn(tasksQuery);
+        when(this.queryManager.createQuery(startsWith("select prop"), eq(Query.HQL))).thenReturn(propertiesQuery);
+        when(countQuery.execute()).thenReturn(Collections.singletonList(3L));
+        when(tasksQuery.execute()).thenReturn(Collections.singletonList(new Object[] { 10L, "XWiki.Doc", 1 }));
+        when(this.resolver.resolve("XWiki.Doc", new WikiReference("wiki"))).thenReturn(documentReference);
+        StringProperty nameProperty = new StringProperty();
+        nameProperty.setId(10L);
+        nameProperty.setName(Task.NAME);
+        nameProperty.setValue(TASK_0_NAME);
+        when(propertiesQuery.execute()).thenReturn(Collections.singletonList(nameProperty));
+
+        TaskQuery query = new TaskQuery()
+            .setStatus(TASK_0_STATUS)
+            .setOwner("Sandbox.Page")
+            .setAssignees(Arrays.asList("XWiki.User_1", ""))
+            .setSpaces(Collections.singletonList("Sandbox"))
+            .setDateRange(Task.DUE_DATE, TASK_0_DATE, null)
+            .setSort(Task.DUE_DATE, false)
+            .setOffset(2)
+            .setLimit(1);
+        TaskQueryResult result = this.taskManager.findTasks(query);
+
+        assertEquals(3L, result.getTotalCount());
+        assertEquals(1, result.getTasks().size());
+        assertEquals(documentReference, result.getTasks().get(0).getReference());
+        assertEquals(TASK_0_NAME, result.getTasks().get(0).getName());
+
+        ArgumentCaptor<String> statementCaptor = ArgumentCaptor.forClass(String.class);
+        verify(this.queryManager, times(3)).createQuery(statementCaptor.capture(), eq(Query.HQL));
+        String statement = statementCaptor.getAllValues().get(1);
+        assertTrue(statement.contains("statusProp.value = :status"));
+        assertTrue(statement.contains("lower(ownerProp.value) like :owner escape '!'"));
+        assertTrue(statement.contains("(lower(assigneeProp.value) like :assignee0 escape '!')"));
+        assertTrue(statement.contains("duedateProp.value >= :duedateFrom"));
+        assertTrue(statement.endsWith(" order by sortProp.value desc nulls last, numberProp.value desc"));
+        verify(tasksQuery).bindValue(Task.STATUS, TASK_0_STATUS);
+        verify(tasksQuery).bindValue(Task.OWNER, "%sandbox.page%");
+        verify(tasksQuery).bindValue("assignee0", "%xwiki.user!_1%");
+        verify(tasksQuery).bindValue("space4", "Sandbox.%");
+        verify(tasksQuery).setOffset(2);
+        // One more task is retrieved to know if there is a next page.
+        verify(tasksQuery).setLimit(2);
+        assertNull(result.getContinuation());
+        verify(this.wiki, never()).getDocument(any(DocumentReference.class), any(XWikiContext.class));
+    }
+
+    @Test
+    public void findTasksWithContinuation() throws TaskException, QueryException
+    {
+        Query countQuery = mock(Query.class, RETURNS_SELF);
+        Query tasksQuery = mock(Query.class, RETURNS_SELF);
+        Query propertiesQuery = mock(Query.class, RETURNS_SELF);
+        when(this.context.getWikiId()).thenReturn("wiki");
+        when(this.queryManager.createQuery(startsWith("select count"), eq(Query.HQL))).thenReturn(countQuery);
+        when(this.queryManager.createQuery(startsWith("select taskObj.id"), eq(Query.HQL))).thenReturn(tasksQuery);
+        when(this.queryManager.createQuery(startsWith("select prop"), eq(Query.HQL))).thenReturn(propertiesQuery);
+        when(countQuery.execute()).thenReturn(Collections.singletonList(3L));
+        when(tasksQuery.execute()).thenReturn(Arrays.asList(new Object[] { 10L, "XWiki.Doc", 1, TASK_0_DATE },
+            new Object[] { 11L, "XWiki.Doc2", 2, null }));
+        when(this.resolver.resolve("XWiki.Doc", new WikiReference("wiki"))).thenReturn(documentReference);
+
+        TaskQuery query = new TaskQuery().setSort(Task.DUE_DATE, true).setLimit(1);
+        TaskQueryResult firstPage = this.taskManager.findTasks(query);
+
+        assertEquals(1, firstPage.getTasks().size());
+        assertEquals(documentReference, firstPage.getTasks().get(0).getReference());
+        assertNotNull(firstPage.getContinuation());
+        // The search can also be resumed after each of the returned tasks.
+        assertEquals(firstPage.getContinuation(), firstPage.getContinuation(0));
+        assertNull(firstPage.getContinuation(1));
+
+        this.taskManager.findTasks(query.setContinuation(firstPage.getContinuation()));
+
+        ArgumentCaptor<String> statementCaptor = ArgumentCaptor.forClass(String.class);
+        verify(this.queryManager, times(6)).createQuery(statementCaptor.capture(), eq(Query.HQL));
+        String statement = statementCaptor.getAllValues().get(4);
+        assertTrue(statement.contains(" and (sortProp.value > :lastSortValue or (sortProp.value = :lastSortValue "
+            + "and numberProp.value > :lastNumber) or sortProp.value is null)"));
+        verify(tasksQuery).bindValue("lastSortValue", TASK_0_DATE);
+        verify(tasksQuery).bindValue("lastNumber", 1);
+        // The position is given by the continuation.
+        verify(tasksQuery, times(1)).setOffset(0);
+    }
+
+    @Test
+    public void findTasksSortedByAssigneeWithContinuation() throws TaskException, QueryException
+    {
+        Query countQuery = mock(Query.class, RETURNS_SELF);
+        Query tasksQuery = mock(Query.class, RETURNS_SELF);
+        when(this.context.getWikiId()).thenReturn("wiki");
+        when(this.queryManager.createQuery(startsWith("select count"), eq(Query.HQL))).thenReturn(countQuery);
+        when(this.queryManager.createQuery(startsWith("select taskObj.id"), eq(Query.HQL))).thenReturn(tasksQuery);
+        when(countQuery.execute()).thenReturn(Collections.singletonList(3L));
+        String token = Base64.getUrlEncoder()
+            .encodeToString("assignee|true|1|sXWiki.User_1".getBytes(StandardCharsets.UTF_8));
+
+        this.taskManager.findTasks(new TaskQuery().setSort(Task.ASSIGNEE, true).setContinuation(token));
+
+        ArgumentCaptor<String> statementCaptor = ArgumentCaptor.forClass(String.class);
+        verify(this.queryManager, times(2)).createQuery(statementCaptor.capture(), eq(Query.HQL));
+        String statement = statementCaptor.getAllValues().get(1);
+        assertTrue(statement.contains(" left join LargeStringProperty as sortProp on sortProp.id.id = taskObj.id "
+            + "and sortProp.id.name = 'assignee'"));
+        // The large strings are not compared with the equality operator.
+        assertTrue(statement.contains(" and (sortProp.value > :lastSortValue or (sortProp.value like "
+            + ":lastSortValueLike escape '!' and numberProp.value > :lastNumber) or sortProp.value is null)"));
+        verify(tasksQuery).bindValue("lastSortValue", "XWiki.User_1");
+        verify(tasksQuery).bindValue("lastSortValueLike", "XWiki.User!_1");
+    }
+
+    @Test
+    public void findTasksWithContinuationOfAnotherSort() throws TaskException, QueryException
+    {
+        Query countQuery = mock(Query.class, RETURNS_SELF);
+        when(this.queryManager.createQuery(startsWith("select count"), eq(Query.HQL))).thenReturn(countQuery);
+        when(countQuery.execute()).thenReturn(Collections.singletonList(3L));
+        when(this.queryManager.createQuery(startsWith("select taskObj.id"), eq(Query.HQL)))
+            .thenReturn(mock(Query.class, RETURNS_SELF));
+        String token = Base64.getUrlEncoder().encodeToString("number|true|1|n".getBytes(StandardCharsets.UTF_8));
+
+        TaskQuery query = new TaskQuery().setSort(Task.DUE_DATE, true).setContinuation(token);
+
+        assertThrows(TaskException.class, () -> this.taskManager.findTasks(query));
+    }
+
+    @Test
+    public void findTasksWithoutMatches() throws TaskException, QueryException
+    {
+        Query countQuery = mock(Query.class, RETURNS_SELF);
+        when(this.queryManager.createQuery(startsWith("select count"), eq(Query.HQL))).thenReturn(countQuery);
+        when(countQuery.execute()).thenReturn(Collections.singletonList(0L));
+
+        TaskQueryResult result = this.taskManager.findTasks(new TaskQuery().setName("missing"));
+
+        assertEquals(0L, result.getTotalCount());
+        assertTrue(result.getTasks().isEmpty());
+        verify(countQuery).bindValue(Task.NAME, "%missing%");
+        verify(this.queryManager, times(1)).createQuery(anyString(), anyString());
+    }
+
     @Test
     public void deleteTaskByOwner() throws TaskException, QueryException, XWikiException
     {
-        String queryStatement = "FROM doc.object(TaskManager.Code.TaskClass) as task "
-            + "WHERE task.owner = :absoluteOwnerRef "
-            + "OR task.owner = :compactOwnerRef "
-            + "OR (task.owner = :relativeOwnerRef AND doc.space = :ownerSpaceRef)";
+        String queryStatement = "select doc.fullName, task.owner "
+            + "from Document doc, doc.object(TaskManager.Code.TaskClass) as task "
+            + "where task.owner = :absoluteOwnerRef "
+            + "or task.owner = :compactOwnerRef "
+            + "or (task.owner = :relativeOwnerRef and doc.space = :ownerSpaceRef)";
         when(this.queryManager.createQuery(queryStatement, Query.XWQL)).thenReturn(this.query);
+        when(this.query.setWiki("wiki")).thenReturn(this.query);
         when(this.query.bindValue("absoluteOwnerRef", documentReference.toString())).thenReturn(this.query);
         when(this.query.bindValue("compactOwnerRef", documentReference.toString())).thenReturn(this.query);
         when(this.query.bindValue("relativeOwnerRef", documentReference.getName())).thenReturn(this.query);
         when(this.query.bindValue("ownerSpaceRef", documentReference.getLastSpaceReference().toString()))
             .thenReturn(this.query);
-        when(this.query.execute()).thenReturn(Collections.singletonList(documentReference.toString()));
-        QueryParameter queryParameter = mock(QueryParameter.class);
-        when(this.query.bindValue(any())).thenReturn(queryParameter);
-        when(queryParameter.anyChars()).thenReturn(queryParameter);
-        when(queryParameter.literal(any())).thenReturn(queryParameter);
+        when(this.query.execute()).thenReturn(Arrays.asList(new Object[] { "XWiki.Doc", documentReference.toString() },
+            new Object[] { "Other.Task", "Doc" }));
+        DocumentReference otherTaskReference = new DocumentReference("wiki", "Other", "Task");
+        when(this.resolver.resolve("XWiki.Doc", new WikiReference("wiki"))).thenReturn(documentReference);
+        when(this.resolver.resolve("Other.Task", new WikiReference("wiki"))).thenReturn(otherTaskReference);
+        // A relative owner is resolved against the task page, so it points to a page from another space.
+        when(this.resolver.resolve("Doc", otherTaskReference)).thenReturn(new DocumentReference("wiki", "Other",
+            "Doc"));
+
+        assertEquals(Collections.singletonList(documentReference),
+            this.taskManager.getTaskReferencesByOwner(documentReference));
 
         this.taskManager.deleteTasksByOwner(documentReference);
 
+        // The task pages are deleted one by one, each in its own transaction.
         verify(this.wiki).deleteDocument(this.document, this.context);
+        verify(this.wiki, never()).getHibernateStore();
+        // The macro calls are not removed from the deleted owner.
+        verify(this.context).put("taskmanager.deletedOwner", documentReference);
+        verify(this.wiki, never()).getDocument(otherTaskReference, this.context);
+    }
+
+    @Test
+    public void getTaskReferencesByOwnerFromTaskTable() throws TaskException
+    {
+        DocumentReference taskReference = new DocumentReference("wiki", "Sandbox", "Task_1");
+        when(this.taskTableStore.getDocumentsByOwner(documentReference))
+            .thenReturn(Collections.singletonList(taskReference));
+
+        assertEquals(Collections.singletonList(taskReference),
+            this.taskManager.getTaskReferencesByOwner(documentReference));
+        verify(this.queryManager, never()).createQuery(anyString(), anyString());
+    }
+
+    @Test
+    public void getTaskByIdFromTaskTable() throws TaskException, QueryException
+    {
+        when(this.context.getWikiId()).thenReturn("wiki");
+        when(this.taskTableStore.getDocumentByNumber("wiki", TASK_0_NUMBER)).thenReturn(documentReference);
+
+        Task task = this.taskManager.getTask(TASK_0_NUMBER);
+
+        assertEquals(documentReference, task.getReference());
+        verify(this.taskNumberIndex).put(TASK_0_NUMBER, documentReference);
+        verify(this.queryManager, never()).createQuery(anyString(), anyString());
+    }
+
+    @Test
+    public void getTaskReferencesByCanonicalOwner() throws TaskException, QueryException
+    {
+        when(this.ownerMigration.isMigrated("wiki")).thenReturn(true);
+        when(this.queryManager.createQuery(startsWith("select doc.fullName from"), eq(Query.XWQL)))
+            .thenReturn(this.query);
+        when(this.query.setWiki("wiki")).thenReturn(this.query);
+        when(this.query.bindValue("ownerRef", documentReference.toString())).thenReturn(this.query);
+        when(this.query.execute()).thenReturn(Collections.singletonList("Sandbox.Task_1"));
+        DocumentReference taskReference = new DocumentReference("wiki", "Sandbox", "Task_1");
+        when(this.resolver.resolve("Sandbox.Task_1", new WikiReference("wiki"))).thenReturn(taskReference);
+
+        assertEquals(Collections.singletonList(taskReference),
+            this.taskManager.getTaskReferencesByOwner(documentReference));
     }
 }
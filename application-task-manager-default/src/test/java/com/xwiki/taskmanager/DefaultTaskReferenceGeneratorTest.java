@@ -19,6 +19,21 @@
  */
 package com.xwiki.taskmanager;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Named;
 import javax.inject.Provider;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -26,7 +41,11 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
 import org.xwiki.security.authorization.ContextualAuthorizationManager;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.test.junit5.mockito.ComponentTest;
@@ -38,7 +57,13 @@ import com.xpn.xwiki.XWikiContext;
 import com.xwiki.taskmanager.internal.DefaultTaskReferenceGenerator;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ComponentTest
@@ -56,6 +81,19 @@ public class DefaultTaskReferenceGeneratorTest
     @MockComponent
     private DocumentAccessBridge documentAccessBridge;
 
+    @MockComponent
+    private Provider<QueryManager> queryManagerProvider;
+
+    @MockComponent
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    @Mock
+    private QueryManager queryManager;
+
+    @Mock
+    private Query query;
+
     @Mock
     private XWikiContext context;
 
@@ -67,8 +105,13 @@ public class DefaultTaskReferenceGeneratorTest
     private final DocumentReference userReference = new DocumentReference("xwiki", "XWiki", "User");
 
     @BeforeEach
-    public void setup()
+    public void setup() throws QueryException
     {
+        when(this.queryManagerProvider.get()).thenReturn(this.queryManager);
+        when(this.queryManager.createQuery(anyString(), anyString())).thenReturn(this.query);
+        when(this.query.bindValue(anyString(), any())).thenReturn(this.query);
+        when(this.query.setWiki(anyString())).thenReturn(this.query);
+        when(this.query.execute()).thenReturn(Collections.emptyList());
         when(this.contextProvider.get()).thenReturn(this.context);
         when(this.context.getUserReference()).thenReturn(this.userReference);
         when(this.context.getWiki()).thenReturn(this.wiki);
@@ -116,4 +159,99 @@ public class DefaultTaskReferenceGeneratorTest
         assertEquals(new DocumentReference("xwiki", "TaskManager", "Task_0"),
             generatedReference);
     }
+
+    @Test
+    public void generateReferenceAfterExistingTaskPages() throws TaskException, QueryException
+    {
+        when(this.documentAccessBridge.exists(any(DocumentReference.class))).thenReturn(false);
+        when(this.query.execute()).thenReturn(Arrays.asList("Task_2", "Task_12", "Task_7", "Task_Old"));
+
+        assertEquals(new DocumentReference("Task_13", documentReference.getLastSpaceReference()),
+            this.referenceGenerator.generate(documentReference));
+        assertEquals(new DocumentReference("Task_14", documentReference.getLastSpaceReference()),
+            this.referenceGenerator.generate(documentReference));
+
+        // The existing task pages are retrieved once per space.
+        verify(this.query, times(1)).execute();
+        verify(this.documentAccessBridge, times(2)).exists(any(DocumentReference.class));
+    }
+
+    @Test
+    public void generateReferenceAfterSeed() throws TaskException, QueryException
+    {
+        when(this.documentAccessBridge.exists(any(DocumentReference.class))).thenReturn(false);
+
+        this.referenceGenerator.seed(documentReference.getLastSpaceReference(), 20);
+        // The known index is not overwritten.
+        this.referenceGenerator.seed(documentReference.getLastSpaceReference(), 3);
+
+        assertEquals(new DocumentReference("Task_20", documentReference.getLastSpaceReference()),
+            this.referenceGenerator.generate(documentReference));
+        verify(this.query, never()).execute();
+    }
+
+    @Test
+    public void generateConcurrentlyInDifferentSpaces() throws Exception
+    {
+        int threadCount = 8;
+        CountDownLatch probing = new CountDownLatch(threadCount);
+        AtomicInteger serializedProbes = new AtomicInteger();
+        when(this.authorizationManager.hasAccess(eq(Right.EDIT), any(SpaceReference.class))).thenReturn(true);
+        when(this.documentAccessBridge.exists(any(DocumentReference.class))).thenAnswer(invocation -> {
+            // Every generation waits for the others to reach this point, which happens only if they run in parallel.
+            probing.countDown();
+            if (!probing.await(5, TimeUnit.SECONDS)) {
+                serializedProbes.incrementAndGet();
+            }
+            return false;
+        });
+
+        List<Callable<DocumentReference>> generations = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            DocumentReference parent = new DocumentReference("xwiki", "Space" + i, "Page");
+            generations.add(() -> this.referenceGenerator.generate(parent));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (Future<DocumentReference> generation : executor.invokeAll(generations)) {
+                assertEquals("Task_0", generation.get().getName());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, serializedProbes.get());
+    }
+
+    @Test
+    public void generateConcurrentlyInTheSameSpace() throws Exception
+    {
+        int threadCount = 8;
+        int generationsPerThread = 50;
+        when(this.documentAccessBridge.exists(any(DocumentReference.class))).thenReturn(false);
+
+        List<Callable<List<DocumentReference>>> generations = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            generations.add(() -> {
+                List<DocumentReference> references = new ArrayList<>();
+                for (int j = 0; j < generationsPerThread; j++) {
+                    references.add(this.referenceGenerator.generate(this.documentReference));
+                }
+                return references;
+            });
+        }
+        Set<DocumentReference> references = new HashSet<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (Future<List<DocumentReference>> generation : executor.invokeAll(generations)) {
+                references.addAll(generation.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threadCount * generationsPerThread, references.size());
+        assertTrue(references.contains(
+            new DocumentReference("Task_399", this.documentReference.getLastSpaceReference())));
+    }
 }
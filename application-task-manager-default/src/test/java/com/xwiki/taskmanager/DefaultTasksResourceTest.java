@@ -0,0 +1,345 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.xwiki.localization.ContextualLocalizationManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+import org.xwiki.xml.XMLUtils;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xwiki.taskmanager.internal.TaskBlockProcessor;
+import com.xwiki.taskmanager.internal.TaskDateCodec;
+import com.xwiki.taskmanager.internal.TaskOwnerUpdater;
+import com.xwiki.taskmanager.internal.rest.DefaultTasksResource;
+import com.xwiki.taskmanager.model.Task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class DefaultTasksResourceTest
+{
+    private static final Date CREATE_DATE = new Date(1000);
+
+    @InjectMockComponents
+    private DefaultTasksResource tasksResource;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    private TaskManager taskManager;
+
+    @MockComponent
+    private TaskOwnerUpdater taskOwnerUpdater;
+
+    @MockComponent
+    private DocumentReferenceResolver<String> resolver;
+
+    @MockComponent
+    private ContextualAuthorizationManager authorizationManager;
+
+    @MockComponent
+    private TaskBlockProcessor blockProcessor;
+
+    @MockComponent
+    private TaskDateCodec dateCodec;
+
+    @MockComponent
+    private ContextualLocalizationManager localizationManager;
+
+    @MockComponent
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    @MockComponent
+    @Named("compactwiki")
+    private EntityReferenceSerializer<String> compactSerializer;
+
+    @Mock
+    private XWikiContext context;
+
+    @Mock
+    private XWiki wiki;
+
+    private final DocumentReference taskReference = new DocumentReference("wiki", "Sandbox", "Task_1");
+
+    private final DocumentReference hiddenTaskReference = new DocumentReference("wiki", "Private", "Task_2");
+
+    private final DocumentReference ownerReference = new DocumentReference("wiki", "Sandbox", "Owner");
+
+    private final DocumentReference userReference = new DocumentReference("xwiki", "XWiki", "User1");
+
+    @BeforeEach
+    public void setup()
+    {
+        when(this.contextProvider.get()).thenReturn(this.context);
+        when(this.context.getWiki()).thenReturn(this.wiki);
+        when(this.context.getWikiId()).thenReturn("xwiki");
+    }
+
+    @Test
+    public void getTasks() throws Exception
+    {
+        Task task = new Task();
+        task.setReference(this.taskReference);
+        task.setNumber(1);
+        task.setStatus("inProgress");
+        task.setAssignee(this.userReference);
+        task.setOwner(this.ownerReference);
+        task.setCreateDate(CREATE_DATE);
+        Task hiddenTask = new Task();
+        hiddenTask.setReference(this.hiddenTaskReference);
+        hiddenTask.setNumber(2);
+        hiddenTask.setOwner(this.ownerReference);
+        ArgumentCaptor<TaskQuery> queryCaptor = ArgumentCaptor.forClass(TaskQuery.class);
+        when(this.taskManager.findTasks(queryCaptor.capture()))
+            .thenReturn(new TaskQueryResult(Arrays.asList(task, hiddenTask), 2, "next"));
+
+        when(this.authorizationManager.hasAccess(Right.VIEW, this.taskReference)).thenReturn(true);
+        when(this.localSerializer.serialize(this.taskReference)).thenReturn("Sandbox.Task_1");
+        when(this.compactSerializer.serialize(this.ownerReference)).thenReturn("Sandbox.Owner");
+        when(this.compactSerializer.serialize(this.userReference)).thenReturn("xwiki:XWiki.User1");
+        when(this.wiki.getURL(this.taskReference, "view", this.context)).thenReturn("/view/Task_1");
+        when(this.wiki.getURL(this.ownerReference, "view", this.context)).thenReturn("/view/Owner");
+        when(this.wiki.getUserName("xwiki:XWiki.User1", null, true, this.context)).thenReturn("<a>User 1</a>");
+        when(this.dateCodec.formatDisplayDate(CREATE_DATE)).thenReturn("1970/01/01");
+        when(this.blockProcessor.createTaskMacroBlock(task, Syntax.XWIKI_2_1))
+            .thenReturn(new MacroBlock(Task.MACRO_NAME, Collections.emptyMap(), false));
+        when(this.blockProcessor.renderTaskContent(anyList(), eq(Syntax.XHTML_1_0))).thenReturn("<p>Task 1</p>");
+        when(this.localizationManager.getTranslationPlain("taskmanager.livetable.noRights")).thenReturn("No rights");
+
+        Response response = this.tasksResource.getTasks("wiki", 1, 15, Task.ASSIGNEE, "desc", 3, null, null,
+            "Sandbox", Arrays.asList("User", ""), null, null, null, null, null, null, null);
+
+        TaskQuery query = queryCaptor.getValue();
+        assertEquals("Sandbox", query.getOwner());
+        assertEquals(Arrays.asList("User", ""), query.getAssignees());
+        assertEquals(Task.ASSIGNEE, query.getSortField());
+        assertFalse(query.isAscending());
+        assertEquals(0, query.getOffset());
+        assertEquals(15, query.getLimit());
+        verify(this.context).setWikiId("wiki");
+        verify(this.context).setWikiId("xwiki");
+
+        // The data of the tasks that the user is not allowed to view is not disclosed.
+        assertEquals("{\"totalrows\":2,\"returnedrows\":2,\"offset\":1,\"reqNo\":3,\"continuation\":\"next\","
+            + "\"rows\":[{\"doc_viewable\":true,\"doc_fullName\":\"Sandbox.Task_1\",\"doc_url\":\"/view/Task_1\","
+            + "\"number\":1,\"status\":\"inProgress\",\"assignee\":\"<a>User 1</a>\",\"reporter\":\"\","
+            + "\"owner\":\"Sandbox.Owner\",\"owner_url\":\"/view/Owner\",\"duedate\":\"\","
+            + "\"createDate\":\"1970/01/01\",\"completeDate\":\"\",\"name\":\"<p>Task 1</p>\"},"
+            + "{\"doc_viewable\":false,\"name\":\"No rights\"}]}", write(response));
+    }
+
+    @Test
+    public void getTasksEscapesTheTextValues() throws Exception
+    {
+        String status = "<script>alert(1)</script>";
+        Task task = new Task();
+        task.setReference(this.taskReference);
+        task.setNumber(1);
+        task.setStatus(status);
+        task.setOwner(this.ownerReference);
+        when(this.taskManager.findTasks(any(TaskQuery.class)))
+            .thenReturn(new TaskQueryResult(Collections.singletonList(task), 1));
+        when(this.authorizationManager.hasAccess(Right.VIEW, this.taskReference)).thenReturn(true);
+        when(this.localSerializer.serialize(this.taskReference)).thenReturn("Sandbox.<Task>");
+        when(this.compactSerializer.serialize(this.ownerReference)).thenReturn("Sandbox.Owner");
+        when(this.blockProcessor.createTaskMacroBlock(task, Syntax.XWIKI_2_1))
+            .thenReturn(new MacroBlock(Task.MACRO_NAME, Collections.emptyMap(), false));
+
+        String json = write(this.tasksResource.getTasks("wiki", 1, 15, Task.NUMBER, "asc", 1, null, null, null,
+            null, null, null, null, null, null, null, null));
+
+        assertFalse(json.contains("<script>"));
+        assertTrue(json.contains("\"status\":\"" + XMLUtils.escape(status) + '"'));
+        assertTrue(json.contains("\"doc_fullName\":\"" + XMLUtils.escape("Sandbox.<Task>") + '"'));
+    }
+
+    @Test
+    public void getTasksWithUnknownSort() throws Exception
+    {
+        ArgumentCaptor<TaskQuery> queryCaptor = ArgumentCaptor.forClass(TaskQuery.class);
+        when(this.taskManager.findTasks(queryCaptor.capture()))
+            .thenReturn(new TaskQueryResult(Collections.emptyList(), 0));
+
+        Response response = this.tasksResource.getTasks("wiki", 31, 15, "location", "asc", 1, null, null, null,
+            null, null, null, null, null, null, null, null);
+
+        // The columns that can't be sorted are displayed in the order of the task numbers.
+        assertEquals(Task.NUMBER, queryCaptor.getValue().getSortField());
+        assertEquals(30, queryCaptor.getValue().getOffset());
+        assertEquals("{\"totalrows\":0,\"returnedrows\":0,\"offset\":31,\"reqNo\":1,\"continuation\":null,"
+            + "\"rows\":[]}", write(response));
+    }
+
+    @Test
+    public void changeTaskStatuses() throws Exception
+    {
+        DocumentReference doneTaskReference = new DocumentReference("wiki", "Sandbox", "Task_3");
+        WikiReference wikiReference = new WikiReference("wiki");
+        when(this.resolver.resolve("Sandbox.Task_1", wikiReference)).thenReturn(this.taskReference);
+        when(this.resolver.resolve("Private.Task_2", wikiReference)).thenReturn(this.hiddenTaskReference);
+        Task doneTask = new Task();
+        doneTask.setReference(doneTaskReference);
+        when(this.taskManager.getTasksByNumber(new HashSet<>(Arrays.asList(3, 99))))
+            .thenReturn(Collections.singletonMap(3, doneTask));
+        when(this.authorizationManager.hasAccess(Right.EDIT, this.taskReference)).thenReturn(true);
+        when(this.authorizationManager.hasAccess(Right.EDIT, doneTaskReference)).thenReturn(true);
+        XWikiDocument document = mockTaskDocument(this.taskReference, Task.STATUS_IN_PROGRESS);
+        XWikiDocument modifiedDocument = mock(XWikiDocument.class);
+        BaseObject modifiedTaskObject = mock(BaseObject.class);
+        when(document.clone()).thenReturn(modifiedDocument);
+        when(modifiedDocument.getXObject(any(EntityReference.class))).thenReturn(modifiedTaskObject);
+        XWikiDocument doneDocument = mockTaskDocument(doneTaskReference, Task.STATUS_DONE);
+
+        Response response = this.tasksResource.changeTaskStatuses("wiki", toStream("["
+            + "{\"reference\": \"Sandbox.Task_1\", \"status\": \"done\"},"
+            + "{\"reference\": \"Private.Task_2\", \"status\": \"done\"},"
+            + "{\"number\": 99, \"status\": \"done\"},"
+            + "{\"reference\": \"Sandbox.Task_1\", \"status\": \"closed\"},"
+            + "{\"number\": 3, \"status\": \"done\"}]"));
+
+        assertEquals("[{\"reference\":\"Sandbox.Task_1\",\"status\":\"done\",\"result\":\"ok\"},"
+            + "{\"reference\":\"Private.Task_2\",\"status\":\"done\",\"result\":\"forbidden\"},"
+            + "{\"number\":99,\"status\":\"done\",\"result\":\"notFound\"},"
+            + "{\"reference\":\"Sandbox.Task_1\",\"status\":\"closed\",\"result\":\"invalid\"},"
+            + "{\"number\":3,\"status\":\"done\",\"result\":\"ok\"}]", write(response));
+        verify(modifiedTaskObject).set(Task.STATUS, Task.STATUS_DONE, this.context);
+        verify(modifiedTaskObject).set(eq(Task.COMPLETE_DATE), any(Date.class), eq(this.context));
+        // The task that already has the requested status is not saved again.
+        verify(doneDocument, never()).clone();
+        verify(this.wiki).saveDocument(modifiedDocument, "Task status was updated.", this.context);
+        verify(this.wiki, times(1)).saveDocument(any(XWikiDocument.class), anyString(), any(XWikiContext.class));
+        // The owner pages are updated once, after all the tasks have been saved.
+        InOrder inOrder = inOrder(this.taskOwnerUpdater, this.wiki);
+        inOrder.verify(this.taskOwnerUpdater).startBatch();
+        inOrder.verify(this.wiki).saveDocument(modifiedDocument, "Task status was updated.", this.context);
+        inOrder.verify(this.taskOwnerUpdater).endBatch();
+        verify(this.taskOwnerUpdater, times(1)).startBatch();
+        verify(this.taskOwnerUpdater, times(1)).endBatch();
+        verify(this.context).setWikiId("xwiki");
+    }
+
+    @Test
+    public void changeTaskStatusesOfAnotherWiki() throws Exception
+    {
+        DocumentReference otherWikiTaskReference = new DocumentReference("otherwiki", "Sandbox", "Task_1");
+        when(this.resolver.resolve("otherwiki:Sandbox.Task_1", new WikiReference("wiki")))
+            .thenReturn(otherWikiTaskReference);
+        when(this.authorizationManager.hasAccess(Right.EDIT, otherWikiTaskReference)).thenReturn(true);
+
+        Response response = this.tasksResource.changeTaskStatuses("wiki",
+            toStream("[{\"reference\": \"otherwiki:Sandbox.Task_1\", \"status\": \"done\"}]"));
+
+        assertEquals("[{\"reference\":\"otherwiki:Sandbox.Task_1\",\"status\":\"done\",\"result\":\"invalid\"}]",
+            write(response));
+        verify(this.wiki, never()).getDocument(otherWikiTaskReference, this.context);
+        verify(this.wiki, never()).saveDocument(any(XWikiDocument.class), anyString(), any(XWikiContext.class));
+    }
+
+    @Test
+    public void changeTaskStatusesWithTooManyChanges() throws Exception
+    {
+        StringBuilder changes = new StringBuilder("[{}");
+        for (int i = 1; i < 1000; i++) {
+            changes.append(", {}");
+        }
+
+        Response response = this.tasksResource.changeTaskStatuses("wiki", toStream(changes + "]"));
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        verify(this.taskOwnerUpdater).startBatch();
+
+        response = this.tasksResource.changeTaskStatuses("wiki", toStream(changes + ", {}]"));
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        verify(this.taskOwnerUpdater, times(1)).startBatch();
+        verify(this.wiki, never()).getDocument(any(DocumentReference.class), any(XWikiContext.class));
+    }
+
+    private XWikiDocument mockTaskDocument(DocumentReference reference, String status) throws XWikiException
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        BaseObject taskObject = mock(BaseObject.class);
+        when(this.wiki.getDocument(reference, this.context)).thenReturn(document);
+        when(document.getXObject(any(EntityReference.class))).thenReturn(taskObject);
+        when(taskObject.getStringValue(Task.STATUS)).thenReturn(status);
+        return document;
+    }
+
+    private InputStream toStream(String body)
+    {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String write(Response response) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -21,6 +21,9 @@
 package com.xwiki.taskmanager;
 
 import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.inject.Provider;
 
@@ -42,6 +45,7 @@ import com.xpn.xwiki.XWikiContext;
 import com.xwiki.taskmanager.model.Task;
 import com.xwiki.taskmanager.script.TaskManagerScriptService;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
 /**
@@ -102,6 +106,17 @@ public class IntegrationTests
         when(taskManager.getTask(1)).thenReturn(task);
         when(taskManager.getTask(ref1)).thenReturn(task);
         when(taskManager.getTask(ref2)).thenReturn(task2);
+        when(taskManager.getTasksByNumber(any())).thenAnswer(invocation -> {
+            Map<Integer, Task> tasks = new HashMap<>();
+            for (Integer number : invocation.<Collection<Integer>>getArgument(0)) {
+                if (number == task.getNumber()) {
+                    tasks.put(number, task);
+                } else if (number == task2.getNumber()) {
+                    tasks.put(number, task2);
+                }
+            }
+            return tasks;
+        });
         when(context.getUserReference()).thenReturn(user);
         when(authorizationManager.hasAccess(Right.VIEW, ref1)).thenReturn(true);
         when(authorizationManager.hasAccess(Right.VIEW, ref2)).thenReturn(true);
@@ -0,0 +1,123 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xwiki.taskmanager.internal.LocalTaskNumberAllocator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class LocalTaskNumberAllocatorTest
+{
+    private static final String LAST_RESERVED_NUMBER = "lastReservedNumber";
+
+    private static final String WIKI = "xwiki";
+
+    @InjectMockComponents
+    private LocalTaskNumberAllocator allocator;
+
+    @MockComponent
+    private Provider<QueryManager> queryManagerProvider;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @Mock
+    private QueryManager queryManager;
+
+    @Mock
+    private Query query;
+
+    @Mock
+    private XWikiContext context;
+
+    @Mock
+    private XWiki wiki;
+
+    @Mock
+    private XWikiDocument counterDoc;
+
+    @Mock
+    private BaseObject counterObj;
+
+    @BeforeEach
+    public void setup() throws XWikiException
+    {
+        when(this.contextProvider.get()).thenReturn(this.context);
+        when(this.context.getWiki()).thenReturn(this.wiki);
+        when(this.wiki.getDocument(any(DocumentReference.class), eq(this.context))).thenReturn(this.counterDoc);
+        when(this.counterDoc.clone()).thenReturn(this.counterDoc);
+        when(this.counterDoc.getXObject(any(EntityReference.class), eq(true), eq(this.context)))
+            .thenReturn(this.counterObj);
+        when(this.queryManagerProvider.get()).thenReturn(this.queryManager);
+        when(this.queryManager.createQuery(anyString(), eq(Query.XWQL))).thenReturn(this.query);
+        when(this.query.setWiki(WIKI)).thenReturn(this.query);
+    }
+
+    @Test
+    public void reserveSeedsFromTheExistingTasks() throws TaskException, XWikiException
+    {
+        when(this.query.execute()).thenReturn(Collections.singletonList(7));
+        when(this.counterObj.getIntValue(LAST_RESERVED_NUMBER)).thenReturn(0);
+
+        assertEquals(8, this.allocator.reserve(WIKI, 100));
+
+        verify(this.wiki).getDocument(new DocumentReference(WIKI, Arrays.asList("TaskManager", "Code"),
+            "TaskCounter"), this.context);
+        verify(this.counterObj).setIntValue(LAST_RESERVED_NUMBER, 107);
+        verify(this.wiki).saveDocument(this.counterDoc, "Reserved task numbers.", true, this.context);
+    }
+
+    @Test
+    public void reserveAfterRestart() throws TaskException
+    {
+        when(this.query.execute()).thenReturn(Collections.singletonList(null));
+        when(this.counterObj.getIntValue(LAST_RESERVED_NUMBER)).thenReturn(300);
+
+        assertEquals(301, this.allocator.reserve(WIKI, 100));
+        verify(this.counterObj).setIntValue(LAST_RESERVED_NUMBER, 400);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.macro.MacroContentParser;
+import org.xwiki.rendering.macro.MacroExecutionException;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xwiki.taskmanager.internal.TaskBlockProcessor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class TaskBlockProcessorTest
+{
+    @InjectMockComponents
+    private TaskBlockProcessor taskBlockProcessor;
+
+    @MockComponent
+    private MacroContentParser contentParser;
+
+    @MockComponent
+    private Execution execution;
+
+    @BeforeEach
+    public void setup() throws MacroExecutionException
+    {
+        when(this.execution.getContext()).thenReturn(new ExecutionContext());
+        when(this.contentParser.parse(anyString(), any(MacroTransformationContext.class), anyBoolean(), anyBoolean()))
+            .thenAnswer(invocation -> new XDOM(Collections.singletonList(new WordBlock(invocation.getArgument(0)))));
+    }
+
+    @Test
+    public void getTaskContentXDOMIsMemoized() throws TaskException, MacroExecutionException
+    {
+        MacroBlock firstMacro = new MacroBlock(Task.MACRO_NAME, Collections.emptyMap(), "Content", false);
+        MacroBlock secondMacro = new MacroBlock(Task.MACRO_NAME, Collections.emptyMap(), "Content", false);
+        MacroBlock otherMacro = new MacroBlock(Task.MACRO_NAME, Collections.emptyMap(), "Other", false);
+
+        XDOM first = this.taskBlockProcessor.getTaskContentXDOM(firstMacro, Syntax.XWIKI_2_1);
+        XDOM second = this.taskBlockProcessor.getTaskContentXDOM(secondMacro, Syntax.XWIKI_2_1);
+        this.taskBlockProcessor.getTaskContentXDOM(otherMacro, Syntax.XWIKI_2_1);
+        this.taskBlockProcessor.getTaskContentXDOM(firstMacro, Syntax.PLAIN_1_0);
+
+        // The callers receive copies that they can modify.
+        assertNotSame(first, second);
+        assertEquals(((WordBlock) first.getChildren().get(0)).getWord(),
+            ((WordBlock) second.getChildren().get(0)).getWord());
+        verify(this.contentParser, times(3)).parse(anyString(), any(MacroTransformationContext.class), anyBoolean(),
+            anyBoolean());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager.internal;
+package com.xwiki.taskmanager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Named;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xwiki.taskmanager.internal.TaskCache;
+import com.xwiki.taskmanager.model.Task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that the tasks loaded concurrently with an invalidation of their page are not cached.
+ */
+@ComponentTest
+public class TaskCacheTest
+{
+    @InjectMockComponents
+    private TaskCache taskCache;
+
+    @MockComponent
+    private CacheManager cacheManager;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @MockComponent
+    private EntityReferenceSerializer<String> serializer;
+
+    @SuppressWarnings("unchecked")
+    private final Cache<Task> cache = mock(Cache.class);
+
+    private final Map<String, Task> entries = new ConcurrentHashMap<>();
+
+    private final DocumentReference task1 = new DocumentReference("wiki", "Sandbox", "Task_1");
+
+    @BeforeComponent
+    public void configure() throws CacheException
+    {
+        when(this.cacheManager.<Task>createNewCache(any())).thenReturn(this.cache);
+        when(this.cache.get(anyString())).thenAnswer(invocation -> this.entries.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> this.entries.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(this.cache).set(anyString(), any());
+        doAnswer(invocation -> this.entries.remove(invocation.<String>getArgument(0))).when(this.cache)
+            .remove(anyString());
+    }
+
+    @BeforeEach
+    public void setup()
+    {
+        when(this.serializer.serialize(this.task1)).thenReturn("wiki:Sandbox.Task_1");
+    }
+
+    @Test
+    public void put()
+    {
+        this.taskCache.put(createTask(this.task1), this.taskCache.getGeneration());
+
+        assertEquals(1, this.taskCache.get(this.task1).getNumber());
+    }
+
+    @Test
+    public void putTaskLoadedBeforeInvalidation()
+    {
+        long generation = this.taskCache.getGeneration();
+        // The page is saved while its task is being loaded, before the loaded task is cached.
+        this.taskCache.invalidate(this.task1);
+
+        this.taskCache.put(createTask(this.task1), generation);
+
+        assertNull(this.taskCache.get(this.task1));
+    }
+
+    @Test
+    public void putTaskInvalidatedWhileCaching()
+    {
+        long generation = this.taskCache.getGeneration();
+        // The page is saved right before the loaded task is stored, after the generation was checked.
+        doAnswer(invocation -> {
+            this.taskCache.invalidate(this.task1);
+            this.entries.put(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(this.cache).set(anyString(), any());
+
+        this.taskCache.put(createTask(this.task1), generation);
+
+        assertNull(this.taskCache.get(this.task1));
+    }
+
+    private Task createTask(DocumentReference reference)
+    {
+        Task task = new Task();
+        task.setReference(reference);
+        task.setNumber(1);
+        return task;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.taskmanager.internal.TaskDateCodec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class TaskDateCodecTest
+{
+    private static final String WIKI = "xwiki";
+
+    private static final String STORAGE_FORMAT = "yyyy/MM/dd HH:mm";
+
+    @InjectMockComponents
+    private TaskDateCodec dateCodec;
+
+    @MockComponent
+    private TaskManagerConfiguration configuration;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @Mock
+    private XWikiContext context;
+
+    @BeforeEach
+    public void setup()
+    {
+        when(this.contextProvider.get()).thenReturn(this.context);
+        when(this.context.getWikiId()).thenReturn(WIKI);
+        when(this.configuration.getStorageDateFormat()).thenReturn(STORAGE_FORMAT);
+        when(this.configuration.getDisplayDateFormat()).thenReturn("dd/MM/yyyy");
+    }
+
+    @Test
+    public void parseAndFormat() throws ParseException
+    {
+        Date date = new SimpleDateFormat(STORAGE_FORMAT).parse("2023/01/31 10:30");
+
+        assertEquals(date, this.dateCodec.parseStorageDate("2023/01/31 10:30"));
+        assertEquals("2023/01/31 10:30", this.dateCodec.formatStorageDate(date));
+        assertEquals("31/01/2023", this.dateCodec.formatDisplayDate(date));
+
+        // The configuration is read only once.
+        verify(this.configuration, times(1)).getStorageDateFormat();
+    }
+
+    @Test
+    public void invalidate()
+    {
+        Date date = new Date(0);
+        this.dateCodec.formatDisplayDate(date);
+
+        when(this.configuration.getDisplayDateFormat()).thenReturn("yyyy");
+        this.dateCodec.invalidate(WIKI);
+
+        assertEquals(new SimpleDateFormat("yyyy").format(date), this.dateCodec.formatDisplayDate(date));
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.bridge.event.DocumentCreatingEvent;
+import org.xwiki.bridge.event.DocumentDeletingEvent;
+import org.xwiki.bridge.event.DocumentUpdatingEvent;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.MacroBlockMatcher;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.objects.classes.BaseClass;
+import com.xpn.xwiki.test.MockitoOldcore;
+import com.xpn.xwiki.test.junit5.mockito.InjectMockitoOldcore;
+import com.xpn.xwiki.test.junit5.mockito.OldcoreTest;
+import com.xwiki.taskmanager.internal.AbstractTaskEventListener;
+import com.xwiki.taskmanager.internal.TaskMacroUpdateEventListener;
+import com.xwiki.taskmanager.internal.TaskNumberIndex;
+import com.xwiki.taskmanager.internal.TaskObjectUpdateEventListener;
+import com.xwiki.taskmanager.internal.TaskUpdateQueue;
+import com.xwiki.taskmanager.model.Task;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs owner page saves, task page saves and task page deletions in parallel through {@link
+ * TaskMacroUpdateEventListener} and {@link TaskObjectUpdateEventListener}, each thread with its own context as in
+ * separate requests, and checks the state of the pages afterwards. The documents are kept in memory and the saving
+ * events are sent to the listeners by the thread that saves the document, like {@link XWiki#saveDocument} does.
+ * <p>
+ * The pages must never end up with duplicate task numbers or with task macros that share a task page. The tasks whose
+ * status differs between their page and the macro of their owner are lost updates: they are reported, and fail the
+ * test only when the {@code taskmanager.stress.failOnLostUpdates} system property is set, since the listeners don't
+ * lock the pages they update.
+ * <p>
+ * The test takes a while so it is tagged as a stress test, that is only run with the {@code stress} profile:
+ * {@code mvn test -Pstress}.
+ *
+ * @version $Id$
+ */
+@Tag("stress")
+@OldcoreTest
+@AllComponents
+public class TaskEventListenersStressTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskEventListenersStressTest.class);
+
+    private static final String WIKI = "xwiki";
+
+    private static final String SPACE = "Stress";
+
+    private static final String IN_PROGRESS = "inProgress";
+
+    private static final String CREATE_DATE = "2023/01/01 10:00";
+
+    private static final int OWNER_COUNT = 4;
+
+    private static final int TASKS_PER_OWNER = 10;
+
+    private static final int EDITOR_THREADS = 4;
+
+    private static final int AUTOMATION_THREADS = 4;
+
+    private static final int OPERATIONS_PER_THREAD = 100;
+
+    @InjectMockitoOldcore
+    private MockitoOldcore oldcore;
+
+    @MockComponent
+    private TaskManager taskManager;
+
+    @MockComponent
+    private TaskCounter taskCounter;
+
+    @MockComponent
+    private TaskManagerConfiguration configuration;
+
+    @MockComponent
+    private TaskNumberIndex taskNumberIndex;
+
+    @MockComponent
+    private TaskUpdateQueue taskUpdateQueue;
+
+    @MockComponent
+    private TaskReferenceGenerator taskReferenceGenerator;
+
+    @MockComponent
+    private ContextualAuthorizationManager authorizationManager;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    private final Map<DocumentReference, XWikiDocument> documents = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<XWikiContext> threadContext = new ThreadLocal<>();
+
+    private final AtomicInteger numbers = new AtomicInteger();
+
+    private final List<DocumentReference> owners = new ArrayList<>();
+
+    private final List<DocumentReference> tasks = new ArrayList<>();
+
+    private EventListener macroListener;
+
+    private EventListener objectListener;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        when(this.configuration.getStorageDateFormat()).thenReturn("yyyy/MM/dd HH:mm");
+        when(this.configuration.getDisplayDateFormat()).thenReturn("yyyy/MM/dd HH:mm");
+        when(this.configuration.isAsyncUpdateEnabled()).thenReturn(false);
+        when(this.xwikiProperties.getProperty(anyString(), any(Object.class)))
+            .thenAnswer(invocation -> invocation.getArgument(1));
+        when(this.authorizationManager.hasAccess(any(Right.class), any())).thenReturn(true);
+        when(this.taskCounter.getNextNumber()).thenAnswer(invocation -> this.numbers.incrementAndGet());
+        when(this.taskManager.getTaskReferencesByOwner(any(DocumentReference.class)))
+            .thenAnswer(invocation -> getTaskReferencesByOwner(invocation.getArgument(0)));
+
+        // Each thread works with its own context, as if it handled a separate request.
+        Provider<XWikiContext> contextProvider = this.oldcore.getMocker().getInstance(XWikiContext.TYPE_PROVIDER);
+        XWikiContext mainContext = this.oldcore.getXWikiContext();
+        when(contextProvider.get()).thenAnswer(invocation -> {
+            XWikiContext context = this.threadContext.get();
+            return context != null ? context : mainContext;
+        });
+        mockStore(this.oldcore.getSpyXWiki());
+
+        this.macroListener = this.oldcore.getMocker().getInstance(EventListener.class,
+            TaskMacroUpdateEventListener.class.getName());
+        this.objectListener = this.oldcore.getMocker().getInstance(EventListener.class,
+            "TaskObjectUpdateEventListener");
+
+        createTaskClass();
+        for (int i = 0; i < OWNER_COUNT; i++) {
+            createOwner(i);
+        }
+    }
+
+    @Test
+    public void parallelOwnerAndTaskUpdates() throws Exception
+    {
+        List<Callable<Integer>> workers = new ArrayList<>();
+        for (int i = 0; i < EDITOR_THREADS; i++) {
+            long seed = i;
+            workers.add(() -> runAsRequest(seed, (random, i) -> editOwner(random), OPERATIONS_PER_THREAD));
+        }
+        for (int i = 0; i < AUTOMATION_THREADS; i++) {
+            long seed = 100 + i;
+            workers.add(() -> runAsRequest(seed, (random, i) -> flipTaskStatus(random), OPERATIONS_PER_THREAD));
+        }
+        // The first task of each owner is deleted while the other pages are being modified.
+        workers.add(() -> runAsRequest(0, (random, i) -> deleteTask(this.tasks.get(i * TASKS_PER_OWNER)),
+            OWNER_COUNT));
+
+        long start = System.nanoTime();
+        int operations = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        try {
+            for (Future<Integer> worker : executor.invokeAll(workers, 5, TimeUnit.MINUTES)) {
+                operations += worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long duration = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOGGER.info("[{}] operations in [{}] ms, [{}] operations per second.", operations, duration,
+            operations * 1000L / duration);
+
+        assertNoDuplicateNumbers();
+        assertNoDuplicateTaskPages();
+        checkLostUpdates();
+    }
+
+    private int runAsRequest(long seed, Operation operation, int count) throws Exception
+    {
+        Random random = new Random(seed);
+        this.threadContext.set(this.oldcore.getXWikiContext().clone());
+        try {
+            for (int i = 0; i < count; i++) {
+                operation.run(random, i);
+            }
+            return count;
+        } finally {
+            this.threadContext.remove();
+        }
+    }
+
+    private void editOwner(Random random) throws XWikiException
+    {
+        XWikiContext context = this.threadContext.get();
+        DocumentReference ownerReference = this.owners.get(random.nextInt(this.owners.size()));
+        XWikiDocument owner = context.getWiki().getDocument(ownerReference, context).clone();
+        XDOM content = owner.getXDOM();
+        List<MacroBlock> macros = content.getBlocks(new MacroBlockMatcher(Task.MACRO_NAME), Block.Axes.DESCENDANT);
+        if (macros.isEmpty()) {
+            return;
+        }
+        MacroBlock macro = macros.get(random.nextInt(macros.size()));
+        macro.setParameter(Task.STATUS, flip(macro.getParameter(Task.STATUS)));
+        owner.setContent(content);
+        context.getWiki().saveDocument(owner, "Edited the tasks.", context);
+    }
+
+    private void flipTaskStatus(Random random) throws XWikiException
+    {
+        XWikiContext context = this.threadContext.get();
+        DocumentReference taskReference = this.tasks.get(random.nextInt(this.tasks.size()));
+        XWikiDocument taskDocument = context.getWiki().getDocument(taskReference, context).clone();
+        BaseObject taskObject = taskDocument.getXObject(AbstractTaskEventListener.TASK_CLASS_REFERENCE);
+        if (taskDocument.isNew() || taskObject == null) {
+            return;
+        }
+        String status = flip(taskObject.getStringValue(Task.STATUS));
+        taskObject.set(Task.STATUS, status, context);
+        taskObject.set(Task.COMPLETE_DATE, Task.STATUS_DONE.equals(status) ? new Date() : null, context);
+        context.getWiki().saveDocument(taskDocument, "Task status was updated.", context);
+    }
+
+    private void deleteTask(DocumentReference taskReference) throws XWikiException
+    {
+        XWikiContext context = this.threadContext.get();
+        XWikiDocument taskDocument = context.getWiki().getDocument(taskReference, context);
+        if (!taskDocument.isNew()) {
+            context.getWiki().deleteDocument(taskDocument, context);
+        }
+    }
+
+    private void assertNoDuplicateNumbers()
+    {
+        Map<Integer, DocumentReference> numberedTasks = new HashMap<>();
+        for (XWikiDocument document : this.documents.values()) {
+            BaseObject taskObject = document.getXObject(AbstractTaskEventListener.TASK_CLASS_REFERENCE);
+            if (taskObject == null) {
+                continue;
+            }
+            int number = taskObject.getIntValue(Task.NUMBER, -1);
+            DocumentReference previous = numberedTasks.put(number, document.getDocumentReference());
+            assertTrue(previous == null, String.format("The tasks [%s] and [%s] have the same number [%d].",
+                previous, document.getDocumentReference(), number));
+        }
+    }
+
+    private void assertNoDuplicateTaskPages() throws XWikiException
+    {
+        Set<DocumentReference> macroTasks = new HashSet<>();
+        for (DocumentReference ownerReference : this.owners) {
+            for (MacroBlock macro : getTaskMacros(ownerReference)) {
+                DocumentReference taskReference = getTaskReference(macro, ownerReference);
+                assertTrue(macroTasks.add(taskReference),
+                    String.format("The task page [%s] is used by several task macros.", taskReference));
+            }
+        }
+    }
+
+    private void checkLostUpdates() throws XWikiException
+    {
+        List<String> lostUpdates = new ArrayList<>();
+        for (DocumentReference ownerReference : this.owners) {
+            for (MacroBlock macro : getTaskMacros(ownerReference)) {
+                XWikiDocument taskDocument = this.documents.get(getTaskReference(macro, ownerReference));
+                BaseObject taskObject = taskDocument == null ? null
+                    : taskDocument.getXObject(AbstractTaskEventListener.TASK_CLASS_REFERENCE);
+                String pageStatus = taskObject == null ? null : taskObject.getStringValue(Task.STATUS);
+                if (!Objects.equals(macro.getParameter(Task.STATUS), pageStatus)) {
+                    lostUpdates.add(String.format("[%s] is [%s] in [%s] but [%s] in its page",
+                        macro.getParameter(Task.REFERENCE), macro.getParameter(Task.STATUS), ownerReference,
+                        pageStatus));
+                }
+            }
+        }
+        if (!lostUpdates.isEmpty()) {
+            LOGGER.warn("[{}] lost updates: {}", lostUpdates.size(), lostUpdates);
+        }
+        if (Boolean.getBoolean("taskmanager.stress.failOnLostUpdates")) {
+            assertEquals(new ArrayList<>(), lostUpdates);
+        }
+    }
+
+    private List<MacroBlock> getTaskMacros(DocumentReference ownerReference) throws XWikiException
+    {
+        return this.documents.get(ownerReference).getXDOM()
+            .getBlocks(new MacroBlockMatcher(Task.MACRO_NAME), Block.Axes.DESCENDANT);
+    }
+
+    private DocumentReference getTaskReference(MacroBlock macro, DocumentReference ownerReference)
+    {
+        return new DocumentReference(macro.getParameter(Task.REFERENCE).substring(SPACE.length() + 1),
+            ownerReference.getLastSpaceReference());
+    }
+
+    private Collection<DocumentReference> getTaskReferencesByOwner(DocumentReference ownerReference)
+    {
+        // The owner is stored as an absolute reference.
+        String owner = ownerReference.toString();
+        List<DocumentReference> ownedTasks = new ArrayList<>();
+        for (XWikiDocument document : this.documents.values()) {
+            BaseObject taskObject = document.getXObject(AbstractTaskEventListener.TASK_CLASS_REFERENCE);
+            if (taskObject != null && owner.equals(taskObject.getLargeStringValue(Task.OWNER))) {
+                ownedTasks.add(document.getDocumentReference());
+            }
+        }
+        return ownedTasks;
+    }
+
+    /**
+     * Keep the documents in memory and send the saving events to the listeners, in the thread that saves them.
+     */
+    private void mockStore(XWiki wiki) throws XWikiException
+    {
+        doAnswer(invocation -> {
+            DocumentReference reference = invocation.getArgument(0);
+            XWikiDocument document = this.documents.get(reference);
+            return document != null ? document.clone() : new XWikiDocument(reference);
+        }).when(wiki).getDocument(any(DocumentReference.class), any(XWikiContext.class));
+
+        doAnswer(invocation -> {
+            XWikiDocument document = invocation.getArgument(0);
+            XWikiContext context = invocation.getArgument(3);
+            DocumentReference reference = document.getDocumentReference();
+            notify(document.isNew() ? new DocumentCreatingEvent(reference) : new DocumentUpdatingEvent(reference),
+                document, context);
+            XWikiDocument savedDocument = document.clone();
+            savedDocument.setNew(false);
+            this.documents.put(reference, savedDocument);
+            return null;
+        }).when(wiki).saveDocument(any(XWikiDocument.class), anyString(), anyBoolean(), any(XWikiContext.class));
+
+        doAnswer(invocation -> {
+            XWikiDocument document = invocation.getArgument(0);
+            XWikiContext context = invocation.getArgument(1);
+            notify(new DocumentDeletingEvent(document.getDocumentReference()), document, context);
+            this.documents.remove(document.getDocumentReference());
+            return null;
+        }).when(wiki).deleteDocument(any(XWikiDocument.class), any(XWikiContext.class));
+    }
+
+    private void notify(Event event, XWikiDocument document, XWikiContext context)
+    {
+        // In the order in which the listeners are registered.
+        this.macroListener.onEvent(event, document, context);
+        this.objectListener.onEvent(event, document, context);
+    }
+
+    private void createTaskClass()
+    {
+        XWikiDocument classDocument = new XWikiDocument(
+            new DocumentReference(AbstractTaskEventListener.TASK_CLASS_REFERENCE, new WikiReference(WIKI)));
+        BaseClass taskClass = classDocument.getXClass();
+        taskClass.addTextField(Task.NAME, Task.NAME, 30);
+        taskClass.addTextField(Task.STATUS, Task.STATUS, 30);
+        taskClass.addTextField(Task.REPORTER, Task.REPORTER, 30);
+        taskClass.addTextAreaField(Task.ASSIGNEE, Task.ASSIGNEE, 30, 1);
+        taskClass.addTextAreaField(Task.OWNER, Task.OWNER, 30, 1);
+        taskClass.addNumberField(Task.NUMBER, Task.NUMBER, 10, "integer");
+        taskClass.addDateField(Task.CREATE_DATE, Task.CREATE_DATE);
+        taskClass.addDateField(Task.DUE_DATE, Task.DUE_DATE);
+        taskClass.addDateField(Task.COMPLETE_DATE, Task.COMPLETE_DATE);
+        classDocument.setNew(false);
+        this.documents.put(classDocument.getDocumentReference(), classDocument);
+    }
+
+    private void createOwner(int ownerIndex) throws XWikiException
+    {
+        XWikiContext context = this.oldcore.getXWikiContext();
+        DocumentReference ownerReference = new DocumentReference(WIKI, SPACE, "Owner_" + ownerIndex);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < TASKS_PER_OWNER; i++) {
+            String taskName = String.format("Task_%d_%d", ownerIndex, i);
+            DocumentReference taskReference = new DocumentReference(WIKI, SPACE, taskName);
+            content.append(String.format("{{task reference=\"%s.%s\" status=\"%s\" reporter=\"XWiki.Admin\" "
+                + "createDate=\"%s\"}}%nTask %d of %s%n{{/task}}%n%n", SPACE, taskName, IN_PROGRESS, CREATE_DATE, i,
+                ownerReference.getName()));
+
+            XWikiDocument taskDocument = new XWikiDocument(taskReference);
+            BaseObject taskObject = taskDocument.newXObject(AbstractTaskEventListener.TASK_CLASS_REFERENCE, context);
+            taskObject.set(Task.NAME, String.format("Task %d of %s", i, ownerReference.getName()), context);
+            taskObject.set(Task.STATUS, IN_PROGRESS, context);
+            taskObject.set(Task.REPORTER, "XWiki.Admin", context);
+            taskObject.set(Task.OWNER, ownerReference.toString(), context);
+            taskObject.set(Task.NUMBER, this.numbers.incrementAndGet(), context);
+            taskDocument.setNew(false);
+            this.documents.put(taskReference, taskDocument);
+            this.tasks.add(taskReference);
+        }
+        XWikiDocument ownerDocument = new XWikiDocument(ownerReference);
+        ownerDocument.setSyntax(Syntax.XWIKI_2_1);
+        ownerDocument.setContent(content.toString());
+        ownerDocument.setNew(false);
+        this.documents.put(ownerReference, ownerDocument);
+        this.owners.add(ownerReference);
+    }
+
+    private String flip(String status)
+    {
+        return Task.STATUS_DONE.equals(status) ? IN_PROGRESS : Task.STATUS_DONE;
+    }
+
+    /**
+     * An operation run repeatedly by a worker thread.
+     */
+    @FunctionalInterface
+    private interface Operation
+    {
+        void run(Random random, int iteration) throws Exception;
+    }
+}
@@ -20,12 +20,19 @@ package com.xwiki.taskmanager;
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.function.Consumer;
+
+import javax.inject.Named;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.xwiki.bridge.event.DocumentDeletingEvent;
 import org.xwiki.bridge.event.DocumentUpdatingEvent;
@@ -43,22 +50,26 @@ import org.xwiki.test.junit5.mockito.MockComponent;
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
-import com.xpn.xwiki.doc.DocumentRevisionProvider;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xwiki.taskmanager.internal.AbstractTaskEventListener;
 import com.xwiki.taskmanager.internal.TaskMacroUpdateEventListener;
+import com.xwiki.taskmanager.internal.TaskUpdateQueue;
 import com.xwiki.taskmanager.internal.TaskXDOMProcessor;
 import com.xwiki.taskmanager.model.Task;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ComponentTest
 public class TaskMacroUpdateEventListenerTest
 {
-    private static final String DOC_PREV_VERSION = "1";
-
     private static final String TASK_NAME = "Hello there";
 
     @InjectMockComponents
@@ -68,10 +79,11 @@ public class TaskMacroUpdateEventListenerTest
     private ContextualAuthorizationManager authorizationManager;
 
     @MockComponent
-    private DocumentRevisionProvider revisionProvider;
+    @Named("compactwiki")
+    private EntityReferenceSerializer<String> serializer;
 
     @MockComponent
-    private EntityReferenceSerializer<String> serializer;
+    private EntityReferenceSerializer<String> ownerSerializer;
 
     @MockComponent
     private TaskManager taskManager;
@@ -79,6 +91,12 @@ public class TaskMacroUpdateEventListenerTest
     @MockComponent
     private TaskXDOMProcessor taskXDOMProcessor;
 
+    @MockComponent
+    private TaskManagerConfiguration configuration;
+
+    @MockComponent
+    private TaskUpdateQueue taskUpdateQueue;
+
     @MockComponent
     private DocumentReferenceResolver<String> resolver;
 
@@ -97,15 +115,9 @@ public class TaskMacroUpdateEventListenerTest
     @Mock
     private XWikiDocument task_1Doc;
 
-    @Mock
-    private XWikiDocument prevVersionDoc;
-
     @Mock
     private XDOM docXDOM;
 
-    @Mock
-    private XDOM prevVersionDocXDOM;
-
     @Mock
     private MacroBlock macro1;
 
@@ -135,11 +147,7 @@ public class TaskMacroUpdateEventListenerTest
         when(this.context.getWiki()).thenReturn(this.wiki);
         when(this.docWithTasks.getDocumentReference()).thenReturn(this.pageWithMacro);
         when(this.docWithTasks.getXDOM()).thenReturn(this.docXDOM);
-        when(this.docWithTasks.getPreviousVersion()).thenReturn(DOC_PREV_VERSION);
-        when(this.revisionProvider.getRevision(this.docWithTasks, DOC_PREV_VERSION)).thenReturn(this.prevVersionDoc);
-        when(this.prevVersionDoc.getXDOM()).thenReturn(this.prevVersionDocXDOM);
         when(this.docWithTasks.clone()).thenReturn(this.docWithTasks);
-        when(this.prevVersionDoc.clone()).thenReturn(this.prevVersionDoc);
         when(this.taskDoc.clone()).thenReturn(this.taskDoc);
         when(this.task_1Doc.clone()).thenReturn(this.task_1Doc);
         when(this.wiki.getDocument(this.pageWithMacro, this.context)).thenReturn(this.docWithTasks);
@@ -153,6 +161,7 @@ public class TaskMacroUpdateEventListenerTest
         when(this.taskObj.getLargeStringValue(Task.OWNER)).thenReturn(this.pageWithMacro.toString());
         when(this.task_1Obj.getLargeStringValue(Task.OWNER)).thenReturn(this.pageWithMacro.toString());
         when(this.resolver.resolve(this.pageWithMacro.toString(), this.taskPage)).thenReturn(this.pageWithMacro);
+        when(this.ownerSerializer.serialize(this.pageWithMacro)).thenReturn(this.pageWithMacro.toString());
         when(this.resolver.resolve(this.pageWithMacro.toString(), this.taskPage_1)).thenReturn(this.pageWithMacro);
 
         task_1.setReference(taskPage_1);
@@ -187,20 +196,109 @@ public class TaskMacroUpdateEventListenerTest
     }
 
     @Test
-    public void onUpdatingWithRemovedTaskEvent() throws XWikiException
+    public void onDeletingTaskPageOfDeletedOwner() throws TaskException
+    {
+        when(this.context.get("taskmanager.deletedOwner")).thenReturn(this.pageWithMacro);
+        when(this.taskDoc.getXObject(AbstractTaskEventListener.TASK_CLASS_REFERENCE)).thenReturn(this.taskObj);
+
+        this.eventListener.onEvent(new DocumentDeletingEvent(), this.taskDoc, this.context);
+
+        verify(this.taskManager, never()).deleteTasksByOwner(any(DocumentReference.class));
+    }
+
+    @Test
+    public void onUpdatingWithRemovedTaskEvent() throws XWikiException, TaskException
     {
         when(this.taskXDOMProcessor.extract(this.docXDOM, this.pageWithMacro)).thenReturn(
             new ArrayList<>(Collections.singletonList(task)));
-        when(this.taskXDOMProcessor.extract(this.prevVersionDocXDOM, this.pageWithMacro)).thenReturn(
-            new ArrayList<>(Collections.singletonList(task_1)));
+        when(this.taskManager.getTaskReferencesByOwner(this.pageWithMacro)).thenReturn(
+            Arrays.asList(this.taskPage, this.taskPage_1));
         when(this.taskDoc.isNew()).thenReturn(true);
         when(this.authorizationManager.hasAccess(Right.EDIT, taskPage)).thenReturn(true);
         when(this.authorizationManager.hasAccess(Right.DELETE, taskPage_1)).thenReturn(true);
 
         this.eventListener.onEvent(new DocumentUpdatingEvent(), this.docWithTasks, this.context);
 
-        verify(this.taskObj).set(Task.OWNER, this.pageWithMacro, this.context);
+        verify(this.taskObj).set(Task.OWNER, this.pageWithMacro.toString(), this.context);
         verify(this.wiki).saveDocument(this.taskDoc, "Task updated!", this.context);
         verify(this.wiki).deleteDocument(this.task_1Doc, this.context);
+        verify(this.wiki, never()).deleteDocument(this.taskDoc, this.context);
+    }
+
+    @Test
+    public void onUpdatingWithUnchangedTaskEvent() throws XWikiException
+    {
+        mockSavedTask(Task.STATUS_DONE);
+
+        this.eventListener.onEvent(new DocumentUpdatingEvent(), this.docWithTasks, this.context);
+
+        verify(this.wiki, never()).saveDocument(any(XWikiDocument.class), anyString(), any(XWikiContext.class));
+        assertEquals(1, this.eventListener.getSkippedSaveCount());
+    }
+
+    @Test
+    public void onUpdatingWithChangedTaskEvent() throws XWikiException
+    {
+        mockSavedTask("inProgress");
+
+        this.eventListener.onEvent(new DocumentUpdatingEvent(), this.docWithTasks, this.context);
+
+        verify(this.taskObj).set(Task.STATUS, Task.STATUS_DONE, this.context);
+        verify(this.wiki).saveDocument(this.taskDoc, "Task updated!", this.context);
+        assertEquals(0, this.eventListener.getSkippedSaveCount());
+    }
+
+    @Test
+    public void onUpdatingWithLegacyOwnerEvent() throws XWikiException
+    {
+        mockSavedTask(Task.STATUS_DONE);
+        // The owner was stored relative to the task page by the previous versions.
+        when(this.taskObj.getLargeStringValue(Task.OWNER)).thenReturn("Home");
+        when(this.resolver.resolve("Home", this.taskPage)).thenReturn(this.pageWithMacro);
+
+        this.eventListener.onEvent(new DocumentUpdatingEvent(), this.docWithTasks, this.context);
+
+        verify(this.taskObj).set(Task.OWNER, this.pageWithMacro.toString(), this.context);
+        verify(this.wiki).saveDocument(this.taskDoc, "Task updated!", this.context);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void onUpdatingWithAsyncUpdateEvent() throws XWikiException
+    {
+        mockSavedTask("inProgress");
+        when(this.configuration.isAsyncUpdateEnabled()).thenReturn(true);
+
+        this.eventListener.onEvent(new DocumentUpdatingEvent(), this.docWithTasks, this.context);
+
+        ArgumentCaptor<Consumer<XWikiContext>> updateCaptor = ArgumentCaptor.forClass(Consumer.class);
+        // The queued updates of the previous content are dropped before the new ones are queued.
+        InOrder inOrder = inOrder(this.taskUpdateQueue);
+        inOrder.verify(this.taskUpdateQueue).discard(this.pageWithMacro);
+        inOrder.verify(this.taskUpdateQueue).enqueue(eq(this.taskPage), eq(this.pageWithMacro),
+            updateCaptor.capture());
+        verify(this.wiki, never()).saveDocument(any(XWikiDocument.class), anyString(), any(XWikiContext.class));
+
+        // The update is applied later, by the worker of the queue.
+        updateCaptor.getValue().accept(this.context);
+
+        verify(this.wiki).saveDocument(this.taskDoc, "Task updated!", this.context);
+    }
+
+    private void mockSavedTask(String status)
+    {
+        when(this.taskXDOMProcessor.extract(this.docXDOM, this.pageWithMacro)).thenReturn(
+            new ArrayList<>(Collections.singletonList(task)));
+        when(this.authorizationManager.hasAccess(Right.EDIT, taskPage)).thenReturn(true);
+        when(this.serializer.serialize(this.adminRef)).thenReturn("XWiki.Admin");
+        when(this.taskDoc.isNew()).thenReturn(false);
+        when(this.taskObj.getStringValue(Task.NAME)).thenReturn(TASK_NAME);
+        when(this.taskObj.getStringValue(Task.STATUS)).thenReturn(status);
+        when(this.taskObj.getStringValue(Task.REPORTER)).thenReturn("XWiki.Admin");
+        when(this.taskObj.getStringValue(Task.ASSIGNEE)).thenReturn("XWiki.Admin");
+        // The saved dates are loaded as timestamps.
+        when(this.taskObj.getDateValue(Task.CREATE_DATE)).thenReturn(new Timestamp(this.date1.getTime()));
+        when(this.taskObj.getDateValue(Task.DUE_DATE)).thenReturn(new Timestamp(this.date1.getTime()));
+        when(this.taskObj.getDateValue(Task.COMPLETE_DATE)).thenReturn(new Timestamp(this.date1.getTime()));
     }
 }
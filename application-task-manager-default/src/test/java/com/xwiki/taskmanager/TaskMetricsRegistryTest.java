@@ -0,0 +1,84 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+
+import com.xwiki.taskmanager.internal.TaskMetricStatistics;
+import com.xwiki.taskmanager.internal.TaskMetricsRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ComponentTest
+public class TaskMetricsRegistryTest
+{
+    private static final String METRIC = "macroListener.tasksPerSave";
+
+    @InjectMockComponents
+    private TaskMetricsRegistry registry;
+
+    @Test
+    public void record()
+    {
+        for (int i = 1; i <= 100; i++) {
+            this.registry.record(METRIC, i);
+        }
+
+        TaskMetricStatistics statistics = this.registry.getMetrics().get(METRIC);
+        assertEquals(100, statistics.getCount());
+        assertEquals(50.5, statistics.getMean());
+        assertEquals(50, statistics.getP50());
+        assertEquals(99, statistics.getP99());
+        assertEquals(100, statistics.getMax());
+    }
+
+    @Test
+    public void percentilesUseTheRecentValues()
+    {
+        for (int i = 0; i < 2000; i++) {
+            this.registry.record(METRIC, i < 1000 ? 1000 : 1);
+        }
+
+        TaskMetricStatistics statistics = this.registry.getMetrics().get(METRIC);
+        assertEquals(2000, statistics.getCount());
+        assertEquals(1000, statistics.getMax());
+        // Only the last 1024 values are kept, 24 of them being from the slow period.
+        assertEquals(1, statistics.getP50());
+        assertEquals(1000, statistics.getP99());
+    }
+
+    @Test
+    public void reset()
+    {
+        this.registry.record(METRIC, 1);
+        this.registry.recordDuration("manager.getTask", System.nanoTime());
+
+        Map<String, TaskMetricStatistics> metrics = this.registry.getMetrics();
+        assertEquals(2, metrics.size());
+
+        this.registry.reset();
+        assertTrue(this.registry.getMetrics().isEmpty());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.taskmanager.internal.TaskNumberIndex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class TaskNumberIndexTest
+{
+    private static final String WIKI = "wiki";
+
+    @InjectMockComponents
+    private TaskNumberIndex taskNumberIndex;
+
+    @MockComponent
+    private Provider<QueryManager> queryManagerProvider;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    private DocumentReferenceResolver<String> resolver;
+
+    @Mock
+    private QueryManager queryManager;
+
+    @Mock
+    private Query query;
+
+    @Mock
+    private XWikiContext context;
+
+    private final DocumentReference task1 = new DocumentReference(WIKI, "Sandbox", "Task_1");
+
+    private final DocumentReference task2 = new DocumentReference(WIKI, "Sandbox", "Task_2");
+
+    @BeforeEach
+    public void setup() throws QueryException
+    {
+        when(this.contextProvider.get()).thenReturn(this.context);
+        when(this.context.getWikiId()).thenReturn(WIKI);
+        when(this.queryManagerProvider.get()).thenReturn(this.queryManager);
+        when(this.queryManager.createQuery(anyString(), anyString())).thenReturn(this.query);
+        when(this.query.setWiki(WIKI)).thenReturn(this.query);
+        when(this.query.execute()).thenReturn(Arrays.asList(new Object[] { "Sandbox.Task_1", 1 },
+            new Object[] { "Sandbox.Task_2", 2 }, new Object[] { "Sandbox.Task_3", null }));
+        when(this.resolver.resolve("Sandbox.Task_1", new WikiReference(WIKI))).thenReturn(this.task1);
+        when(this.resolver.resolve("Sandbox.Task_2", new WikiReference(WIKI))).thenReturn(this.task2);
+    }
+
+    @Test
+    public void getLoadsTheIndexOnce() throws QueryException
+    {
+        assertEquals(this.task1, this.taskNumberIndex.get(1));
+        assertEquals(this.task2, this.taskNumberIndex.get(2));
+        assertNull(this.taskNumberIndex.get(3));
+
+        verify(this.query, times(1)).execute();
+    }
+
+    @Test
+    public void putAndRemove()
+    {
+        DocumentReference task3 = new DocumentReference(WIKI, "Sandbox", "Task_3");
+
+        // Entries added before the index is loaded are ignored since the load will retrieve them.
+        this.taskNumberIndex.put(3, task3);
+        assertNull(this.taskNumberIndex.get(3));
+
+        this.taskNumberIndex.put(3, task3);
+        assertEquals(task3, this.taskNumberIndex.get(3));
+
+        // The entry is removed only if it still points to the same page.
+        this.taskNumberIndex.remove(1, this.task2);
+        assertEquals(this.task1, this.taskNumberIndex.get(1));
+        this.taskNumberIndex.remove(1, this.task1);
+        assertNull(this.taskNumberIndex.get(1));
+    }
+
+    @Test
+    public void preload() throws QueryException
+    {
+        DocumentReference task7 = new DocumentReference(WIKI, "Sandbox", "Task_7");
+        this.taskNumberIndex.preload(WIKI, Collections.singletonMap(7, task7));
+
+        assertEquals(task7, this.taskNumberIndex.get(7));
+        assertNull(this.taskNumberIndex.get(1));
+        verify(this.query, never()).execute();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.xwiki.taskmanager.internal.TaskNumberSequence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the task number sequence against an in-memory database, with concurrent transactions playing the role of
+ * the nodes of a cluster.
+ */
+public class TaskNumberSequenceTest
+{
+    private static final String URL = "jdbc:hsqldb:mem:taskmanager";
+
+    private static final int THREADS = 8;
+
+    private static final int RESERVATIONS = 200;
+
+    private static final int BLOCK_SIZE = 100;
+
+    private final TaskNumberSequence sequence = new TaskNumberSequence("taskmanager.task.number");
+
+    @BeforeEach
+    public void setup() throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "")) {
+            this.sequence.createTable(connection);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "");
+            Statement statement = connection.createStatement())
+        {
+            statement.execute("DROP TABLE " + TaskNumberSequence.TABLE_NAME);
+        }
+    }
+
+    @Test
+    public void incrementMissingSequence() throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "")) {
+            assertEquals(-1, this.sequence.increment(connection, BLOCK_SIZE));
+
+            this.sequence.create(connection, 7);
+            assertEquals(107, this.sequence.increment(connection, BLOCK_SIZE));
+        }
+    }
+
+    @Test
+    public void getSequence() throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "")) {
+            assertEquals(-1, this.sequence.get(connection));
+
+            this.sequence.create(connection, 7);
+            assertEquals(7, this.sequence.get(connection));
+            assertEquals(7, this.sequence.get(connection));
+        }
+    }
+
+    @Test
+    public void raiseSequence() throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "")) {
+            assertFalse(this.sequence.raise(connection, 10));
+
+            this.sequence.create(connection, 7);
+            assertTrue(this.sequence.raise(connection, 10));
+            assertEquals(10, this.sequence.get(connection));
+
+            // The sequence is never lowered.
+            assertTrue(this.sequence.raise(connection, 5));
+            assertEquals(10, this.sequence.get(connection));
+        }
+    }
+
+    @Test
+    public void deleteSequence() throws SQLException
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "")) {
+            // Deleting a missing sequence is a no-op.
+            this.sequence.delete(connection);
+
+            this.sequence.create(connection, 1);
+            assertEquals(1, this.sequence.increment(connection, 0));
+
+            this.sequence.delete(connection);
+            assertEquals(-1, this.sequence.increment(connection, 0));
+        }
+    }
+
+    @Test
+    public void incrementHandsOutDisjointBlocks() throws Exception
+    {
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "")) {
+            this.sequence.create(connection, 0);
+        }
+
+        Set<Integer> blockEnds = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    try (Connection connection = DriverManager.getConnection(URL, "SA", "")) {
+                        connection.setAutoCommit(false);
+                        for (int j = 0; j < RESERVATIONS; j++) {
+                            blockEnds.add(this.sequence.increment(connection, BLOCK_SIZE));
+                            connection.commit();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Every reservation got its own block and no block was lost.
+        assertEquals(THREADS * RESERVATIONS, blockEnds.size());
+        try (Connection connection = DriverManager.getConnection(URL, "SA", "")) {
+            assertEquals(THREADS * RESERVATIONS * BLOCK_SIZE + 1, this.sequence.increment(connection, 1));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xwiki.taskmanager.internal.AbstractTaskEventListener;
+import com.xwiki.taskmanager.internal.TaskOwnerMigration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class TaskOwnerMigrationTest
+{
+    private static final String CANONICAL_OWNER = "wiki:Sandbox.WebHome";
+
+    @InjectMockComponents
+    private TaskOwnerMigration ownerMigration;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    private QueryManager queryManager;
+
+    @MockComponent
+    private DocumentReferenceResolver<String> resolver;
+
+    @MockComponent
+    private EntityReferenceSerializer<String> serializer;
+
+    @Mock
+    private XWikiContext context;
+
+    @Mock
+    private XWiki wiki;
+
+    @Mock
+    private XWikiHibernateStore store;
+
+    @Mock
+    private Query query;
+
+    @Mock
+    private XWikiDocument taskDocument;
+
+    @Mock
+    private BaseObject taskObject;
+
+    private final WikiReference wikiReference = new WikiReference("wiki");
+
+    private final DocumentReference owner = new DocumentReference("wiki", "Sandbox", "WebHome");
+
+    private final DocumentReference task1 = new DocumentReference("wiki", "Sandbox", "Task_1");
+
+    private final DocumentReference task2 = new DocumentReference("wiki", "Sandbox", "Task_2");
+
+    @BeforeEach
+    public void setup() throws QueryException
+    {
+        when(this.contextProvider.get()).thenReturn(this.context);
+        when(this.context.getWikiId()).thenReturn("wiki");
+        when(this.context.getWiki()).thenReturn(this.wiki);
+        when(this.wiki.getHibernateStore()).thenReturn(this.store);
+        when(this.queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(this.query);
+        when(this.query.setWiki("wiki")).thenReturn(this.query);
+        when(this.query.bindValue(eq("lastId"), any())).thenReturn(this.query);
+        when(this.query.setLimit(500)).thenReturn(this.query);
+    }
+
+    @Test
+    public void migrate() throws XWikiException, QueryException
+    {
+        // The wiki is not migrated yet and the marker table exists.
+        when(this.store.executeRead(eq(this.context), any())).thenReturn(false, true);
+        when(this.query.execute()).thenReturn(Arrays.asList(new Object[] { 1L, "Sandbox.Task_1", "WebHome" },
+            new Object[] { 2L, "Sandbox.Task_2", CANONICAL_OWNER }), Collections.emptyList());
+        when(this.resolver.resolve("Sandbox.Task_1", this.wikiReference)).thenReturn(this.task1);
+        when(this.resolver.resolve("WebHome", this.task1)).thenReturn(this.owner);
+        when(this.resolver.resolve("Sandbox.Task_2", this.wikiReference)).thenReturn(this.task2);
+        when(this.resolver.resolve(CANONICAL_OWNER, this.task2)).thenReturn(this.owner);
+        when(this.serializer.serialize(this.owner)).thenReturn(CANONICAL_OWNER);
+        when(this.wiki.getDocument(this.task1, this.context)).thenReturn(this.taskDocument);
+        when(this.taskDocument.clone()).thenReturn(this.taskDocument);
+        when(this.taskDocument.getXObject(AbstractTaskEventListener.TASK_CLASS_REFERENCE))
+            .thenReturn(this.taskObject);
+
+        this.ownerMigration.migrate("wiki");
+
+        // Only the owner that isn't in the canonical form is rewritten, through the task page.
+        verify(this.taskObject).set("owner", CANONICAL_OWNER, this.context);
+        verify(this.wiki).saveDocument(eq(this.taskDocument), anyString(), eq(true), eq(this.context));
+        verify(this.wiki, never()).getDocument(this.task2, this.context);
+        // The macro calls of the owner are not updated back.
+        verify(this.context).put("taskUpdating", true);
+        verify(this.store).executeWrite(eq(this.context), any());
+
+        // The completion is remembered.
+        assertTrue(this.ownerMigration.isMigrated("wiki"));
+        this.ownerMigration.migrate("wiki");
+        verify(this.store, times(2)).executeRead(eq(this.context), any());
+        verify(this.query, times(2)).execute();
+    }
+
+    @Test
+    public void migrateWithoutMarkerTable() throws XWikiException, QueryException
+    {
+        when(this.store.executeRead(eq(this.context), any())).thenReturn(false);
+
+        this.ownerMigration.migrate("wiki");
+
+        verify(this.queryManager, never()).createQuery(anyString(), anyString());
+        verify(this.store, never()).executeWrite(eq(this.context), any());
+        assertFalse(this.ownerMigration.isMigrated("wiki"));
+    }
+
+    @Test
+    public void isMigratedByAnotherNode() throws XWikiException
+    {
+        when(this.store.executeRead(eq(this.context), any())).thenReturn(true);
+
+        assertTrue(this.ownerMigration.isMigrated("wiki"));
+        assertTrue(this.ownerMigration.isMigrated("wiki"));
+
+        verify(this.store).executeRead(eq(this.context), any());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xwiki.taskmanager.internal.TaskOwnerUpdater;
+import com.xwiki.taskmanager.internal.TaskXDOMProcessor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class TaskOwnerUpdaterTest
+{
+    @InjectMockComponents
+    private TaskOwnerUpdater taskOwnerUpdater;
+
+    @MockComponent
+    private TaskXDOMProcessor taskXDOMProcessor;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Mock
+    private XWikiContext context;
+
+    @Mock
+    private BaseObject taskObject1;
+
+    @Mock
+    private BaseObject taskObject2;
+
+    private final Map<String, Object> contextProperties = new HashMap<>();
+
+    private final DocumentReference owner = new DocumentReference("wiki", "Sandbox", "WebHome");
+
+    private final DocumentReference task1 = new DocumentReference("wiki", "Sandbox", "Task_1");
+
+    private final DocumentReference task2 = new DocumentReference("wiki", "Sandbox", "Task_2");
+
+    @BeforeComponent
+    public void configure()
+    {
+        when(this.xwikiProperties.getProperty("taskmanager.ownerUpdateWindow", 0L)).thenReturn(0L);
+    }
+
+    @BeforeEach
+    public void setup()
+    {
+        when(this.contextProvider.get()).thenReturn(this.context);
+        when(this.context.get(anyString())).thenAnswer(invocation -> this.contextProperties.get(
+            invocation.<String>getArgument(0)));
+        doAnswer(invocation -> {
+            if (invocation.getArgument(1) == null) {
+                this.contextProperties.remove(invocation.<String>getArgument(0));
+            } else {
+                this.contextProperties.put(invocation.getArgument(0), invocation.getArgument(1));
+            }
+            return null;
+        }).when(this.context).put(anyString(), any());
+        when(this.taskObject1.getDocumentReference()).thenReturn(this.task1);
+        when(this.taskObject1.clone()).thenReturn(this.taskObject1);
+        when(this.taskObject2.getDocumentReference()).thenReturn(this.task2);
+        when(this.taskObject2.clone()).thenReturn(this.taskObject2);
+    }
+
+    @Test
+    public void updateWithoutBatch() throws XWikiException
+    {
+        this.taskOwnerUpdater.update(this.owner, this.taskObject1);
+
+        verify(this.taskXDOMProcessor).updateTaskMacroCalls(this.owner,
+            Collections.singletonMap(this.task1, this.taskObject1), this.context);
+    }
+
+    @Test
+    public void updateWithinBatch() throws XWikiException
+    {
+        Map<DocumentReference, BaseObject> expected = new HashMap<>();
+        expected.put(this.task1, this.taskObject1);
+        expected.put(this.task2, this.taskObject2);
+        doAnswer(invocation -> {
+            // The task pages must not be updated back while their owner is saved.
+            assertEquals(true, this.contextProperties.get("taskUpdating"));
+            return null;
+        }).when(this.taskXDOMProcessor).updateTaskMacroCalls(eq(this.owner), anyMap(), eq(this.context));
+
+        this.taskOwnerUpdater.startBatch();
+        this.taskOwnerUpdater.startBatch();
+        this.taskOwnerUpdater.update(this.owner, this.taskObject1);
+        this.taskOwnerUpdater.update(this.owner, this.taskObject2);
+        this.taskOwnerUpdater.update(this.owner, this.taskObject1);
+        this.taskOwnerUpdater.endBatch();
+
+        verify(this.taskXDOMProcessor, never()).updateTaskMacroCalls(any(), anyMap(), any());
+
+        this.taskOwnerUpdater.endBatch();
+
+        verify(this.taskXDOMProcessor, times(1)).updateTaskMacroCalls(this.owner, expected, this.context);
+        assertEquals(Collections.emptyMap(), this.contextProperties);
+    }
+}
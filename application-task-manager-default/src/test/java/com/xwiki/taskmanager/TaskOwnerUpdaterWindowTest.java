@@ -0,0 +1,179 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectComponentManager;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.web.Utils;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xwiki.taskmanager.internal.TaskOwnerUpdater;
+import com.xwiki.taskmanager.internal.TaskXDOMProcessor;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the owner page updates that are coalesced during a time window.
+ */
+@ComponentTest
+public class TaskOwnerUpdaterWindowTest
+{
+    private static final long WINDOW = 200;
+
+    @InjectMockComponents
+    private TaskOwnerUpdater taskOwnerUpdater;
+
+    @MockComponent
+    private TaskXDOMProcessor taskXDOMProcessor;
+
+    @InjectComponentManager
+    private MockitoComponentManager componentManager;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @MockComponent
+    private Execution execution;
+
+    @MockComponent
+    private ExecutionContextManager executionContextManager;
+
+    @Mock
+    private XWikiContext context;
+
+    @Mock
+    private BaseObject taskObject1;
+
+    @Mock
+    private BaseObject taskObject2;
+
+    private final DocumentReference owner = new DocumentReference("wiki", "Sandbox", "WebHome");
+
+    private final DocumentReference task1 = new DocumentReference("wiki", "Sandbox", "Task_1");
+
+    private final DocumentReference task2 = new DocumentReference("wiki", "Sandbox", "Task_2");
+
+    private final DocumentReference alice = new DocumentReference("wiki", "XWiki", "Alice");
+
+    private final DocumentReference bob = new DocumentReference("wiki", "XWiki", "Bob");
+
+    @BeforeComponent
+    public void configure()
+    {
+        when(this.xwikiProperties.getProperty("taskmanager.ownerUpdateWindow", 0L)).thenReturn(WINDOW);
+    }
+
+    @BeforeEach
+    public void setup()
+    {
+        // The updates are applied by XWiki runnables, which need an execution context.
+        Utils.setComponentManager(this.componentManager);
+        when(this.execution.getContext()).thenReturn(new ExecutionContext());
+
+        when(this.contextProvider.get()).thenReturn(this.context);
+        when(this.taskObject1.getDocumentReference()).thenReturn(this.task1);
+        when(this.taskObject1.clone()).thenReturn(this.taskObject1);
+        when(this.taskObject2.getDocumentReference()).thenReturn(this.task2);
+        when(this.taskObject2.clone()).thenReturn(this.taskObject2);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        Utils.setComponentManager(null);
+    }
+
+    @Test
+    public void updatesAreGroupedByUser() throws XWikiException
+    {
+        when(this.context.getUserReference()).thenReturn(this.alice);
+        this.taskOwnerUpdater.update(this.owner, this.taskObject1);
+        when(this.context.getUserReference()).thenReturn(this.bob);
+        this.taskOwnerUpdater.update(this.owner, this.taskObject2);
+
+        // Each user saves the owner page with their own changes.
+        verify(this.taskXDOMProcessor, timeout(WINDOW * 10).times(2)).updateTaskMacroCalls(
+            any(DocumentReference.class), anyMap(), any());
+        InOrder inOrder = inOrder(this.context, this.taskXDOMProcessor);
+        inOrder.verify(this.context).setUserReference(this.alice);
+        inOrder.verify(this.taskXDOMProcessor).updateTaskMacroCalls(this.owner,
+            Collections.singletonMap(this.task1, this.taskObject1), this.context);
+        inOrder.verify(this.context).setUserReference(this.bob);
+        inOrder.verify(this.taskXDOMProcessor).updateTaskMacroCalls(this.owner,
+            Collections.singletonMap(this.task2, this.taskObject2), this.context);
+    }
+
+    @Test
+    public void flushAppliesThePendingUpdatesToTheSavedContent() throws XWikiException
+    {
+        XDOM content = mock(XDOM.class);
+        when(this.context.getUserReference()).thenReturn(this.alice);
+        this.taskOwnerUpdater.update(this.owner, this.taskObject1);
+        when(this.context.getUserReference()).thenReturn(this.bob);
+        this.taskOwnerUpdater.update(this.owner, this.taskObject2);
+
+        this.taskOwnerUpdater.flush(this.owner, content);
+
+        Map<DocumentReference, BaseObject> expected = new HashMap<>();
+        expected.put(this.task1, this.taskObject1);
+        expected.put(this.task2, this.taskObject2);
+        verify(this.taskXDOMProcessor).updateTaskMacroCalls(content, this.owner, expected);
+
+        // Wait for the windows to elapse: the owner page is not saved again.
+        this.taskOwnerUpdater.dispose();
+        verify(this.taskXDOMProcessor, never()).updateTaskMacroCalls(any(DocumentReference.class), anyMap(),
+            any());
+    }
+}
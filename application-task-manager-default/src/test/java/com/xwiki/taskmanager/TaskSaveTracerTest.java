@@ -0,0 +1,116 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.List;
+
+import javax.inject.Named;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xwiki.taskmanager.internal.TaskSaveSpan;
+import com.xwiki.taskmanager.internal.TaskSaveTracer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class TaskSaveTracerTest
+{
+    private static final long THRESHOLD = 50L;
+
+    @InjectMockComponents
+    private TaskSaveTracer tracer;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @MockComponent
+    private EntityReferenceSerializer<String> serializer;
+
+    private final DocumentReference owner = new DocumentReference("wiki", "Sandbox", "WebHome");
+
+    private final DocumentReference task = new DocumentReference("wiki", "Sandbox", "Task_1");
+
+    @BeforeComponent
+    public void configure()
+    {
+        when(this.xwikiProperties.getProperty("taskmanager.saveTracing.enabled", false)).thenReturn(true);
+        when(this.xwikiProperties.getProperty("taskmanager.saveTracing.threshold", 1000L)).thenReturn(THRESHOLD);
+        when(this.xwikiProperties.getProperty("taskmanager.saveTracing.bufferSize", 20)).thenReturn(2);
+    }
+
+    @Test
+    public void slowTraceIsKept() throws Exception
+    {
+        when(this.serializer.serialize(this.owner)).thenReturn("wiki:Sandbox.WebHome");
+        when(this.serializer.serialize(this.task)).thenReturn("wiki:Sandbox.Task_1");
+
+        try (TaskSaveSpan listener = this.tracer.start("macroListener", this.owner)) {
+            try (TaskSaveSpan extract = this.tracer.start("extract")) {
+                // Nothing to extract.
+            }
+            try (TaskSaveSpan save = this.tracer.start("taskPageSave", this.task)) {
+                try (TaskSaveSpan objectListener = this.tracer.start("objectListener", this.task)) {
+                    Thread.sleep(THRESHOLD + 10);
+                }
+            }
+        }
+
+        List<TaskSaveTrace> traces = this.tracer.getSlowTraces();
+        assertEquals(1, traces.size());
+        TaskSaveTrace trace = traces.get(0);
+        assertEquals("macroListener [wiki:Sandbox.WebHome]", trace.getName());
+        assertTrue(trace.getDuration() >= THRESHOLD);
+        assertEquals(2, trace.getChildren().size());
+        assertEquals("extract", trace.getChildren().get(0).getName());
+        TaskSaveTrace save = trace.getChildren().get(1);
+        assertEquals("taskPageSave [wiki:Sandbox.Task_1]", save.getName());
+        assertEquals("objectListener [wiki:Sandbox.Task_1]", save.getChildren().get(0).getName());
+        assertTrue(save.getChildren().get(0).getDuration() >= THRESHOLD);
+    }
+
+    @Test
+    public void onlyTheLastSlowTracesAreKept() throws Exception
+    {
+        try (TaskSaveSpan fast = this.tracer.start("fast")) {
+            // Under the threshold.
+        }
+        for (int i = 0; i < 3; i++) {
+            try (TaskSaveSpan slow = this.tracer.start("slow" + i)) {
+                Thread.sleep(THRESHOLD + 10);
+            }
+        }
+
+        List<TaskSaveTrace> traces = this.tracer.getSlowTraces();
+        assertEquals(2, traces.size());
+        assertEquals("slow2", traces.get(0).getName());
+        assertEquals("slow1", traces.get(1).getName());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.xwiki.taskmanager.internal.TaskTable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the denormalized task table against an in-memory database.
+ */
+public class TaskTableTest
+{
+    private static final String URL = "jdbc:hsqldb:mem:taskmanager";
+
+    private static final String OWNER = "wiki:Sandbox.WebHome";
+
+    private final TaskTable table = new TaskTable();
+
+    private Connection connection;
+
+    @BeforeEach
+    public void setup() throws SQLException
+    {
+        this.connection = DriverManager.getConnection(URL, "SA", "");
+        assertTrue(this.table.createTable(this.connection));
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException
+    {
+        try (Statement statement = this.connection.createStatement()) {
+            statement.execute("DROP TABLE " + TaskTable.TABLE_NAME);
+        }
+        this.connection.close();
+    }
+
+    @Test
+    public void createTableOnlyOnce() throws SQLException
+    {
+        assertFalse(this.table.createTable(this.connection));
+    }
+
+    @Test
+    public void saveAndLookup() throws SQLException
+    {
+        this.table.save(this.connection, Arrays.asList(
+            new TaskTable.Row("Sandbox.Task_1", 1, OWNER, "wiki:XWiki.User", null, "inProgress", new Date(), null,
+                null),
+            new TaskTable.Row("Sandbox.Task_2", 2, OWNER, null, null, "done", new Date(), null, new Date())));
+
+        assertEquals(Collections.singletonList("Sandbox.Task_2"), this.table.getDocumentsByNumber(this.connection, 2));
+        assertEquals(Arrays.asList("Sandbox.Task_1", "Sandbox.Task_2"),
+            this.table.getDocumentsByOwner(this.connection, OWNER));
+
+        // Saving a task again replaces its row.
+        this.table.save(this.connection, Collections.singletonList(
+            new TaskTable.Row("Sandbox.Task_2", 3, "wiki:Other.WebHome", null, null, "done")));
+        assertEquals(Collections.emptyList(), this.table.getDocumentsByNumber(this.connection, 2));
+        assertEquals(Collections.singletonList("Sandbox.Task_2"), this.table.getDocumentsByNumber(this.connection, 3));
+        assertEquals(Collections.singletonList("Sandbox.Task_1"),
+            this.table.getDocumentsByOwner(this.connection, OWNER));
+
+        this.table.delete(this.connection, "Sandbox.Task_1");
+        assertEquals(Collections.emptyList(), this.table.getDocumentsByOwner(this.connection, OWNER));
+    }
+
+    @Test
+    public void clear() throws SQLException
+    {
+        this.table.save(this.connection, Arrays.asList(
+            new TaskTable.Row("Sandbox.Task_1", 1, OWNER, null, null, "inProgress"),
+            new TaskTable.Row("Sandbox.Task_2", 2, OWNER, null, null, "done")));
+
+        this.table.clear(this.connection);
+        assertEquals(Collections.emptyList(), this.table.getDocumentsByOwner(this.connection, OWNER));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectComponentManager;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.web.Utils;
+import com.xwiki.taskmanager.internal.TaskUpdateQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class TaskUpdateQueueTest
+{
+    @InjectMockComponents
+    private TaskUpdateQueue taskUpdateQueue;
+
+    @InjectComponentManager
+    private MockitoComponentManager componentManager;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @MockComponent
+    private Execution execution;
+
+    @MockComponent
+    private ExecutionContextManager executionContextManager;
+
+    @Mock
+    private XWikiContext context;
+
+    private final DocumentReference owner1 = new DocumentReference("wiki", "Sandbox", "Page1");
+
+    private final DocumentReference owner2 = new DocumentReference("wiki", "Sandbox", "Page2");
+
+    private final DocumentReference task1 = new DocumentReference("wiki", "Sandbox", "Task_1");
+
+    private final DocumentReference task2 = new DocumentReference("wiki", "Sandbox", "Task_2");
+
+    private final DocumentReference task3 = new DocumentReference("wiki", "Sandbox", "Task_3");
+
+    @BeforeComponent
+    public void configure()
+    {
+        when(this.xwikiProperties.getProperty("taskmanager.asyncUpdateQueueCapacity", 10000)).thenReturn(10000);
+    }
+
+    @BeforeEach
+    public void setup()
+    {
+        // The updates are applied by XWiki runnables, which need an execution context.
+        Utils.setComponentManager(this.componentManager);
+        when(this.execution.getContext()).thenReturn(new ExecutionContext());
+
+        when(this.contextProvider.get()).thenReturn(this.context);
+        when(this.context.getWikiId()).thenReturn("wiki");
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        Utils.setComponentManager(null);
+    }
+
+    @Test
+    public void discardTheUpdatesOfAnOwner() throws Exception
+    {
+        List<DocumentReference> applied = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Keep the worker busy so that the next updates wait in the queue.
+        this.taskUpdateQueue.enqueue(this.task1, this.owner1, updateContext -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            applied.add(this.task1);
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        this.taskUpdateQueue.enqueue(this.task2, this.owner1, updateContext -> applied.add(this.task2));
+        this.taskUpdateQueue.enqueue(this.task3, this.owner2, updateContext -> applied.add(this.task3));
+        assertEquals(2, this.taskUpdateQueue.getQueueDepth());
+
+        this.taskUpdateQueue.discard(this.owner1);
+        assertEquals(1, this.taskUpdateQueue.getQueueDepth());
+
+        release.countDown();
+        this.taskUpdateQueue.dispose();
+
+        // The update that had already started is applied.
+        assertEquals(Arrays.asList(this.task1, this.task3), applied);
+    }
+
+    @Test
+    public void restartTheWorkerAfterAFailure() throws Exception
+    {
+        // The updates only catch the exceptions, so an error stops the worker.
+        this.taskUpdateQueue.enqueue(this.task1, this.owner1, updateContext -> {
+            throw new AssertionError("Simulated worker failure");
+        });
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!this.taskUpdateQueue.isWorkerFailed() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue(this.taskUpdateQueue.isWorkerFailed());
+
+        CountDownLatch applied = new CountDownLatch(1);
+        this.taskUpdateQueue.enqueue(this.task2, this.owner1, updateContext -> applied.countDown());
+
+        assertTrue(applied.await(10, TimeUnit.SECONDS));
+        assertFalse(this.taskUpdateQueue.isWorkerFailed());
+        assertEquals(1, this.taskUpdateQueue.getWorkerRestartCount());
+        this.taskUpdateQueue.dispose();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.taskmanager;
+
+import java.util.Arrays;
+
+import javax.inject.Named;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.job.JobExecutor;
+import org.xwiki.job.Request;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xwiki.taskmanager.internal.TaskWarmUpJob;
+import com.xwiki.taskmanager.internal.TaskWarmUpListener;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ComponentTest
+public class TaskWarmUpListenerTest
+{
+    private static final String ENABLED_PROPERTY = "taskmanager.warmUp.enabled";
+
+    @InjectMockComponents
+    private TaskWarmUpListener listener;
+
+    @MockComponent
+    private JobExecutor jobExecutor;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource xwikiProperties;
+
+    @Test
+    public void onEventStartsTheJob() throws Exception
+    {
+        when(this.xwikiProperties.getProperty(ENABLED_PROPERTY, true)).thenReturn(true);
+
+        this.listener.onEvent(new ApplicationReadyEvent(), null, null);
+
+        verify(this.jobExecutor).execute(eq(TaskWarmUpJob.JOB_TYPE),
+            argThat((Request request) -> Arrays.asList("taskmanager", "warmUp").equals(request.getId())));
+    }
+
+    @Test
+    public void onEventWhenDisabled() throws Exception
+    {
+        when(this.xwikiProperties.getProperty(ENABLED_PROPERTY, true)).thenReturn(false);
+
+        this.listener.onEvent(new ApplicationReadyEvent(), null, null);
+
+        verify(this.jobExecutor, never()).execute(any(), any());
+    }
+}